@@ -19,11 +19,12 @@ package com.android.launcher2;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.pm.ActivityInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 
 
@@ -44,6 +45,13 @@ class AllAppsList {
     /** The list of apps that have been modified since the last notify() call. */
     public ArrayList<ApplicationInfo> modified = new ArrayList<ApplicationInfo>();
 
+    /** The entries of {@link #data}, by component. */
+    private final HashMap<ComponentName, ApplicationInfo> mComponentIndex =
+            new HashMap<ComponentName, ApplicationInfo>(DEFAULT_APPLICATIONS_NUMBER);
+    /** The entries of {@link #data}, by package name. */
+    private final HashMap<String, ArrayList<ApplicationInfo>> mPackageIndex =
+            new HashMap<String, ArrayList<ApplicationInfo>>(DEFAULT_APPLICATIONS_NUMBER);
+
     private IconCache mIconCache;
 
     /**
@@ -60,15 +68,29 @@ class AllAppsList {
      * If the app is already in the list, doesn't add it.
      */
     public void add(ApplicationInfo info) {
-        if (findActivity(data, info.componentName)) {
+        if (mComponentIndex.containsKey(info.componentName)) {
             return;
         }
         data.add(info);
         added.add(info);
+
+        mComponentIndex.put(info.componentName, info);
+        final String packageName = info.componentName.getPackageName();
+        ArrayList<ApplicationInfo> apps = mPackageIndex.get(packageName);
+        if (apps == null) {
+            apps = new ArrayList<ApplicationInfo>(1);
+            mPackageIndex.put(packageName, apps);
+        }
+        apps.add(info);
     }
     
     public void clear() {
+        for (ApplicationInfo info : data) {
+            info.unbind();
+        }
         data.clear();
+        mComponentIndex.clear();
+        mPackageIndex.clear();
         // TODO: do we clear these too?
         added.clear();
         removed.clear();
@@ -87,6 +109,7 @@ class AllAppsList {
      * Add the icons for the supplied apk called packageName.
      */
     public void addPackage(Context context, String packageName) {
+        LabelCache.getInstance().removePackage(packageName);
         final List<ResolveInfo> matches = findActivitiesForPackage(context, packageName);
 
         if (matches.size() > 0) {
@@ -100,37 +123,49 @@ class AllAppsList {
      * Remove the apps for the given apk identified by packageName.
      */
     public void removePackage(String packageName) {
-        final List<ApplicationInfo> data = this.data;
-        for (int i = data.size() - 1; i >= 0; i--) {
-            ApplicationInfo info = data.get(i);
-            final ComponentName component = info.intent.getComponent();
-            if (packageName.equals(component.getPackageName())) {
+        final ArrayList<ApplicationInfo> apps = mPackageIndex.remove(packageName);
+        if (apps != null) {
+            for (ApplicationInfo info : apps) {
+                mComponentIndex.remove(info.componentName);
                 removed.add(info);
-                data.remove(i);
             }
+            removeFromData(apps);
         }
-        // This is more aggressive than it needs to be.
-        mIconCache.flush();
+        mIconCache.removePackage(packageName);
+        LabelCache.getInstance().removePackage(packageName);
     }
 
     /**
      * Add and remove icons for this package which has been updated.
      */
     public void updatePackage(Context context, String packageName) {
+        LabelCache.getInstance().removePackage(packageName);
         final List<ResolveInfo> matches = findActivitiesForPackage(context, packageName);
+        final ArrayList<ApplicationInfo> apps = mPackageIndex.get(packageName);
         if (matches.size() > 0) {
-            // Find disabled/removed activities and remove them from data and add them
-            // to the removed list.
-            for (int i = data.size() - 1; i >= 0; i--) {
-                final ApplicationInfo applicationInfo = data.get(i);
-                final ComponentName component = applicationInfo.intent.getComponent();
-                if (packageName.equals(component.getPackageName())) {
-                    if (!findActivity(matches, component)) {
+            if (apps != null) {
+                // Find disabled/removed activities and remove them from data and add them
+                // to the removed list.
+                final HashSet<String> classNames = new HashSet<String>(matches.size());
+                for (ResolveInfo info : matches) {
+                    classNames.add(info.activityInfo.name);
+                }
+                final ArrayList<ApplicationInfo> gone = new ArrayList<ApplicationInfo>();
+                for (int i = apps.size() - 1; i >= 0; i--) {
+                    final ApplicationInfo applicationInfo = apps.get(i);
+                    final ComponentName component = applicationInfo.componentName;
+                    if (!classNames.contains(component.getClassName())) {
                         removed.add(applicationInfo);
                         mIconCache.remove(component);
-                        data.remove(i);
+                        mComponentIndex.remove(component);
+                        apps.remove(i);
+                        gone.add(applicationInfo);
                     }
                 }
+                if (apps.isEmpty()) {
+                    mPackageIndex.remove(packageName);
+                }
+                removeFromData(gone);
             }
 
             // Find enabled activities and add them to the adapter
@@ -147,20 +182,45 @@ class AllAppsList {
                     modified.add(applicationInfo);
                 }
             }
-        } else {
+        } else if (apps != null) {
             // Remove all data for this package.
-            for (int i = data.size() - 1; i >= 0; i--) {
-                final ApplicationInfo applicationInfo = data.get(i);
-                final ComponentName component = applicationInfo.intent.getComponent();
-                if (packageName.equals(component.getPackageName())) {
-                    removed.add(applicationInfo);
-                    mIconCache.remove(component);
-                    data.remove(i);
-                }
+            mPackageIndex.remove(packageName);
+            for (int i = apps.size() - 1; i >= 0; i--) {
+                final ApplicationInfo applicationInfo = apps.get(i);
+                final ComponentName component = applicationInfo.componentName;
+                removed.add(applicationInfo);
+                mIconCache.remove(component);
+                mComponentIndex.remove(component);
             }
+            removeFromData(apps);
         }
     }
 
+    /**
+     * Removes the supplied apps from {@link #data} in a single pass, keeping the order of
+     * everything else.
+     */
+    private void removeFromData(List<ApplicationInfo> apps) {
+        if (apps.isEmpty()) {
+            return;
+        }
+        if (apps.size() == 1) {
+            data.remove(apps.get(0));
+            return;
+        }
+        final HashSet<ApplicationInfo> remove = new HashSet<ApplicationInfo>(apps);
+        final ArrayList<ApplicationInfo> data = this.data;
+        final int count = data.size();
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            final ApplicationInfo info = data.get(i);
+            if (!remove.contains(info)) {
+                data.set(kept++, info);
+            }
+        }
+        data.subList(kept, count).clear();
+    }
+
     /**
      * Query the package manager for MAIN/LAUNCHER activities in the supplied package.
      */
@@ -175,43 +235,10 @@ class AllAppsList {
         return apps != null ? apps : new ArrayList<ResolveInfo>();
     }
 
-    /**
-     * Returns whether <em>apps</em> contains <em>component</em>.
-     */
-    private static boolean findActivity(List<ResolveInfo> apps, ComponentName component) {
-        final String className = component.getClassName();
-        for (ResolveInfo info : apps) {
-            final ActivityInfo activityInfo = info.activityInfo;
-            if (activityInfo.name.equals(className)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    /**
-     * Returns whether <em>apps</em> contains <em>component</em>.
-     */
-    private static boolean findActivity(ArrayList<ApplicationInfo> apps, ComponentName component) {
-        for (final ApplicationInfo info : apps) {
-            if (info.componentName.equals(component)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     /**
      * Find an ApplicationInfo object for the given packageName and className.
      */
     private ApplicationInfo findApplicationInfoLocked(String packageName, String className) {
-        for (ApplicationInfo info: data) {
-            final ComponentName component = info.intent.getComponent();
-            if (packageName.equals(component.getPackageName())
-                    && className.equals(component.getClassName())) {
-                return info;
-            }
-        }
-        return null;
+        return mComponentIndex.get(new ComponentName(packageName, className));
     }
 }
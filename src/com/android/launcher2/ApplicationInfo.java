@@ -18,14 +18,14 @@ package com.android.launcher2;
 
 import android.content.ComponentName;
 import android.content.Intent;
+import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
-import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.pm.ResolveInfo;
 import android.graphics.Bitmap;
 import android.util.Log;
 
+import java.text.CollationKey;
 import java.util.ArrayList;
-import java.util.HashMap;
 
 /**
  * Represents an app in AppsCustomizeView.
@@ -43,11 +43,6 @@ public class ApplicationInfo extends ItemInfo {
      */
     public Intent intent;
 
-    /**
-     * A bitmap version of the application icon.
-     */
-    public Bitmap iconBitmap;
-
     /**
      * The time at which the app was first installed.
      */
@@ -55,6 +50,12 @@ public class ApplicationInfo extends ItemInfo {
 
     public ComponentName componentName;
 
+    /**
+     * The collation key of {@link #title}, and the title it was made from.
+     */
+    private CollationKey mTitleKey;
+    private CharSequence mTitleKeySource;
+
     static final int DOWNLOADED_FLAG = 1;
     static final int UPDATED_SYSTEM_APP_FLAG = 2;
 
@@ -68,7 +69,17 @@ public class ApplicationInfo extends ItemInfo {
      * Must not hold the Context.
      */
     public ApplicationInfo(PackageManager pm, ResolveInfo info, IconCache iconCache,
-            HashMap<Object, CharSequence> labelCache) {
+            LabelCache labelCache) {
+        this(pm, info, iconCache, labelCache, null);
+    }
+
+    /**
+     * Must not hold the Context.
+     *
+     * @param packageInfos the package infos of the current load pass, or null
+     */
+    ApplicationInfo(PackageManager pm, ResolveInfo info, IconCache iconCache,
+            LabelCache labelCache, PackageInfoCache packageInfos) {
         final String packageName = info.activityInfo.applicationInfo.packageName;
 
         this.componentName = new ComponentName(packageName, info.activityInfo.name);
@@ -76,8 +87,9 @@ public class ApplicationInfo extends ItemInfo {
         this.setActivity(componentName,
                 Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_RESET_TASK_IF_NEEDED);
 
-        try {
-            int appFlags = pm.getApplicationInfo(packageName, 0).flags;
+        final PackageInfo packageInfo = PackageInfoCache.get(packageInfos, pm, packageName);
+        if (packageInfo != null) {
+            int appFlags = packageInfo.applicationInfo.flags;
             if ((appFlags & android.content.pm.ApplicationInfo.FLAG_SYSTEM) == 0) {
                 flags |= DOWNLOADED_FLAG;
 
@@ -85,12 +97,12 @@ public class ApplicationInfo extends ItemInfo {
                     flags |= UPDATED_SYSTEM_APP_FLAG;
                 }
             }
-            firstInstallTime = pm.getPackageInfo(packageName, 0).firstInstallTime;
-        } catch (NameNotFoundException e) {
-            Log.d(TAG, "PackageManager.getApplicationInfo failed for " + packageName);
+            firstInstallTime = packageInfo.firstInstallTime;
+        } else {
+            Log.d(TAG, "PackageManager.getPackageInfo failed for " + packageName);
         }
 
-        iconCache.getTitleAndIcon(this, info, labelCache);
+        iconCache.getTitleAndIcon(this, info, labelCache, packageInfos);
     }
 
     public ApplicationInfo(ApplicationInfo info) {
@@ -102,6 +114,32 @@ public class ApplicationInfo extends ItemInfo {
         firstInstallTime = info.firstInstallTime;
     }
 
+    /**
+     * Returns the collation key of the title, which is only rebuilt when the title changes.
+     */
+    CollationKey getTitleKey() {
+        if (mTitleKey == null || mTitleKeySource != title) {
+            mTitleKeySource = title;
+            mTitleKey = LabelCache.getInstance().getCollationKey(title.toString());
+        }
+        return mTitleKey;
+    }
+
+    /**
+     * A bitmap version of the application icon.
+     */
+    public Bitmap getIconBitmap() {
+        final IconHandle icon = getIconHandle();
+        return icon != null ? icon.getBitmap() : null;
+    }
+
+    /**
+     * Set an icon that is not shared with anything else.
+     */
+    public void setIconBitmap(Bitmap b) {
+        setIcon(IconHandle.wrap(b));
+    }
+
     /**
      * Creates the application intent based on a component name and various launch flags.
      * Sets {@link #itemType} to {@link LauncherSettings.BaseLauncherColumns#ITEM_TYPE_APPLICATION}.
@@ -120,7 +158,7 @@ public class ApplicationInfo extends ItemInfo {
     @Override
 	public String toString() {
 		return "ApplicationInfo [title=" + title + ", intent=" + intent
-				+ ", iconBitmap=" + iconBitmap + ", firstInstallTime="
+				+ ", icon=" + getIconHandle() + ", firstInstallTime="
 				+ firstInstallTime + ", componentName=" + componentName
 				+ ", flags=" + flags + "]";
 	}
@@ -129,8 +167,8 @@ public class ApplicationInfo extends ItemInfo {
             ArrayList<ApplicationInfo> list) {
         Log.d(tag, label + " size=" + list.size());
         for (ApplicationInfo info: list) {
-            Log.d(tag, "   title=\"" + info.title + "\" iconBitmap="
-                    + info.iconBitmap + " firstInstallTime="
+            Log.d(tag, "   title=\"" + info.title + "\" icon="
+                    + info.getIconHandle() + " firstInstallTime="
                     + info.firstInstallTime);
         }
     }
@@ -33,7 +33,6 @@ import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
-import android.graphics.Bitmap.Config;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.MaskFilter;
@@ -43,8 +42,6 @@ import android.graphics.Rect;
 import android.graphics.TableMaskFilter;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
-import android.os.AsyncTask;
-import android.os.Process;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.Gravity;
@@ -79,11 +76,11 @@ import java.util.List;
  * A simple callback interface which also provides the results of the task.
  */
 interface AsyncTaskCallback {
-    void run(AppsCustomizeAsyncTask task, AsyncTaskPageData data);
+    void run(AppsCustomizePageTask task, AsyncTaskPageData data);
 }
 
 /**
- * The data needed to perform either of the custom AsyncTasks.
+ * The data needed to perform either of the page content tasks.
  */
 class AsyncTaskPageData {
     enum Type {
@@ -111,20 +108,16 @@ class AsyncTaskPageData {
         doInBackgroundCallback = bgR;
         postExecuteCallback = postR;
     }
-    void cleanup(boolean cancelled) {
-        // Clean up any references to source/generated bitmaps
+    void cleanup(boolean cancelled, BitmapPool pool) {
+        // Clean up any references to source/generated bitmaps.  The source images belong to
+        // the views they were bound to, so only the generated ones are ours to give back.
         if (sourceImages != null) {
-            if (cancelled) {
-                for (Bitmap b : sourceImages) {
-                    b.recycle();
-                }
-            }
             sourceImages.clear();
         }
         if (generatedImages != null) {
             if (cancelled) {
                 for (Bitmap b : generatedImages) {
-                    b.recycle();
+                    pool.release(b);
                 }
             }
             generatedImages.clear();
@@ -141,40 +134,30 @@ class AsyncTaskPageData {
 }
 
 /**
- * A generic template for an async task used in AppsCustomize.
+ * A page content task used in AppsCustomize, run on the {@link PageContentExecutor}.
  */
-class AppsCustomizeAsyncTask extends AsyncTask<AsyncTaskPageData, Void, AsyncTaskPageData> {
-    AppsCustomizeAsyncTask(int p, AppsCustomizeView.ContentType t, AsyncTaskPageData.Type ty) {
-        page = p;
+class AppsCustomizePageTask extends PageContentExecutor.Task {
+    AppsCustomizePageTask(int p, AppsCustomizeView.ContentType t, AsyncTaskPageData.Type ty,
+            AsyncTaskPageData d) {
+        super(p);
         pageContentType = t;
-        threadPriority = Process.THREAD_PRIORITY_DEFAULT;
         dataType = ty;
+        data = d;
     }
     @Override
-    protected AsyncTaskPageData doInBackground(AsyncTaskPageData... params) {
-        if (params.length != 1) return null;
+    void doInBackground() {
         // Load each of the widget previews in the background
-        params[0].doInBackgroundCallback.run(this, params[0]);
-        return params[0];
+        data.doInBackgroundCallback.run(this, data);
     }
     @Override
-    protected void onPostExecute(AsyncTaskPageData result) {
+    void onPostExecute() {
         // All the widget previews are loaded, so we can just callback to inflate the page
-        result.postExecuteCallback.run(this, result);
+        data.postExecuteCallback.run(this, data);
     }
 
-    void setThreadPriority(int p) {
-        threadPriority = p;
-    }
-    void syncThreadPriority() {
-        Process.setThreadPriority(threadPriority);
-    }
-
-    // The page that this async task is associated with
     AsyncTaskPageData.Type dataType;
-    int page;
     AppsCustomizeView.ContentType pageContentType;
-    int threadPriority;
+    final AsyncTaskPageData data;
 }
 
 /**
@@ -214,6 +197,8 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
     private Canvas mCanvas;
     private Drawable mDefaultWidgetBackground;
     private IconCache mIconCache;
+    private WidgetPreviewCache mWidgetPreviewCache;
+    private BitmapPool mBitmapPool;
     private int mDragViewMultiplyColor;
 
     // Dimens
@@ -256,9 +241,10 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
 
 
     // Previews & outlines
-    ArrayList<AppsCustomizeAsyncTask> mRunningTasks;
+    ArrayList<AppsCustomizePageTask> mRunningTasks;
     private HolographicOutlineHelper mHolographicOutlineHelper;
-    private static final int sPageSleepDelay = 200;
+    private static final PageContentExecutor sPageContentExecutor =
+            new PageContentExecutor("launcher-page-content");
 
     // Preferences
     private boolean mJoinWidgetsApps;
@@ -276,9 +262,12 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
         
         mWidgets = new ArrayList<Object>();
         mIconCache = ((LauncherApplication) context.getApplicationContext()).getIconCache();
+        mWidgetPreviewCache =
+                ((LauncherApplication) context.getApplicationContext()).getWidgetPreviewCache();
+        mBitmapPool = ((LauncherApplication) context.getApplicationContext()).getBitmapPool();
         mHolographicOutlineHelper = new HolographicOutlineHelper();
         mCanvas = new Canvas();
-        mRunningTasks = new ArrayList<AppsCustomizeAsyncTask>();
+        mRunningTasks = new ArrayList<AppsCustomizePageTask>();
 
         // Save the default widget preview background
         Resources resources = context.getResources();
@@ -716,8 +705,8 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
             // Workaround for the fact that we don't keep the original ResolveInfo associated with
             // the shortcut around.  To get the icon, we just render the preview image (which has
             // the shortcut icon) to a new drag bitmap that clips the non-icon space.
-            preview = Bitmap.createBitmap(mWidgetPreviewIconPaddedDimension,
-                    mWidgetPreviewIconPaddedDimension, Bitmap.Config.ARGB_8888);
+            preview = mBitmapPool.obtain(mWidgetPreviewIconPaddedDimension,
+                    mWidgetPreviewIconPaddedDimension);
             Drawable d = image.getDrawable();
             mCanvas.setBitmap(preview);
             d.draw(mCanvas);
@@ -749,7 +738,7 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
         mDragController.startDrag(image, preview, this, createItemInfo,
                 DragController.DRAG_ACTION_COPY, null);
         outline.recycle();
-        preview.recycle();
+        mBitmapPool.release(preview);
     }
     @Override
     protected boolean beginDragging(View v) {
@@ -826,10 +815,10 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
 
     private void cancelAllTasks() {
         // Clean up all the async tasks
-        Iterator<AppsCustomizeAsyncTask> iter = mRunningTasks.iterator();
+        Iterator<AppsCustomizePageTask> iter = mRunningTasks.iterator();
         while (iter.hasNext()) {
-            AppsCustomizeAsyncTask task = iter.next();
-            task.cancel(false);
+            AppsCustomizePageTask task = iter.next();
+            sPageContentExecutor.cancel(task);
             iter.remove();
         }
     }
@@ -861,16 +850,8 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
             updateCurrentTab(whichPage);
         }
 
-        // Update the thread priorities given the direction lookahead
-        for (AppsCustomizeAsyncTask task : mRunningTasks) {
-            int pageIndex = task.page + mNumAppsPages + mNumDownloadAppsPages;
-            if ((mNextPage > mCurrentPage && pageIndex >= mCurrentPage) ||
-                    (mNextPage < mCurrentPage && pageIndex <= mCurrentPage)) {
-                task.setThreadPriority(getThreadPriorityForPage(pageIndex));
-            } else {
-                task.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
-            }
-        }
+        // Reorder the pending page content given the direction lookahead
+        updatePageContentPriorities();
     }
 
     private void updateCurrentTab(int currentPage) {
@@ -1118,89 +1099,68 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
     }
 
     /**
-     * A helper to return the priority for loading of the specified widget page.
+     * Returns the order in which the content for the specified task should be generated (lower
+     * goes first).  Pages closer to the one we are on, or snapping to, go first; pages behind
+     * the direction we are snapping in, and outlines, which are only decoration, go last.
      */
-    private int getWidgetPageLoadPriority(int page) {
-        // If we are snapping to another page, use that index as the target page index
-        int toPage = mCurrentPage;
-        if (mNextPage > -1) {
-            toPage = mNextPage;
-        }
-
-        // We use the distance from the target page as an initial guess of priority, but if there
-        // are no pages of higher priority than the page specified, then bump up the priority of
-        // the specified page.
-        Iterator<AppsCustomizeAsyncTask> iter = mRunningTasks.iterator();
-        int minPageDiff = Integer.MAX_VALUE;
-        while (iter.hasNext()) {
-            AppsCustomizeAsyncTask task = iter.next();
-            //Pekall LK add mNumDownloadAppsPages
-            //minPageDiff = Math.abs(task.page + mNumAppsPages - toPage);
-            minPageDiff = Math.abs(task.page + mNumAppsPages +mNumDownloadAppsPages - toPage);
+    private int getPageContentPriority(AppsCustomizePageTask task) {
+        int page = task.page;
+        if (task.dataType == AsyncTaskPageData.Type.LoadWidgetPreviewData) {
+            page += mNumAppsPages + mNumDownloadAppsPages;
         }
-
-        int rawPageDiff = Math.abs(page - toPage);
-        return rawPageDiff - Math.min(rawPageDiff, minPageDiff);
-    }
-    /**
-     * Return the appropriate thread priority for loading for a given page (we give the current
-     * page much higher priority)
-     */
-    private int getThreadPriorityForPage(int page) {
-        int pageDiff = Math.abs(page - mCurrentPage);
-        if (pageDiff <= 0) {
-            return Process.THREAD_PRIORITY_FOREGROUND;
-        } else if (pageDiff <= 1) {
-            return Process.THREAD_PRIORITY_MORE_FAVORABLE;
-        } else {
-            return Process.THREAD_PRIORITY_DEFAULT;
+        int toPage = (mNextPage > -1) ? mNextPage : mCurrentPage;
+        int priority = Math.abs(page - toPage);
+        if ((mNextPage > mCurrentPage && page < mCurrentPage) ||
+                (mNextPage > -1 && mNextPage < mCurrentPage && page > mCurrentPage)) {
+            priority += getChildCount();
         }
+        if (task.dataType == AsyncTaskPageData.Type.LoadHolographicIconsData) {
+            priority += 2 * getChildCount();
+        }
+        return priority;
     }
-    private int getSleepForPage(int page) {
-        int pageDiff = getWidgetPageLoadPriority(page);
-        return Math.max(0, pageDiff * sPageSleepDelay);
+    private void updatePageContentPriorities() {
+        for (AppsCustomizePageTask task : mRunningTasks) {
+            sPageContentExecutor.setPriority(task, getPageContentPriority(task));
+        }
     }
     /**
-     * Creates and executes a new AsyncTask to load a page of widget previews.
+     * Creates and queues a new task to load a page of widget previews.
      */
     private void prepareLoadWidgetPreviewsTask(int page, ArrayList<Object> widgets,
             int cellWidth, int cellHeight) {
 
-        // Prune all tasks that are no longer needed
-        Iterator<AppsCustomizeAsyncTask> iter = mRunningTasks.iterator();
+        // Prune all tasks that are no longer needed, or that this one supersedes
+        Iterator<AppsCustomizePageTask> iter = mRunningTasks.iterator();
         while (iter.hasNext()) {
-            AppsCustomizeAsyncTask task = iter.next();
+            AppsCustomizePageTask task = iter.next();
             int taskPage = task.page + mNumAppsPages + mNumDownloadAppsPages;
             if (taskPage < getAssociatedLowerPageBound(mCurrentPage) ||
-                    taskPage > getAssociatedUpperPageBound(mCurrentPage)) {
-                task.cancel(false);
+                    taskPage > getAssociatedUpperPageBound(mCurrentPage) ||
+                    (task.page == page &&
+                    task.dataType == AsyncTaskPageData.Type.LoadWidgetPreviewData)) {
+                sPageContentExecutor.cancel(task);
                 iter.remove();
-            } else {
-                task.setThreadPriority(getThreadPriorityForPage(taskPage));
             }
         }
+        updatePageContentPriorities();
 
-        // We introduce a slight delay to order the loading of side pages so that we don't thrash
-        final int sleepMs = getSleepForPage(page + mNumAppsPages + mNumDownloadAppsPages);
         AsyncTaskPageData pageData = new AsyncTaskPageData(page, widgets, cellWidth, cellHeight,
             new AsyncTaskCallback() {
                 @Override
-                public void run(AppsCustomizeAsyncTask task, AsyncTaskPageData data) {
+                public void run(AppsCustomizePageTask task, AsyncTaskPageData data) {
                     try {
-                        try {
-                            Thread.sleep(sleepMs);
-                        } catch (Exception e) {}
                         loadWidgetPreviewsInBackground(task, data);
                     } finally {
                         if (task.isCancelled()) {
-                            data.cleanup(true);
+                            data.cleanup(true, mBitmapPool);
                         }
                     }
                 }
             },
             new AsyncTaskCallback() {
                 @Override
-                public void run(AppsCustomizeAsyncTask task, AsyncTaskPageData data) {
+                public void run(AppsCustomizePageTask task, AsyncTaskPageData data) {
                     try {
                         mRunningTasks.remove(task);
                         if (task.isCancelled()) return;
@@ -1210,31 +1170,29 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
                         }
                         onSyncWidgetPageItems(data);
                     } finally {
-                        data.cleanup(task.isCancelled());
+                        data.cleanup(task.isCancelled(), mBitmapPool);
                     }
                 }
             });
 
-        // Ensure that the task is appropriately prioritized and runs in parallel
-        AppsCustomizeAsyncTask t = new AppsCustomizeAsyncTask(page, mContentType,
-                AsyncTaskPageData.Type.LoadWidgetPreviewData);
-        t.setThreadPriority(getThreadPriorityForPage(page + mNumAppsPages));
-        t.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, pageData);
+        AppsCustomizePageTask t = new AppsCustomizePageTask(page, mContentType,
+                AsyncTaskPageData.Type.LoadWidgetPreviewData, pageData);
+        sPageContentExecutor.execute(t, getPageContentPriority(t));
         mRunningTasks.add(t);
     }
     /**
-     * Creates and executes a new AsyncTask to load the outlines for a page of content.
+     * Creates and queues a new task to load the outlines for a page of content.
      */
     private void prepareGenerateHoloOutlinesTask(int page, ArrayList<Object> items,
             ArrayList<Bitmap> images) {
         // Prune old tasks for this page
-        Iterator<AppsCustomizeAsyncTask> iter = mRunningTasks.iterator();
+        Iterator<AppsCustomizePageTask> iter = mRunningTasks.iterator();
         while (iter.hasNext()) {
-            AppsCustomizeAsyncTask task = iter.next();
+            AppsCustomizePageTask task = iter.next();
             int taskPage = task.page;
             if ((taskPage == page) &&
                     (task.dataType == AsyncTaskPageData.Type.LoadHolographicIconsData)) {
-                task.cancel(false);
+                sPageContentExecutor.cancel(task);
                 iter.remove();
             }
         }
@@ -1242,23 +1200,15 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
         AsyncTaskPageData pageData = new AsyncTaskPageData(page, items, images,
             new AsyncTaskCallback() {
                 @Override
-                public void run(AppsCustomizeAsyncTask task, AsyncTaskPageData data) {
+                public void run(AppsCustomizePageTask task, AsyncTaskPageData data) {
                     try {
-                        // Ensure that this task starts running at the correct priority
-                        task.syncThreadPriority();
-
                         ArrayList<Bitmap> images = data.generatedImages;
                         ArrayList<Bitmap> srcImages = data.sourceImages;
                         int count = srcImages.size();
                         Canvas c = new Canvas();
                         for (int i = 0; i < count && !task.isCancelled(); ++i) {
-                            // Before work on each item, ensure that this task is running at the correct
-                            // priority
-                            task.syncThreadPriority();
-
                             Bitmap b = srcImages.get(i);
-                            Bitmap outline = Bitmap.createBitmap(b.getWidth(), b.getHeight(),
-                                    Bitmap.Config.ARGB_8888);
+                            Bitmap outline = mBitmapPool.obtain(b.getWidth(), b.getHeight());
 
                             c.setBitmap(outline);
                             c.save();
@@ -1270,14 +1220,14 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
                         }
                     } finally {
                         if (task.isCancelled()) {
-                            data.cleanup(true);
+                            data.cleanup(true, mBitmapPool);
                         }
                     }
                 }
             },
             new AsyncTaskCallback() {
                 @Override
-                public void run(AppsCustomizeAsyncTask task, AsyncTaskPageData data) {
+                public void run(AppsCustomizePageTask task, AsyncTaskPageData data) {
                     try {
                         mRunningTasks.remove(task);
                         if (task.isCancelled()) return;
@@ -1287,17 +1237,16 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
                         }
                         onHolographicPageItemsLoaded(data);
                     } finally {
-                        data.cleanup(task.isCancelled());
+                        data.cleanup(task.isCancelled(), mBitmapPool);
                     }
                 }
             });
 
-        // Ensure that the outline task always runs in the background, serially
-        AppsCustomizeAsyncTask t =
-            new AppsCustomizeAsyncTask(page, mContentType,
-                    AsyncTaskPageData.Type.LoadHolographicIconsData);
-        t.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
-        t.executeOnExecutor(AsyncTask.SERIAL_EXECUTOR, pageData);
+        // Outlines are queued behind all of the previews
+        AppsCustomizePageTask t =
+            new AppsCustomizePageTask(page, mContentType,
+                    AsyncTaskPageData.Type.LoadHolographicIconsData, pageData);
+        sPageContentExecutor.execute(t, getPageContentPriority(t));
         mRunningTasks.add(t);
     }
 
@@ -1339,7 +1288,7 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
         // Render the background
         int offset = 0;
         int bitmapSize = mAppIconSize;
-        Bitmap preview = Bitmap.createBitmap(bitmapSize, bitmapSize, Config.ARGB_8888);
+        Bitmap preview = mBitmapPool.obtain(bitmapSize, bitmapSize);
 
         // Render the icon
         Drawable icon = mIconCache.getFullResIcon(info);
@@ -1410,7 +1359,7 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
             bitmapHeight = (int) (scale * bitmapHeight);
         }
 
-        Bitmap preview = Bitmap.createBitmap(bitmapWidth, bitmapHeight, Config.ARGB_8888);
+        Bitmap preview = mBitmapPool.obtain(bitmapWidth, bitmapHeight);
 
         if (widgetPreviewExists) {
             renderDrawableToBitmap(drawable, preview, 0, 0, bitmapWidth, bitmapHeight);
@@ -1538,6 +1487,7 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
                 if (immediate) {
                     AsyncTaskPageData data = new AsyncTaskPageData(page, items,
                             maxPreviewWidth, maxPreviewHeight, null, null);
+                    // Reads from the preview cache, but leaves writing it to the background
                     loadWidgetPreviewsInBackground(null, data);
                     onSyncWidgetPageItems(data);
                 } else {
@@ -1547,14 +1497,10 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
             }
         });
     }
-    private void loadWidgetPreviewsInBackground(AppsCustomizeAsyncTask task,
+    private void loadWidgetPreviewsInBackground(AppsCustomizePageTask task,
             AsyncTaskPageData data) {
         // loadWidgetPreviewsInBackground can be called without a task to load a set of widget
         // previews synchronously
-        if (task != null) {
-            // Ensure that this task starts running at the correct priority
-            task.syncThreadPriority();
-        }
 
         // Load each of the widget/shortcut previews
         ArrayList<Object> items = data.items;
@@ -1563,20 +1509,36 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
             if (task != null) {
                 // Ensure we haven't been cancelled yet
                 if (task.isCancelled()) break;
-                // Before work on each item, ensure that this task is running at the correct
-                // priority
-                task.syncThreadPriority();
             }
+            // Use the stored preview if there is one, so that we don't have to load the
+            // provider's resources; otherwise render it and store it for next time.
             if (item instanceof AppWidgetProviderInfo) {
                 AppWidgetProviderInfo info = (AppWidgetProviderInfo) item;
                 int[] cellSpans = mLauncher.getSpanForWidget(info, null);
-                Bitmap b = getWidgetPreview(info.provider, info.previewImage, info.icon,
-                        cellSpans[0], cellSpans[1], data.maxImageWidth, data.maxImageHeight);
+                Bitmap b = mWidgetPreviewCache.load(info.provider, cellSpans[0], cellSpans[1],
+                        data.maxImageWidth, data.maxImageHeight);
+                if (b == null) {
+                    b = getWidgetPreview(info.provider, info.previewImage, info.icon,
+                            cellSpans[0], cellSpans[1], data.maxImageWidth, data.maxImageHeight);
+                    if (task != null) {
+                        mWidgetPreviewCache.store(info.provider, cellSpans[0], cellSpans[1],
+                                data.maxImageWidth, data.maxImageHeight, b);
+                    }
+                }
                 images.add(b);
             } else if (item instanceof ResolveInfo) {
                 // Fill in the shortcuts information
                 ResolveInfo info = (ResolveInfo) item;
-                images.add(getShortcutPreview(info));
+                ComponentName component = new ComponentName(info.activityInfo.packageName,
+                        info.activityInfo.name);
+                Bitmap b = mWidgetPreviewCache.load(component, 1, 1, mAppIconSize, mAppIconSize);
+                if (b == null) {
+                    b = getShortcutPreview(info);
+                    if (task != null) {
+                        mWidgetPreviewCache.store(component, 1, 1, mAppIconSize, mAppIconSize, b);
+                    }
+                }
+                images.add(b);
             }
         }
     }
@@ -1604,11 +1566,8 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
         }
         */
 
-        // Update all thread priorities
-        for (AppsCustomizeAsyncTask task : mRunningTasks) {
-            int pageIndex = task.page + mNumAppsPages + mNumDownloadAppsPages;
-            task.setThreadPriority(getThreadPriorityForPage(pageIndex));
-        }
+        // Reorder the remaining page content
+        updatePageContentPriorities();
     }
     private void onHolographicPageItemsLoaded(AsyncTaskPageData data) {
         // Invalidate early to short-circuit children invalidates
@@ -1984,29 +1943,21 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
             Collections.sort(mDownloadApps, LauncherModel.APP_INSTALL_TIME_COMPARATOR);
         }
 
+        // Re-sync the visible page and its neighbours now; the other app pages are marked
+        // dirty and synced by loadAssociatedPages() when they are scrolled to.
+        int sortedPages = 0;
         if (mJoinWidgetsApps) {
-        	//Pekall LK
-            //for (int i = 0; i < mNumAppsPages; i++) {
-            for (int i = 0; i < mNumAppsPages + mNumDownloadAppsPages; i++) {
-            	if (i < mNumAppsPages)
-            		syncAppsPageItems(i, true);
-            	else if (i >= mNumAppsPages && i < (mNumAppsPages + mNumDownloadAppsPages))
-            		syncDownloadPageItems(i - mNumAppsPages , true);
-            }
-            
-        } else {
-            if (mContentType == ContentType.Apps) {
-                for (int i = 0; i < getChildCount(); i++) {
-                    syncAppsPageItems(i, true);
-                }
-            }
             //Pekall LK
-            else if (mContentType == ContentType.DownLoad) {
-                for (int i = 0; i < getChildCount(); i++) {
-                	syncDownloadPageItems(i, true);
-                }
-            }
+            sortedPages = mNumAppsPages + mNumDownloadAppsPages;
+        } else if (mContentType == ContentType.Apps || mContentType == ContentType.DownLoad) {
+            sortedPages = getChildCount();
+        }
+        sortedPages = Math.min(sortedPages, mDirtyPageContent.size());
+        for (int i = 0; i < sortedPages; i++) {
+            mDirtyPageContent.set(i, true);
         }
+        loadAssociatedPages(mCurrentPage, true);
+        loadAssociatedPages(mCurrentPage);
     }
 
     public void showIndicator(boolean immediately) {
@@ -2027,10 +1978,10 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
         
         //Pekall LK select the download apps
         for (int i=0;i<mApps.size();i++) {
-        	Log.d(LOG_TAG, "mApps:"+mApps.get(i).toString());
+        	if (LauncherStats.TRACE) Log.d(LOG_TAG, "mApps:"+mApps.get(i).toString());
         	if (mApps.get(i).flags == 1) {
         		mDownloadApps.add(mApps.get(i));
-        		Log.d(LOG_TAG, "mDownloadApps:"+mApps.get(i).toString());	
+        		if (LauncherStats.TRACE) Log.d(LOG_TAG, "mDownloadApps:"+mApps.get(i).toString());
         	}
         }
         if (mSortMode == SortMode.Title) {
@@ -2074,7 +2025,7 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
             //Pekall LK
         	if (index < 0 && info.flags == 1) {
         		mDownloadApps.add(-(index + 1), info);
-        		Log.d(LOG_TAG, "mDownloadApps:"+info.toString());	
+        		if (LauncherStats.TRACE) Log.d(LOG_TAG, "mDownloadApps:"+info.toString());
         	}
             
         }
@@ -2130,6 +2081,13 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
         invalidatePageData();
     }
 
+    /**
+     * The icons of some applications changed, but nothing that affects their order did.
+     */
+    public void updateAppIcons() {
+        invalidatePageData();
+    }
+
     @Override
     public void reset() {
         if (mJoinWidgetsApps) {
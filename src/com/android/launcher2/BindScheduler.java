@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher2;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.os.MessageQueue;
+import android.os.SystemClock;
+
+import java.util.ArrayDeque;
+
+/**
+ * Queue of bind tasks to run on the looper thread it was created on.
+ *
+ * Tasks posted with {@link #post(Runnable, int)} go into a priority lane.  Tasks posted with
+ * {@link #post(Runnable)} are barriers: they run in order with respect to everything else, so
+ * the lanes only reorder the tasks posted between two barriers.  Within a lane tasks are fifo.
+ *
+ * Each time the scheduler gets the thread it runs tasks until {@link #FRAME_BUDGET_MS} has
+ * passed and then yields to the looper, to keep from starving input and drawing.
+ */
+class BindScheduler {
+    static final int LANE_CURRENT_SCREEN = 0;
+    static final int LANE_HOTSEAT = 1;
+    static final int LANE_OTHER_SCREENS = 2;
+    static final int LANE_ALL_APPS = 3;
+    static final int LANE_WIDGETS = 4;
+    private static final int LANE_COUNT = 5;
+    // Barriers are accounted for as a lane of their own
+    private static final int LANE_ORDERED = LANE_COUNT;
+
+    /** How long tasks may keep the thread for before yielding to the looper, in ms. */
+    static final long FRAME_BUDGET_MS = 8;
+
+    private static final String[] LANE_NAMES = {
+        "current screen", "hotseat", "other screens", "all apps", "widgets", "ordered"
+    };
+    private static final LauncherStats.Gauge[] sDepthStats =
+            new LauncherStats.Gauge[LANE_COUNT + 1];
+    private static final LauncherStats.Histogram[] sLatencyStats =
+            new LauncherStats.Histogram[LANE_COUNT + 1];
+    static {
+        for (int i = 0; i <= LANE_COUNT; i++) {
+            sDepthStats[i] = new LauncherStats.Gauge("bind queue depth (" + LANE_NAMES[i] + ")");
+            sLatencyStats[i] = new LauncherStats.Histogram("bind latency (" + LANE_NAMES[i] + ")");
+        }
+    }
+
+    /**
+     * A posted task, which can be passed to {@link #cancel(Token)} until it has run.
+     */
+    static final class Token {
+        private final Runnable mRunnable;
+        private final int mLane;
+        private final boolean mIdle;
+        private final long mPostedNanos = System.nanoTime();
+        // Both guarded by the scheduler
+        private boolean mCancelled;
+        private boolean mTaken;
+
+        private Token(Runnable runnable, int lane, boolean idle) {
+            mRunnable = runnable;
+            mLane = lane;
+            mIdle = idle;
+        }
+    }
+
+    /**
+     * Either a single barrier, or the lane tasks posted between two barriers.
+     */
+    private static final class Segment {
+        private final Token mBarrier;
+        private final ArrayDeque<Token>[] mLanes;
+
+        @SuppressWarnings("unchecked")
+        Segment(Token barrier) {
+            mBarrier = barrier;
+            if (barrier == null) {
+                mLanes = new ArrayDeque[LANE_COUNT];
+                for (int i = 0; i < LANE_COUNT; i++) {
+                    mLanes[i] = new ArrayDeque<Token>();
+                }
+            } else {
+                mLanes = null;
+            }
+        }
+
+        /**
+         * Returns the next task in this segment, dropping any cancelled ones on the way.
+         */
+        Token peek() {
+            if (mBarrier != null) {
+                return mBarrier.mCancelled || mBarrier.mTaken ? null : mBarrier;
+            }
+            for (ArrayDeque<Token> lane : mLanes) {
+                Token token;
+                while ((token = lane.peekFirst()) != null && token.mCancelled) {
+                    lane.removeFirst();
+                }
+                if (token != null) {
+                    return token;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final ArrayDeque<Segment> mSegments = new ArrayDeque<Segment>();
+    private final int[] mDepth = new int[LANE_COUNT + 1];
+    private final MessageQueue mMessageQueue = Looper.myQueue();
+    private final Impl mHandler = new Impl();
+    // Whether a message or idle handler is pending, or tasks are being run
+    private boolean mScheduled;
+
+    private class Impl extends Handler implements MessageQueue.IdleHandler {
+        public void handleMessage(Message msg) {
+            runTasks(false);
+        }
+
+        public boolean queueIdle() {
+            runTasks(true);
+            return false;
+        }
+    }
+
+    public BindScheduler() {
+    }
+
+    /** Schedule runnable to run after everything that's on the queue right now. */
+    public Token post(Runnable runnable) {
+        final Token token = new Token(runnable, LANE_ORDERED, false);
+        synchronized (this) {
+            mSegments.addLast(new Segment(token));
+            enqueuedLocked(token);
+        }
+        return token;
+    }
+
+    /**
+     * Schedule runnable to run after the last barrier, ahead of anything posted since then
+     * to a lower priority lane.
+     */
+    public Token post(Runnable runnable, int lane) {
+        final Token token = new Token(runnable, lane, false);
+        synchronized (this) {
+            Segment segment = mSegments.peekLast();
+            if (segment == null || segment.mBarrier != null) {
+                segment = new Segment(null);
+                mSegments.addLast(segment);
+            }
+            segment.mLanes[lane].addLast(token);
+            enqueuedLocked(token);
+        }
+        return token;
+    }
+
+    /** Schedule runnable to run when the queue goes idle. */
+    public Token postIdle(Runnable runnable) {
+        final Token token = new Token(runnable, LANE_ORDERED, true);
+        synchronized (this) {
+            mSegments.addLast(new Segment(token));
+            enqueuedLocked(token);
+        }
+        return token;
+    }
+
+    /**
+     * Drop the task if it hasn't run yet.
+     */
+    public synchronized void cancel(Token token) {
+        if (!token.mCancelled && !token.mTaken) {
+            token.mCancelled = true;
+            updateDepthLocked(token.mLane, -1);
+        }
+    }
+
+    public synchronized void cancel() {
+        for (Segment segment : mSegments) {
+            Token token;
+            while ((token = segment.peek()) != null) {
+                cancel(token);
+            }
+        }
+        mSegments.clear();
+    }
+
+    private void enqueuedLocked(Token token) {
+        updateDepthLocked(token.mLane, 1);
+        if (!mScheduled) {
+            mScheduled = true;
+            mHandler.sendEmptyMessage(1);
+        }
+    }
+
+    private void updateDepthLocked(int lane, int delta) {
+        mDepth[lane] += delta;
+        sDepthStats[lane].set(mDepth[lane]);
+    }
+
+    /**
+     * Returns the next task to run, dropping exhausted segments.
+     */
+    private Token peekLocked() {
+        Segment segment;
+        while ((segment = mSegments.peekFirst()) != null) {
+            final Token token = segment.peek();
+            if (token != null) {
+                return token;
+            }
+            mSegments.removeFirst();
+        }
+        return null;
+    }
+
+    private void runTasks(boolean idle) {
+        final long deadline = SystemClock.uptimeMillis() + FRAME_BUDGET_MS;
+        while (true) {
+            final Token token;
+            synchronized (this) {
+                token = peekLocked();
+                if (token == null) {
+                    mScheduled = false;
+                    return;
+                }
+                if (token.mIdle && !idle) {
+                    // Run it once the looper has nothing better to do
+                    mMessageQueue.addIdleHandler(mHandler);
+                    return;
+                }
+                token.mTaken = true;
+                if (token.mLane != LANE_ORDERED) {
+                    mSegments.peekFirst().mLanes[token.mLane].removeFirst();
+                }
+                updateDepthLocked(token.mLane, -1);
+            }
+            sLatencyStats[token.mLane].recordSince(token.mPostedNanos);
+            token.mRunnable.run();
+
+            // Only the first task counts as running on idle
+            idle = false;
+            if (SystemClock.uptimeMillis() >= deadline) {
+                mHandler.sendEmptyMessage(1);
+                return;
+            }
+        }
+    }
+}
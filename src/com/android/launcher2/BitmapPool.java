@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher2;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Pool of mutable ARGB_8888 bitmaps, bucketed by size, for the widget previews and
+ * holographic outlines that the customize tray renders and throws away as pages are synced.
+ *
+ * Bitmaps handed to {@link #release(Bitmap)} must no longer be drawn by anyone.  The pool holds
+ * at most a fixed number of bytes; when it would go over, the bitmaps released longest ago are
+ * recycled.  Safe to use from any thread.
+ */
+final class BitmapPool {
+    // The pool may use up to 1/MEMORY_CLASS_DIVISOR of the per-app heap
+    private static final int MEMORY_CLASS_DIVISOR = 16;
+
+    private static final LauncherStats.Counter sHits = new LauncherStats.Counter("bitmap pool hits");
+    private static final LauncherStats.Counter sMisses =
+            new LauncherStats.Counter("bitmap pool misses");
+    private static final LauncherStats.Gauge sSize = new LauncherStats.Gauge("bitmap pool bytes");
+
+    private final HashMap<Long, ArrayList<Bitmap>> mBuckets = new HashMap<Long, ArrayList<Bitmap>>();
+    // Every pooled bitmap, least recently released first
+    private final ArrayDeque<Bitmap> mOrder = new ArrayDeque<Bitmap>();
+    private final int mMaxSizeBytes;
+    private int mSizeBytes;
+
+    BitmapPool(Context context) {
+        final ActivityManager am =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        mMaxSizeBytes = am.getMemoryClass() * 1024 * 1024 / MEMORY_CLASS_DIVISOR;
+    }
+
+    /**
+     * Returns a transparent, mutable ARGB_8888 bitmap of the given size, reusing a pooled one
+     * if there is one.
+     */
+    Bitmap obtain(int width, int height) {
+        Bitmap bitmap = null;
+        synchronized (this) {
+            final ArrayList<Bitmap> bucket = mBuckets.get(getKey(width, height));
+            if (bucket != null && !bucket.isEmpty()) {
+                bitmap = bucket.remove(bucket.size() - 1);
+                mOrder.remove(bitmap);
+                updateSizeLocked(-getSize(bitmap));
+            }
+        }
+        if (bitmap != null) {
+            sHits.increment();
+            bitmap.eraseColor(Color.TRANSPARENT);
+            return bitmap;
+        }
+        sMisses.increment();
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Hand a bitmap back for reuse.  Bitmaps that can't be drawn into again are ignored, as
+     * are ones too large to ever fit.
+     */
+    void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()
+                || bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+            return;
+        }
+        final int size = getSize(bitmap);
+        if (size > mMaxSizeBytes) {
+            bitmap.recycle();
+            return;
+        }
+        synchronized (this) {
+            final Long key = getKey(bitmap.getWidth(), bitmap.getHeight());
+            ArrayList<Bitmap> bucket = mBuckets.get(key);
+            if (bucket == null) {
+                bucket = new ArrayList<Bitmap>();
+                mBuckets.put(key, bucket);
+            } else if (bucket.contains(bitmap)) {
+                return;
+            }
+            bucket.add(bitmap);
+            mOrder.addLast(bitmap);
+            updateSizeLocked(size);
+            trimToSizeLocked(mMaxSizeBytes);
+        }
+    }
+
+    void trimMemory(int level) {
+        synchronized (this) {
+            if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+                trimToSizeLocked(0);
+            }
+        }
+    }
+
+    private void trimToSizeLocked(int maxSizeBytes) {
+        while (mSizeBytes > maxSizeBytes) {
+            final Bitmap eldest = mOrder.removeFirst();
+            final Long key = getKey(eldest.getWidth(), eldest.getHeight());
+            final ArrayList<Bitmap> bucket = mBuckets.get(key);
+            bucket.remove(eldest);
+            if (bucket.isEmpty()) {
+                mBuckets.remove(key);
+            }
+            updateSizeLocked(-getSize(eldest));
+            eldest.recycle();
+        }
+    }
+
+    private void updateSizeLocked(int delta) {
+        mSizeBytes += delta;
+        sSize.set(mSizeBytes);
+    }
+
+    private static Long getKey(int width, int height) {
+        return ((long) width << 32) | (height & 0xffffffffL);
+    }
+
+    private static int getSize(Bitmap bitmap) {
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+}
@@ -140,8 +140,8 @@ public class BubbleTextView extends TextView {
                     // background to null so that it will get created when the view is drawn.
                     mPressedOrFocusedBackground = null;
                 } else {
-                    mPressedOrFocusedBackground = createGlowingOutline(
-                            mTempCanvas, mFocusedGlowColor, mFocusedOutlineColor);
+                    mPressedOrFocusedBackground = getGlowingOutline(
+                            mFocusedGlowColor, mFocusedOutlineColor);
                 }
                 mStayPressed = false;
                 setCellLayoutPressedOrFocusedIcon();
@@ -200,6 +200,30 @@ public class BubbleTextView extends TextView {
         return b;
     }
 
+    /**
+     * Returns the glowing outline for the current icon.  Outlines of shared icons are kept in
+     * the IconCache alongside the icon, so the blur is only done the first time any view
+     * showing the icon is pressed or focused at this size and color.
+     */
+    private Bitmap getGlowingOutline(int outlineColor, int glowColor) {
+        final Object tag = getTag();
+        final IconHandle icon = (tag instanceof ShortcutInfo) ?
+                ((ShortcutInfo) tag).getIconHandle() : null;
+        if (icon == null || !icon.isShared()) {
+            return createGlowingOutline(mTempCanvas, outlineColor, glowColor);
+        }
+        final IconCache iconCache =
+                ((LauncherApplication) getContext().getApplicationContext()).getIconCache();
+        final String style = getWidth() + "x" + getHeight() + "/" +
+                Integer.toHexString(outlineColor) + "/" + Integer.toHexString(glowColor);
+        Bitmap outline = iconCache.getOutline(icon, style);
+        if (outline == null) {
+            outline = createGlowingOutline(mTempCanvas, outlineColor, glowColor);
+            iconCache.putOutline(icon, style, outline);
+        }
+        return outline;
+    }
+
     @Override
     public boolean onTouchEvent(MotionEvent event) {
         // Call the superclass onTouchEvent first, because sometimes it changes the state to
@@ -212,8 +236,8 @@ public class BubbleTextView extends TextView {
                 // we pre-create it on ACTION_DOWN (it takes a small but perceptible amount of time
                 // to create it)
                 if (mPressedOrFocusedBackground == null) {
-                    mPressedOrFocusedBackground = createGlowingOutline(
-                            mTempCanvas, mPressedGlowColor, mPressedOutlineColor);
+                    mPressedOrFocusedBackground = getGlowingOutline(
+                            mPressedGlowColor, mPressedOutlineColor);
                 }
                 // Invalidate so the pressed state is visible, or set a flag so we know that we
                 // have to call invalidate as soon as the state is "pressed"
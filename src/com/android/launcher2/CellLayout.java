@@ -83,7 +83,7 @@ public class CellLayout extends ViewGroup {
     private final PointF mTmpPointF = new PointF();
     int[] mTempLocation = new int[2];
 
-    boolean[][] mOccupied;
+    CellOccupancy mOccupied;
     private boolean mLastDownOnOccupiedCell = false;
 
     private OnTouchListener mInterceptTouchListener;
@@ -162,7 +162,7 @@ public class CellLayout extends ViewGroup {
         mMaxGap = a.getDimensionPixelSize(R.styleable.CellLayout_maxGap, 0);
         mCountX = LauncherModel.getCellCountX();
         mCountY = LauncherModel.getCellCountY();
-        mOccupied = new boolean[mCountX][mCountY];
+        mOccupied = new CellOccupancy(mCountX, mCountY);
 
         a.recycle();
 
@@ -299,7 +299,7 @@ public class CellLayout extends ViewGroup {
     public void setGridSize(int x, int y) {
         mCountX = x;
         mCountY = y;
-        mOccupied = new boolean[mCountX][mCountY];
+        mOccupied = new CellOccupancy(mCountX, mCountY);
         requestLayout();
     }
 
@@ -977,7 +977,7 @@ public class CellLayout extends ViewGroup {
     public boolean animateChildToPosition(final View child, int cellX, int cellY, int duration,
             int delay) {
         CellLayoutChildren clc = getChildrenLayout();
-        if (clc.indexOfChild(child) != -1 && !mOccupied[cellX][cellY]) {
+        if (clc.indexOfChild(child) != -1 && !mOccupied.isOccupied(cellX, cellY)) {
             final LayoutParams lp = (LayoutParams) child.getLayoutParams();
             final ItemInfo info = (ItemInfo) child.getTag();
 
@@ -989,8 +989,8 @@ public class CellLayout extends ViewGroup {
 
             int oldX = lp.x;
             int oldY = lp.y;
-            mOccupied[lp.cellX][lp.cellY] = false;
-            mOccupied[cellX][cellY] = true;
+            mOccupied.set(lp.cellX, lp.cellY, false);
+            mOccupied.set(cellX, cellY, true);
 
             lp.isLockedToGrid = true;
             lp.cellX = info.cellX = cellX;
@@ -1194,35 +1194,32 @@ public class CellLayout extends ViewGroup {
         final int[] bestXY = result != null ? result : new int[2];
         double bestDistance = Double.MAX_VALUE;
 
-        final int countX = mCountX;
         final int countY = mCountY;
-        final boolean[][] occupied = mOccupied;
+        final CellOccupancy occupied = mOccupied;
+        final long allOrigins = occupied.getOrigins(spanX);
+
+        // The column the point falls on, as a fraction.  Within a row, distance only grows
+        // with the distance in columns, so each row has a single candidate.
+        final int pitchX = mCellWidth + mWidthGap;
+        final float column = pitchX > 0 ?
+                (pixelX - getPaddingLeft() - mCellWidth / 2) / (float) pitchX : 0;
 
         for (int y = 0; y < countY - (spanY - 1); y++) {
-            inner:
-            for (int x = 0; x < countX - (spanX - 1); x++) {
-                if (ignoreOccupied) {
-                    for (int i = 0; i < spanX; i++) {
-                        for (int j = 0; j < spanY; j++) {
-                            if (occupied[x + i][y + j]) {
-                                // small optimization: we can skip to after the column we
-                                // just found an occupied cell
-                                x += i;
-                                continue inner;
-                            }
-                        }
-                    }
-                }
-                final int[] cellXY = mTmpXY;
-                cellToCenterPoint(x, y, cellXY);
-
-                double distance = Math.sqrt(Math.pow(cellXY[0] - pixelX, 2)
-                        + Math.pow(cellXY[1] - pixelY, 2));
-                if (distance <= bestDistance) {
-                    bestDistance = distance;
-                    bestXY[0] = x;
-                    bestXY[1] = y;
-                }
+            final long origins = ignoreOccupied ?
+                    occupied.getVacantOrigins(y, spanX, spanY) : allOrigins;
+            final int x = CellOccupancy.nearestOrigin(origins, column);
+            if (x < 0) {
+                continue;
+            }
+            final int[] cellXY = mTmpXY;
+            cellToCenterPoint(x, y, cellXY);
+
+            double distance = Math.sqrt(Math.pow(cellXY[0] - pixelX, 2)
+                    + Math.pow(cellXY[1] - pixelY, 2));
+            if (distance <= bestDistance) {
+                bestDistance = distance;
+                bestXY[0] = x;
+                bestXY[1] = y;
             }
         }
         // re-mark space taken by ignoreView as occupied
@@ -1352,28 +1349,9 @@ public class CellLayout extends ViewGroup {
                 endY = Math.min(endY, intersectY + (spanY - 1) + (spanY == 1 ? 1 : 0));
             }
 
-            for (int y = startY; y < endY && !foundCell; y++) {
-                inner:
-                for (int x = startX; x < endX; x++) {
-                    for (int i = 0; i < spanX; i++) {
-                        for (int j = 0; j < spanY; j++) {
-                            if (mOccupied[x + i][y + j]) {
-                                // small optimization: we can skip to after the column we just found
-                                // an occupied cell
-                                x += i;
-                                continue inner;
-                            }
-                        }
-                    }
-                    if (cellXY != null) {
-                        cellXY[0] = x;
-                        cellXY[1] = y;
-                    }
-                    foundCell = true;
-                    break;
-                }
-            }
-            if (intersectX == -1 && intersectY == -1) {
+            foundCell = mOccupied.findVacantCell(cellXY, spanX, spanY, startX, endX,
+                    startY, endY);
+            if (foundCell || intersectX == -1 && intersectY == -1) {
                 break;
             } else {
                 // if we failed to find anything, try again but without any requirements of
@@ -1543,39 +1521,11 @@ public class CellLayout extends ViewGroup {
      */
     public boolean getVacantCell(int[] vacant, int spanX, int spanY) {
 
-        return findVacantCell(vacant, spanX, spanY, mCountX, mCountY, mOccupied);
-    }
-
-    static boolean findVacantCell(int[] vacant, int spanX, int spanY,
-            int xCount, int yCount, boolean[][] occupied) {
-
-        for (int y = 0; y < yCount; y++) {
-            for (int x = 0; x < xCount; x++) {
-                boolean available = !occupied[x][y];
-out:            for (int i = x; i < x + spanX - 1 && x < xCount; i++) {
-                    for (int j = y; j < y + spanY - 1 && y < yCount; j++) {
-                        available = available && !occupied[i][j];
-                        if (!available) break out;
-                    }
-                }
-
-                if (available) {
-                    vacant[0] = x;
-                    vacant[1] = y;
-                    return true;
-                }
-            }
-        }
-
-        return false;
+        return mOccupied.findVacantCell(vacant, spanX, spanY);
     }
 
     private void clearOccupiedCells() {
-        for (int x = 0; x < mCountX; x++) {
-            for (int y = 0; y < mCountY; y++) {
-                mOccupied[x][y] = false;
-            }
-        }
+        mOccupied.clear();
     }
 
     /**
@@ -1585,45 +1535,29 @@ out:            for (int i = x; i < x + spanX - 1 && x < xCount; i++) {
      */
     public void getExpandabilityArrayForView(View view, int[] expandability) {
         final LayoutParams lp = (LayoutParams) view.getLayoutParams();
-        boolean flag;
+        final CellOccupancy occupied = mOccupied;
 
         expandability[AppWidgetResizeFrame.LEFT] = 0;
         for (int x = lp.cellX - 1; x >= 0; x--) {
-            flag = false;
-            for (int y = lp.cellY; y < lp.cellY + lp.cellVSpan; y++) {
-                if (mOccupied[x][y]) flag = true;
-            }
-            if (flag) break;
+            if (!occupied.isRegionVacant(x, lp.cellY, 1, lp.cellVSpan)) break;
             expandability[AppWidgetResizeFrame.LEFT]++;
         }
 
         expandability[AppWidgetResizeFrame.TOP] = 0;
         for (int y = lp.cellY - 1; y >= 0; y--) {
-            flag = false;
-            for (int x = lp.cellX; x < lp.cellX + lp.cellHSpan; x++) {
-                if (mOccupied[x][y]) flag = true;
-            }
-            if (flag) break;
+            if (!occupied.isRegionVacant(lp.cellX, y, lp.cellHSpan, 1)) break;
             expandability[AppWidgetResizeFrame.TOP]++;
         }
 
         expandability[AppWidgetResizeFrame.RIGHT] = 0;
         for (int x = lp.cellX + lp.cellHSpan; x < mCountX; x++) {
-            flag = false;
-            for (int y = lp.cellY; y < lp.cellY + lp.cellVSpan; y++) {
-                if (mOccupied[x][y]) flag = true;
-            }
-            if (flag) break;
+            if (!occupied.isRegionVacant(x, lp.cellY, 1, lp.cellVSpan)) break;
             expandability[AppWidgetResizeFrame.RIGHT]++;
         }
 
         expandability[AppWidgetResizeFrame.BOTTOM] = 0;
         for (int y = lp.cellY + lp.cellVSpan; y < mCountY; y++) {
-            flag = false;
-            for (int x = lp.cellX; x < lp.cellX + lp.cellHSpan; x++) {
-                if (mOccupied[x][y]) flag = true;
-            }
-            if (flag) break;
+            if (!occupied.isRegionVacant(lp.cellX, y, lp.cellHSpan, 1)) break;
             expandability[AppWidgetResizeFrame.BOTTOM]++;
         }
     }
@@ -1647,11 +1581,7 @@ out:            for (int i = x; i < x + spanX - 1 && x < xCount; i++) {
     }
 
     private void markCellsForView(int cellX, int cellY, int spanX, int spanY, boolean value) {
-        for (int x = cellX; x < cellX + spanX && x < mCountX; x++) {
-            for (int y = cellY; y < cellY + spanY && y < mCountY; y++) {
-                mOccupied[x][y] = value;
-            }
-        }
+        mOccupied.markCells(cellX, cellY, spanX, spanY, value);
     }
 
     public int getDesiredWidth() {
@@ -1666,7 +1596,7 @@ out:            for (int i = x; i < x + spanX - 1 && x < xCount; i++) {
 
     public boolean isOccupied(int x, int y) {
         if (x < mCountX && y < mCountY) {
-            return mOccupied[x][y];
+            return mOccupied.isOccupied(x, y);
         } else {
             throw new RuntimeException("Position exceeds the bound of this CellLayout");
         }
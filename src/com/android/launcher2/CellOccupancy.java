@@ -0,0 +1,290 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher2;
+
+import android.util.SparseArray;
+
+/**
+ * Which cells of a grid are occupied, stored as one bitmask per row.
+ *
+ * Bit x of row y is set when cell (x, y) is occupied, so asking where a span fits is a few
+ * shifts and ands per row rather than a test of every cell under every origin.  Grids may be
+ * at most 64 cells wide.  Not thread safe.
+ *
+ * The vacant origins of every span size that has been asked about are kept as an index, which
+ * is patched for just the rows a change can affect whenever cells are marked.  Repeated
+ * queries for the same span, as made on every move of a drag, cost one array read per row.
+ */
+final class CellOccupancy {
+    static final int MAX_COUNT_X = 64;
+
+    private final int mCountX;
+    private final int mCountY;
+    private final long[] mRows;
+    // Bits 0 .. mCountX - 1
+    private final long mRowMask;
+    // Vacant origins per row, keyed by getSpanKey(spanX, spanY)
+    private final SparseArray<long[]> mVacantOrigins = new SparseArray<long[]>();
+
+    CellOccupancy(int countX, int countY) {
+        if (countX < 0 || countX > MAX_COUNT_X || countY < 0) {
+            throw new IllegalArgumentException("Invalid grid size " + countX + "x" + countY
+                    + ", grids may be at most " + MAX_COUNT_X + " cells wide");
+        }
+        mCountX = countX;
+        mCountY = countY;
+        mRows = new long[countY];
+        mRowMask = countX == MAX_COUNT_X ? -1L : (1L << countX) - 1;
+    }
+
+    int getCountX() {
+        return mCountX;
+    }
+
+    int getCountY() {
+        return mCountY;
+    }
+
+    boolean isOccupied(int x, int y) {
+        checkCell(x, y);
+        return (mRows[y] & (1L << x)) != 0;
+    }
+
+    void set(int x, int y, boolean occupied) {
+        checkCell(x, y);
+        if (occupied) {
+            mRows[y] |= 1L << x;
+        } else {
+            mRows[y] &= ~(1L << x);
+        }
+        updateIndex(y, y + 1);
+    }
+
+    /**
+     * Mark every cell of the span as occupied or vacant.  The parts of the span that fall
+     * outside of the grid are ignored.
+     */
+    void markCells(int cellX, int cellY, int spanX, int spanY, boolean occupied) {
+        final long mask = getColumnMask(cellX, cellX + spanX);
+        final int startY = Math.max(cellY, 0);
+        final int endY = Math.min(cellY + spanY, mCountY);
+        if (mask == 0 || startY >= endY) {
+            return;
+        }
+        for (int y = startY; y < endY; y++) {
+            if (occupied) {
+                mRows[y] |= mask;
+            } else {
+                mRows[y] &= ~mask;
+            }
+        }
+        updateIndex(startY, endY);
+    }
+
+    void clear() {
+        for (int y = 0; y < mCountY; y++) {
+            mRows[y] = 0;
+        }
+        updateIndex(0, mCountY);
+    }
+
+    /**
+     * Returns true if the span lies within the grid and none of its cells are occupied.
+     */
+    boolean isRegionVacant(int cellX, int cellY, int spanX, int spanY) {
+        if (cellX < 0 || cellY < 0 || spanX < 1 || spanY < 1
+                || cellX + spanX > mCountX || cellY + spanY > mCountY) {
+            return false;
+        }
+        final long mask = getColumnMask(cellX, cellX + spanX);
+        for (int y = cellY; y < cellY + spanY; y++) {
+            if ((mRows[y] & mask) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the columns at which a vacant span of the given size can have its top left
+     * corner in row y, as a bitmask.
+     */
+    long getVacantOrigins(int y, int spanX, int spanY) {
+        if (spanX < 1 || spanY < 1 || spanX > mCountX || y < 0 || y + spanY > mCountY) {
+            return 0;
+        }
+        final int key = getSpanKey(spanX, spanY);
+        long[] origins = mVacantOrigins.get(key);
+        if (origins == null) {
+            origins = new long[mCountY];
+            for (int j = 0; j + spanY <= mCountY; j++) {
+                origins[j] = computeVacantOrigins(j, spanX, spanY);
+            }
+            mVacantOrigins.put(key, origins);
+        }
+        return origins[y];
+    }
+
+    /**
+     * Returns the column of the set bit in origins that is nearest to the fractional column x,
+     * preferring the higher column on a tie, or -1 if there are no set bits.  Every other set
+     * bit is further away than the nearest set bit on the same side of x, so only those two
+     * need to be compared.
+     */
+    static int nearestOrigin(long origins, float x) {
+        if (origins == 0) {
+            return -1;
+        }
+        final int floor = (int) Math.floor(x);
+        int below = -1;
+        int above = -1;
+        if (floor >= 0) {
+            final long belowMask = floor >= MAX_COUNT_X - 1 ? origins
+                    : origins & ((1L << (floor + 1)) - 1);
+            if (belowMask != 0) {
+                below = MAX_COUNT_X - 1 - Long.numberOfLeadingZeros(belowMask);
+            }
+        }
+        if (floor < MAX_COUNT_X - 1) {
+            final long aboveMask = floor < 0 ? origins : origins & ~((1L << (floor + 1)) - 1);
+            if (aboveMask != 0) {
+                above = Long.numberOfTrailingZeros(aboveMask);
+            }
+        }
+        if (below < 0) {
+            return above;
+        } else if (above < 0) {
+            return below;
+        }
+        return (x - below) < (above - x) ? below : above;
+    }
+
+    /**
+     * Returns the columns at which a span of the given width could start in row y, whether or
+     * not the cells are vacant, as a bitmask.
+     */
+    long getOrigins(int spanX) {
+        return spanX < 1 || spanX > mCountX ? 0 : mRowMask >>> (spanX - 1);
+    }
+
+    /**
+     * Finds the first vacant span of the given size, scanning rows top to bottom and each row
+     * left to right.
+     *
+     * @param vacant receives the top left cell of the span, if one is found; may be null
+     * @return true if a vacant span was found
+     */
+    boolean findVacantCell(int[] vacant, int spanX, int spanY) {
+        return findVacantCell(vacant, spanX, spanY, 0, mCountX, 0, mCountY);
+    }
+
+    /**
+     * Like {@link #findVacantCell(int[], int, int)}, but only considers top left corners in
+     * columns [startX, endX) and rows [startY, endY).
+     */
+    boolean findVacantCell(int[] vacant, int spanX, int spanY, int startX, int endX,
+            int startY, int endY) {
+        final long columns = getColumnMask(startX, endX);
+        for (int y = Math.max(startY, 0); y < endY; y++) {
+            final long origins = getVacantOrigins(y, spanX, spanY) & columns;
+            if (origins != 0) {
+                if (vacant != null) {
+                    vacant[0] = Long.numberOfTrailingZeros(origins);
+                    vacant[1] = y;
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long computeVacantOrigins(int y, int spanX, int spanY) {
+        long origins = mRowMask;
+        for (int j = y; j < y + spanY && origins != 0; j++) {
+            origins &= getHorizontalFits(mRows[j], spanX);
+        }
+        return origins;
+    }
+
+    /**
+     * Recompute the indexed origins that rows [startY, endY) take part in.
+     */
+    private void updateIndex(int startY, int endY) {
+        for (int i = mVacantOrigins.size() - 1; i >= 0; i--) {
+            final int key = mVacantOrigins.keyAt(i);
+            final int spanX = key >>> 16;
+            final int spanY = key & 0xffff;
+            final long[] origins = mVacantOrigins.valueAt(i);
+            final int last = Math.min(endY - 1, mCountY - spanY);
+            for (int y = Math.max(startY - spanY + 1, 0); y <= last; y++) {
+                origins[y] = computeVacantOrigins(y, spanX, spanY);
+            }
+        }
+    }
+
+    /**
+     * Shifts only use the low six bits of the distance, so a column outside the grid would
+     * silently alias another one.
+     */
+    private void checkCell(int x, int y) {
+        if (x < 0 || x >= mCountX || y < 0 || y >= mCountY) {
+            throw new IndexOutOfBoundsException("Cell (" + x + ", " + y + ") is outside of the "
+                    + mCountX + "x" + mCountY + " grid");
+        }
+    }
+
+    private static int getSpanKey(int spanX, int spanY) {
+        return (spanX << 16) | spanY;
+    }
+
+    /**
+     * Returns the positions in a row at which spanX consecutive vacant cells start.
+     */
+    long getHorizontalFits(long row, int spanX) {
+        final long free = ~row & mRowMask;
+        long fits = free;
+        for (int i = 1; i < spanX && fits != 0; i++) {
+            fits &= free >>> i;
+        }
+        return fits;
+    }
+
+    /**
+     * Returns a mask of the columns [startX, endX), clipped to the grid.
+     */
+    private long getColumnMask(int startX, int endX) {
+        startX = Math.max(startX, 0);
+        endX = Math.min(endX, mCountX);
+        if (startX >= endX) {
+            return 0;
+        }
+        final long upTo = endX == MAX_COUNT_X ? -1L : (1L << endX) - 1;
+        return upTo & ~((1L << startX) - 1);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (int y = 0; y < mCountY; y++) {
+            sb.append(y == 0 ? "[ " : " | ");
+            for (int x = 0; x < mCountX; x++) {
+                sb.append(isOccupied(x, y) ? '#' : '.');
+            }
+        }
+        return sb.append(" ]").toString();
+    }
+}
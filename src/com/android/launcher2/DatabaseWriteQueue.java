@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher2;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.os.Handler;
+import android.os.RemoteException;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * Write-behind queue for changes to the favorites table.
+ *
+ * Writes are held for {@link #WRITE_WINDOW} ms and then applied as a single batch, in one
+ * transaction with at most one change notification.  Successive writes to the same item are
+ * merged into one operation, so a drag that moves a dozen items only costs a dozen rows.
+ * Anything that reads the favorites table must {@link #flush()} first, or read it through
+ * {@link #queryWithPending(String[])}.
+ */
+class DatabaseWriteQueue {
+    private static final String TAG = "Launcher.DatabaseWriteQueue";
+    private static final boolean LOGD = false;
+
+    /** How long writes are held back so that they can be merged with later ones, in ms. */
+    static final int WRITE_WINDOW = 16;
+
+    private static final int OP_INSERT = 0;
+    private static final int OP_UPDATE = 1;
+    private static final int OP_DELETE = 2;
+    private static final int OP_DELETE_CONTENTS = 3;
+
+    private static class Op {
+        final int type;
+        final long id;
+        ContentValues values;
+        boolean cancelled;
+
+        Op(int type, long id, ContentValues values) {
+            this.type = type;
+            this.id = id;
+            this.values = values;
+        }
+    }
+
+    private final ContentResolver mResolver;
+    private final Handler mHandler;
+
+    // The pending operations, in the order they were queued
+    private ArrayList<Op> mOps = new ArrayList<Op>();
+    // The last operation on each item that later operations on it can still be merged into
+    private final HashMap<Long, Op> mMergeable = new HashMap<Long, Op>();
+    private boolean mNotify;
+    private boolean mScheduled;
+    // The operations of the batch being applied, until it has been
+    private ArrayList<Op> mApplying;
+    // How many batches have been applied, so readers can tell if one landed while they read
+    private int mBatchesApplied;
+
+    // Held while a batch is being applied, so that batches are applied in order
+    private final Object mFlushLock = new Object();
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * @param handler the handler that batches are applied on
+     */
+    DatabaseWriteQueue(ContentResolver resolver, Handler handler) {
+        mResolver = resolver;
+        mHandler = handler;
+    }
+
+    synchronized void insert(long id, ContentValues values, boolean notify) {
+        final Op op = new Op(OP_INSERT, id, new ContentValues(values));
+        mOps.add(op);
+        mMergeable.put(id, op);
+        mNotify |= notify;
+        LauncherStats.DB_WRITES_QUEUED.increment();
+        scheduleLocked();
+    }
+
+    synchronized void update(long id, ContentValues values) {
+        LauncherStats.DB_WRITES_QUEUED.increment();
+        final Op pending = mMergeable.get(id);
+        if (pending != null) {
+            if (pending.type == OP_DELETE) {
+                // Nothing left to update
+                LauncherStats.DB_WRITES_COALESCED.increment();
+                return;
+            }
+            // Fold the new values into the pending insert or update
+            pending.values.putAll(values);
+            LauncherStats.DB_WRITES_COALESCED.increment();
+            return;
+        }
+        final Op op = new Op(OP_UPDATE, id, new ContentValues(values));
+        mOps.add(op);
+        mMergeable.put(id, op);
+        scheduleLocked();
+    }
+
+    synchronized void delete(long id) {
+        LauncherStats.DB_WRITES_QUEUED.increment();
+        final Op pending = mMergeable.get(id);
+        if (pending != null) {
+            if (pending.type == OP_DELETE) {
+                LauncherStats.DB_WRITES_COALESCED.increment();
+                return;
+            }
+            pending.cancelled = true;
+            LauncherStats.DB_WRITES_COALESCED.increment();
+            if (pending.type == OP_INSERT) {
+                // The row never made it to the database, so there's nothing to delete
+                mMergeable.remove(id);
+                return;
+            }
+        }
+        final Op op = new Op(OP_DELETE, id, null);
+        mOps.add(op);
+        mMergeable.put(id, op);
+        scheduleLocked();
+    }
+
+    /**
+     * Deletes every item in the supplied folder.
+     */
+    synchronized void deleteContents(long folderId) {
+        LauncherStats.DB_WRITES_QUEUED.increment();
+        mOps.add(new Op(OP_DELETE_CONTENTS, folderId, null));
+        // We don't know which rows this will hit, so don't merge anything across it
+        mMergeable.clear();
+        scheduleLocked();
+    }
+
+    private void scheduleLocked() {
+        if (!mScheduled) {
+            mScheduled = true;
+            mHandler.postDelayed(mFlushRunnable, WRITE_WINDOW);
+        }
+    }
+
+    /**
+     * Applies everything that has been queued so far, on the calling thread.
+     */
+    void flush() {
+        synchronized (mFlushLock) {
+            final ArrayList<Op> ops;
+            final boolean notify;
+            synchronized (this) {
+                if (mScheduled) {
+                    mHandler.removeCallbacks(mFlushRunnable);
+                    mScheduled = false;
+                }
+                if (mOps.isEmpty()) {
+                    return;
+                }
+                ops = mOps;
+                notify = mNotify;
+                mApplying = ops;
+                mOps = new ArrayList<Op>();
+                mMergeable.clear();
+                mNotify = false;
+            }
+
+            final ArrayList<ContentProviderOperation> batch =
+                    new ArrayList<ContentProviderOperation>(ops.size());
+            for (Op op : ops) {
+                if (op.cancelled) {
+                    continue;
+                }
+                switch (op.type) {
+                    case OP_INSERT:
+                        batch.add(ContentProviderOperation.newInsert(
+                                LauncherSettings.Favorites.CONTENT_URI_NO_NOTIFICATION)
+                                .withValues(op.values).build());
+                        break;
+                    case OP_UPDATE:
+                        batch.add(ContentProviderOperation.newUpdate(
+                                LauncherSettings.Favorites.getContentUri(op.id, false))
+                                .withValues(op.values).build());
+                        break;
+                    case OP_DELETE:
+                        batch.add(ContentProviderOperation.newDelete(
+                                LauncherSettings.Favorites.getContentUri(op.id, false)).build());
+                        break;
+                    case OP_DELETE_CONTENTS:
+                        batch.add(ContentProviderOperation.newDelete(
+                                LauncherSettings.Favorites.CONTENT_URI_NO_NOTIFICATION)
+                                .withSelection(LauncherSettings.Favorites.CONTAINER + "=" + op.id,
+                                        null)
+                                .build());
+                        break;
+                }
+            }
+            if (batch.isEmpty()) {
+                finishBatch();
+                return;
+            }
+
+            try {
+                mResolver.applyBatch(LauncherProvider.AUTHORITY, batch);
+                LauncherStats.DB_BATCHES_APPLIED.increment();
+                if (LOGD) Log.d(TAG, "applied " + batch.size() + " of " + ops.size() + " writes");
+            } catch (RemoteException e) {
+                Log.w(TAG, "Could not apply " + batch.size() + " writes", e);
+            } catch (OperationApplicationException e) {
+                Log.w(TAG, "Could not apply " + batch.size() + " writes", e);
+            } finally {
+                finishBatch();
+            }
+            if (notify) {
+                mResolver.notifyChange(LauncherSettings.Favorites.CONTENT_URI, null);
+            }
+        }
+    }
+
+    private synchronized void finishBatch() {
+        mApplying = null;
+        mBatchesApplied++;
+    }
+
+    /**
+     * Reads the favorites table as it will be once everything queued so far is applied, without
+     * waiting for a batch to be, so that it can be called from the main thread.
+     *
+     * @param columns the columns to read; the _id and container of each row are always read
+     * @return the rows by id
+     */
+    HashMap<Long, ContentValues> queryWithPending(String[] columns) {
+        final String[] projection = new String[columns.length + 2];
+        System.arraycopy(columns, 0, projection, 0, columns.length);
+        projection[columns.length] = LauncherSettings.Favorites._ID;
+        projection[columns.length + 1] = LauncherSettings.Favorites.CONTAINER;
+
+        while (true) {
+            final int batchesApplied;
+            synchronized (this) {
+                batchesApplied = mBatchesApplied;
+            }
+
+            final HashMap<Long, ContentValues> rows = new HashMap<Long, ContentValues>();
+            final Cursor c = mResolver.query(LauncherSettings.Favorites.CONTENT_URI, projection,
+                    null, null, null);
+            try {
+                final int idIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites._ID);
+                while (c.moveToNext()) {
+                    final ContentValues row = new ContentValues();
+                    DatabaseUtils.cursorRowToContentValues(c, row);
+                    rows.put(c.getLong(idIndex), row);
+                }
+            } finally {
+                c.close();
+            }
+
+            synchronized (this) {
+                // The batch being applied may or may not have made it into what was read, but
+                // applying it again to the rows gives the same result either way.  One that
+                // finished while reading has left nothing to tell, so read again.
+                if (batchesApplied == mBatchesApplied) {
+                    if (mApplying != null) {
+                        applyTo(rows, mApplying);
+                    }
+                    applyTo(rows, mOps);
+                    return rows;
+                }
+            }
+        }
+    }
+
+    private static void applyTo(HashMap<Long, ContentValues> rows, ArrayList<Op> ops) {
+        for (Op op : ops) {
+            if (op.cancelled) {
+                continue;
+            }
+            switch (op.type) {
+                case OP_INSERT:
+                    rows.put(op.id, new ContentValues(op.values));
+                    break;
+                case OP_UPDATE:
+                    final ContentValues row = rows.get(op.id);
+                    if (row != null) {
+                        row.putAll(op.values);
+                    }
+                    break;
+                case OP_DELETE:
+                    rows.remove(op.id);
+                    break;
+                case OP_DELETE_CONTENTS:
+                    final Iterator<ContentValues> it = rows.values().iterator();
+                    while (it.hasNext()) {
+                        final Long container =
+                                it.next().getAsLong(LauncherSettings.Favorites.CONTAINER);
+                        if (container != null && container == op.id) {
+                            it.remove();
+                        }
+                    }
+                    break;
+            }
+        }
+    }
+}
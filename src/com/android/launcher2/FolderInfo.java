@@ -105,6 +105,9 @@ class FolderInfo extends ItemInfo {
     void unbind() {
         super.unbind();
         listeners.clear();
+        for (ShortcutInfo item : contents) {
+            item.unbind();
+        }
     }
 
     interface FolderListener {
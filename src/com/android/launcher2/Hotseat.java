@@ -36,6 +36,7 @@ public class Hotseat extends FrameLayout {
 
     private Launcher mLauncher;
     private CellLayout mContent;
+    private BubbleTextView mAllAppsButton;
 
     private int mCellCountX;
     private int mCellCountY;
@@ -106,16 +107,8 @@ public class Hotseat extends FrameLayout {
         LayoutInflater inflater = LayoutInflater.from(context);
         BubbleTextView allAppsButton = (BubbleTextView)
                 inflater.inflate(R.layout.application, mContent, false);
-        
-        //Pekall LK 
-        //allAppsButton.setCompoundDrawablesWithIntrinsicBounds(null,context.getResources().getDrawable(R.drawable.all_apps_button_icon), null, null);
-        //Pekall setThe background icon
-        Drawable bm = ThemeSettings.getDrawable(context, R.drawable.all_apps_button_icon);
-        if (Utilities.createAllAppButtonBitmap(bm, context) != null)
-        	bm = new  BitmapDrawable(Utilities.createAllAppButtonBitmap(bm, context));
-        //Pekall Set the background? TODO
-        allAppsButton.setCompoundDrawablesWithIntrinsicBounds(null,bm, null, null);
-        //allAppsButton.setBackgroundDrawable(allAppsDrawable);
+        mAllAppsButton = allAppsButton;
+        updateAllAppsButton();
         
         
         allAppsButton.setContentDescription(context.getString(R.string.all_apps_button_label));
@@ -146,4 +139,21 @@ public class Hotseat extends FrameLayout {
         mContent.addViewToCellLayout(allAppsButton, -1, 0, new CellLayout.LayoutParams(x,y,1,1),
                 true);
     }
+
+    /**
+     * Draw the all apps button with the current theme's icon and background.
+     */
+    void updateAllAppsButton() {
+        final Context context = getContext();
+        //Pekall LK 
+        //allAppsButton.setCompoundDrawablesWithIntrinsicBounds(null,context.getResources().getDrawable(R.drawable.all_apps_button_icon), null, null);
+        //Pekall setThe background icon
+        Drawable bm = ThemeSettings.getDrawable(context, R.drawable.all_apps_button_icon);
+        final Bitmap b = Utilities.createAllAppButtonBitmap(bm, context);
+        if (b != null)
+        	bm = new  BitmapDrawable(b);
+        //Pekall Set the background? TODO
+        mAllAppsButton.setCompoundDrawablesWithIntrinsicBounds(null,bm, null, null);
+        //allAppsButton.setBackgroundDrawable(allAppsDrawable);
+    }
 }
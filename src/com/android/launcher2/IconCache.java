@@ -16,10 +16,21 @@
 
 package com.android.launcher2;
 
+import java.io.PrintWriter;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
 
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
 import android.content.ComponentName;
+import android.content.Context;
 import android.content.Intent;
+import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.pm.ResolveInfo;
@@ -41,21 +52,50 @@ public class IconCache {
 
     private static final int INITIAL_ICON_CACHE_CAPACITY = 50;
 
-    private static class CacheEntry {
+    // The in-memory cache may use at most 1/MEMORY_CLASS_DIVISOR of the per-app heap
+    private static final int MEMORY_CLASS_DIVISOR = 8;
+
+    static class CacheEntry {
         public Bitmap icon;
         public String title;
+        // The handle shared by everything that displays this icon, set once cached
+        IconHandle handle;
+        // Holographic outlines of the icon by style, built on first use
+        HashMap<String, Bitmap> outlines;
     }
 
     private final Bitmap mDefaultIcon;
+    private final IconHandle mDefaultIconHandle;
     private final LauncherApplication mContext;
     private final PackageManager mPackageManager;
-    private final HashMap<ComponentName, CacheEntry> mCache =
-            new HashMap<ComponentName, CacheEntry>(INITIAL_ICON_CACHE_CAPACITY);
+    private final PersistentIconCache mPersistentCache;
+    // Iterates from least to most recently used
+    private final LinkedHashMap<ComponentName, CacheEntry> mCache =
+            new LinkedHashMap<ComponentName, CacheEntry>(INITIAL_ICON_CACHE_CAPACITY, 0.75f, true);
+    // The keys of mCache, by package name
+    private final HashMap<String, HashSet<ComponentName>> mPackageComponents =
+            new HashMap<String, HashSet<ComponentName>>();
+    // Handles that were dropped from the cache while still referenced, for dump()
+    private final WeakHashMap<IconHandle, Boolean> mDetached = new WeakHashMap<IconHandle, Boolean>();
+    private final int mMaxSizeBytes;
+    private int mSizeBytes;
     private int mIconDpi;
+    // The version of the current theme that icons on disk are checked against
+    private volatile PackageInfo mThemePackageInfo;
 
     public IconCache(LauncherApplication context) {
+        this(context, ((ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE))
+                .getMemoryClass() * 1024 * 1024 / MEMORY_CLASS_DIVISOR);
+    }
+
+    /**
+     * @param maxSizeBytes how many bytes of icons and outlines to keep in memory
+     */
+    IconCache(LauncherApplication context, int maxSizeBytes) {
         mContext = context;
         mPackageManager = context.getPackageManager();
+        mPersistentCache = new PersistentIconCache(context);
+        mMaxSizeBytes = maxSizeBytes;
         int density = context.getResources().getDisplayMetrics().densityDpi;
         if (LauncherApplication.isScreenLarge()) {
             if (density == DisplayMetrics.DENSITY_LOW) {
@@ -76,6 +116,7 @@ public class IconCache {
         }
         // need to set mIconDpi before getting default icon
         mDefaultIcon = makeDefaultIcon();
+        mDefaultIconHandle = new IconHandle(null, mDefaultIcon);
     }
 
     public Drawable getFullResDefaultActivityIcon() {
@@ -143,116 +184,470 @@ public class IconCache {
      */
     public void remove(ComponentName componentName) {
         synchronized (mCache) {
-            mCache.remove(componentName);
+            removeLocked(componentName);
+        }
+        mPersistentCache.remove(componentName);
+    }
+
+    /**
+     * Remove any records for components in the supplied package, leaving every other
+     * package's icons in place.
+     */
+    public void removePackage(String packageName) {
+        synchronized (mCache) {
+            final HashSet<ComponentName> components = mPackageComponents.remove(packageName);
+            if (components != null) {
+                for (ComponentName component : components) {
+                    final CacheEntry old = mCache.remove(component);
+                    if (old != null) {
+                        mSizeBytes -= sizeOf(old);
+                        detachLocked(old);
+                    }
+                }
+            }
         }
+        forgetThemePackage(packageName);
+        mPersistentCache.removePackage(packageName);
+    }
+
+    /**
+     * Remove any icons stored on disk that were drawn with the supplied theme package, which
+     * has been updated.  Icons already in memory are left alone.
+     */
+    public void removeTheme(String themePackage) {
+        forgetThemePackage(themePackage);
+        mPersistentCache.removeTheme(themePackage);
     }
 
     /**
-     * Empty out the cache.
+     * Empty out the in-memory cache.  Icons stored on disk are keyed by theme, locale and
+     * package version, so they remain valid and are not touched here.
      */
     public void flush() {
         synchronized (mCache) {
+            for (CacheEntry entry : mCache.values()) {
+                detachLocked(entry);
+            }
             mCache.clear();
+            mPackageComponents.clear();
+            mSizeBytes = 0;
         }
     }
 
     /**
-     * Fill in "application" with the icon and label for "info."
+     * Empty out the in-memory cache except for the supplied components.  Like {@link #flush()},
+     * this leaves the icons stored on disk alone.
      */
-    public void getTitleAndIcon(ApplicationInfo application, ResolveInfo info,
-            HashMap<Object, CharSequence> labelCache) {
+    public void flushExcept(Collection<ComponentName> keep) {
         synchronized (mCache) {
-            CacheEntry entry = cacheLocked(application.componentName, info, labelCache);
+            final Iterator<Map.Entry<ComponentName, CacheEntry>> it = mCache.entrySet().iterator();
+            while (it.hasNext()) {
+                final Map.Entry<ComponentName, CacheEntry> e = it.next();
+                if (!keep.contains(e.getKey())) {
+                    mSizeBytes -= sizeOf(e.getValue());
+                    it.remove();
+                    unindexLocked(e.getKey());
+                    detachLocked(e.getValue());
+                }
+            }
+        }
+    }
 
-            application.title = entry.title;
-            application.iconBitmap = entry.icon;
+    /**
+     * Release memory in response to {@link android.content.ComponentCallbacks2#onTrimMemory}.
+     */
+    public void trimMemory(int level) {
+        synchronized (mCache) {
+            if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+                // We are likely to be killed soon; keep only what is on screen.
+                trimToSizeLocked(0);
+            } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+                trimToSizeLocked(mMaxSizeBytes / 2);
+            }
         }
     }
 
-    public Bitmap getIcon(Intent intent) {
+    /**
+     * Returns the number of bytes taken by the icons in memory.
+     */
+    int getSizeBytes() {
         synchronized (mCache) {
-            final ResolveInfo resolveInfo = mPackageManager.resolveActivity(intent, 0);
-            ComponentName component = intent.getComponent();
+            return mSizeBytes;
+        }
+    }
 
-            if (resolveInfo == null || component == null) {
-                return mDefaultIcon;
+    private void putLocked(ComponentName componentName, CacheEntry entry) {
+        entry.handle = new IconHandle(componentName, entry.icon);
+        final CacheEntry old = mCache.put(componentName, entry);
+        if (old != null) {
+            mSizeBytes -= sizeOf(old);
+            detachLocked(old);
+        } else {
+            final String packageName = componentName.getPackageName();
+            HashSet<ComponentName> components = mPackageComponents.get(packageName);
+            if (components == null) {
+                components = new HashSet<ComponentName>();
+                mPackageComponents.put(packageName, components);
             }
+            components.add(componentName);
+        }
+        mSizeBytes += sizeOf(entry);
+        trimToSizeLocked(mMaxSizeBytes);
+    }
 
-            CacheEntry entry = cacheLocked(component, resolveInfo, null);
-            return entry.icon;
+    private void removeLocked(ComponentName componentName) {
+        final CacheEntry old = mCache.remove(componentName);
+        if (old != null) {
+            mSizeBytes -= sizeOf(old);
+            unindexLocked(componentName);
+            detachLocked(old);
         }
     }
 
-    public Bitmap getIcon(ComponentName component, ResolveInfo resolveInfo,
-            HashMap<Object, CharSequence> labelCache) {
+    /**
+     * Remember a handle that is still in use after its entry has left the cache; whoever
+     * asks for the icon next gets a new bitmap, so both copies are alive until it's released.
+     */
+    private void detachLocked(CacheEntry entry) {
+        if (entry.handle != null && entry.handle.getRefCount() > 0) {
+            mDetached.put(entry.handle, Boolean.TRUE);
+        }
+    }
+
+    private void unindexLocked(ComponentName componentName) {
+        final String packageName = componentName.getPackageName();
+        final HashSet<ComponentName> components = mPackageComponents.get(packageName);
+        if (components != null && components.remove(componentName) && components.isEmpty()) {
+            mPackageComponents.remove(packageName);
+        }
+    }
+
+    /**
+     * Evict least recently used entries until the cache fits in maxSizeBytes, skipping
+     * icons that are still referenced through their handle.  Everything bound on the
+     * workspace, the hotseat or in a folder holds a reference, and evicting those would free
+     * nothing while the next lookup would build a duplicate.
+     */
+    private void trimToSizeLocked(int maxSizeBytes) {
+        final Iterator<Map.Entry<ComponentName, CacheEntry>> it = mCache.entrySet().iterator();
+        while (mSizeBytes > maxSizeBytes && it.hasNext()) {
+            final Map.Entry<ComponentName, CacheEntry> e = it.next();
+            final IconHandle handle = e.getValue().handle;
+            if (handle == null || handle.getRefCount() == 0) {
+                mSizeBytes -= sizeOf(e.getValue());
+                it.remove();
+                unindexLocked(e.getKey());
+            }
+        }
+    }
+
+    private static int sizeOf(CacheEntry entry) {
+        int size = sizeOf(entry.icon);
+        if (entry.outlines != null) {
+            for (Bitmap outline : entry.outlines.values()) {
+                size += sizeOf(outline);
+            }
+        }
+        return size;
+    }
+
+    private static int sizeOf(Bitmap bitmap) {
+        return bitmap != null ? bitmap.getRowBytes() * bitmap.getHeight() : 0;
+    }
+
+    /**
+     * Returns the outline of the icon in the given style that was stored with
+     * {@link #putOutline}, or null.
+     *
+     * @param style identifies everything other than the icon that the outline depends on,
+     *        such as its size and colors
+     */
+    Bitmap getOutline(IconHandle icon, String style) {
         synchronized (mCache) {
-            if (resolveInfo == null || component == null) {
-                return null;
+            final CacheEntry entry = getEntryLocked(icon);
+            return entry != null && entry.outlines != null ? entry.outlines.get(style) : null;
+        }
+    }
+
+    /**
+     * Keep an outline of the icon, so that it doesn't have to be blurred again.  The outline
+     * is dropped along with the icon, and must not be recycled by the caller.  Outlines of icons
+     * that are not shared through the cache are not kept.
+     */
+    void putOutline(IconHandle icon, String style, Bitmap outline) {
+        synchronized (mCache) {
+            final CacheEntry entry = getEntryLocked(icon);
+            if (entry == null) {
+                return;
             }
+            if (entry.outlines == null) {
+                entry.outlines = new HashMap<String, Bitmap>(2);
+            }
+            final Bitmap old = entry.outlines.put(style, outline);
+            mSizeBytes += sizeOf(outline) - sizeOf(old);
+            trimToSizeLocked(mMaxSizeBytes);
+        }
+    }
+
+    /**
+     * Returns the entry the handle was issued for, if it is still the cached one.
+     */
+    private CacheEntry getEntryLocked(IconHandle icon) {
+        if (icon == null || !icon.isShared()) {
+            return null;
+        }
+        final CacheEntry entry = mCache.get(icon.getComponent());
+        return entry != null && entry.handle == icon ? entry : null;
+    }
+
+    /**
+     * Fill in "application" with the icon and label for "info."  The application doesn't
+     * hold a reference on the icon, which can be evicted while it is in the drawer.
+     *
+     * The cache lock is not held while the icon is being built, so this may be called from
+     * several loader threads at once.
+     */
+    public void getTitleAndIcon(ApplicationInfo application, ResolveInfo info,
+            LabelCache labelCache) {
+        getTitleAndIcon(application, info, labelCache, null);
+    }
+
+    /**
+     * @param packageInfos the package infos of the current load pass, or null
+     */
+    void getTitleAndIcon(ApplicationInfo application, ResolveInfo info,
+            LabelCache labelCache, PackageInfoCache packageInfos) {
+        CacheEntry entry = getEntry(application.componentName, info, labelCache, packageInfos,
+                false);
+
+        application.title = entry.title;
+        application.setIconUnretained(entry.handle);
+    }
+
+    /**
+     * Returns a retained handle on the icon for the supplied intent, which the caller must
+     * release when it no longer displays it.
+     */
+    public IconHandle acquireIcon(Intent intent) {
+        final ResolveInfo resolveInfo = mPackageManager.resolveActivity(intent, 0);
+        ComponentName component = intent.getComponent();
+
+        if (resolveInfo == null || component == null) {
+            return mDefaultIconHandle.retain();
+        }
+
+        return getEntry(component, resolveInfo, null, null, true).handle;
+    }
+
+    /**
+     * Returns a retained handle on the icon for the supplied component, or null if there
+     * is nothing to resolve it against.
+     */
+    public IconHandle acquireIcon(ComponentName component, ResolveInfo resolveInfo,
+            LabelCache labelCache) {
+        return acquireIcon(component, resolveInfo, labelCache, null);
+    }
+
+    /**
+     * @param packageInfos the package infos of the current load pass, or null
+     */
+    IconHandle acquireIcon(ComponentName component, ResolveInfo resolveInfo,
+            LabelCache labelCache, PackageInfoCache packageInfos) {
+        if (resolveInfo == null || component == null) {
+            return null;
+        }
+
+        return getEntry(component, resolveInfo, labelCache, packageInfos, true).handle;
+    }
+
+    /**
+     * Build the component's icon again, for instance under a new theme, and replace the cached
+     * entry with it.  Icons stored on disk for other themes are kept.  Holders of the old
+     * handle keep drawing the old bitmap until they acquire the new one.
+     *
+     * @return a retained handle on the new icon
+     */
+    public IconHandle refreshIcon(ComponentName component, ResolveInfo resolveInfo) {
+        final CacheEntry entry = createEntry(component, resolveInfo, null, null);
+        synchronized (mCache) {
+            putLocked(component, entry);
+            return entry.handle.retain();
+        }
+    }
+
+    public Bitmap getIcon(Intent intent) {
+        final ResolveInfo resolveInfo = mPackageManager.resolveActivity(intent, 0);
+        ComponentName component = intent.getComponent();
+
+        if (resolveInfo == null || component == null) {
+            return mDefaultIcon;
+        }
+
+        CacheEntry entry = getEntry(component, resolveInfo, null, null, false);
+        return entry.icon;
+    }
 
-            CacheEntry entry = cacheLocked(component, resolveInfo, labelCache);
-            return entry.icon;
+    public Bitmap getIcon(ComponentName component, ResolveInfo resolveInfo,
+            LabelCache labelCache) {
+        if (resolveInfo == null || component == null) {
+            return null;
         }
+
+        CacheEntry entry = getEntry(component, resolveInfo, labelCache, null, false);
+        return entry.icon;
     }
 
     public boolean isDefaultIcon(Bitmap icon) {
         return mDefaultIcon == icon;
     }
 
-    private CacheEntry cacheLocked(ComponentName componentName, ResolveInfo info,
-            HashMap<Object, CharSequence> labelCache) {
-        CacheEntry entry = mCache.get(componentName);
-        if (entry == null) {
-            entry = new CacheEntry();
+    /**
+     * @param packageInfos the package infos of the current load pass, or null to ask the
+     *        package manager
+     * @param retain whether to retain the entry's handle before returning it
+     */
+    private CacheEntry getEntry(ComponentName componentName, ResolveInfo info,
+            LabelCache labelCache, PackageInfoCache packageInfos, boolean retain) {
+        synchronized (mCache) {
+            CacheEntry entry = mCache.get(componentName);
+            if (entry != null) {
+                if (retain) entry.handle.retain();
+                return entry;
+            }
+        }
 
-            mCache.put(componentName, entry);
+        final CacheEntry entry = createEntry(componentName, info, labelCache, packageInfos);
 
-            ComponentName key = LauncherModel.getComponentNameFromResolveInfo(info);
-            if (labelCache != null && labelCache.containsKey(key)) {
-                entry.title = labelCache.get(key).toString();
-            } else {
-                entry.title = info.loadLabel(mPackageManager).toString();
-                if (labelCache != null) {
-                    labelCache.put(key, entry.title);
-                }
+        synchronized (mCache) {
+            // Another thread may have built the same entry in the meantime; keep the first one
+            // so every caller ends up sharing the same bitmap.
+            CacheEntry existing = mCache.get(componentName);
+            if (existing != null) {
+                if (retain) existing.handle.retain();
+                return existing;
             }
-            if (entry.title == null) {
-                entry.title = info.activityInfo.name;
+            putLocked(componentName, entry);
+            if (retain) entry.handle.retain();
+        }
+        return entry;
+    }
+
+    private CacheEntry createEntry(ComponentName componentName, ResolveInfo info,
+            LabelCache labelCache, PackageInfoCache packageInfos) {
+        final CacheEntry entry = new CacheEntry();
+
+        final PackageInfo packageInfo = PackageInfoCache.get(packageInfos, mPackageManager,
+                componentName.getPackageName());
+
+        ComponentName key = LauncherModel.getComponentNameFromResolveInfo(info);
+        final PackageInfo themeInfo = getThemePackageInfo();
+        if (packageInfo != null && themeInfo != null && mPersistentCache.load(componentName,
+                packageInfo, themeInfo, mIconDpi, entry)) {
+            if (labelCache != null && entry.title != null && labelCache.get(key) == null) {
+                labelCache.put(key, entry.title);
             }
-            
-            //Pekall LK Theme icon set , set the application's icon as it's self icon
-            try {
-            	Drawable d ;
-            	int iconId = mPackageManager.getPackageInfo(componentName.getPackageName(), 0).applicationInfo.icon ;
-        		Resources appResources = mPackageManager.getResourcesForApplication(componentName.getPackageName());
-        		
-        		if (iconId != 0)
-        			d = appResources.getDrawable(iconId);
-        		else
-        			d = info.activityInfo.loadIcon(mPackageManager);
-         
-				Drawable d1 = ThemeSettings.getDrawable(mContext, componentName.getClassName(), d);
-				entry.icon = Utilities.createIconBitmap(d1, mContext);
-			} catch (Exception e) {
-				Drawable	d = info.activityInfo.loadIcon(mPackageManager);
-				Drawable d1 = ThemeSettings.getDrawable(mContext, componentName.getClassName(), d);
-				entry.icon = Utilities.createIconBitmap(d1, mContext);
-			}
-            //Pekall LK Theme icon set , set the application's icon as it's self icon
-            
+            return entry;
+        }
+
+        if (labelCache != null) {
+            entry.title = labelCache.getLabel(info, mPackageManager);
+        } else {
+            entry.title = info.loadLabel(mPackageManager).toString();
+        }
+        if (entry.title == null) {
+            entry.title = info.activityInfo.name;
+        }
+        
+        //Pekall LK Theme icon set , set the application's icon as it's self icon
+        try {
+        	Drawable d ;
+        	int iconId = packageInfo.applicationInfo.icon ;
+    		Resources appResources = mPackageManager.getResourcesForApplication(componentName.getPackageName());
+    		
+    		if (iconId != 0)
+    			d = appResources.getDrawable(iconId);
+    		else
+    			d = info.activityInfo.loadIcon(mPackageManager);
+     
+			Drawable d1 = ThemeSettings.getDrawable(mContext, componentName.getClassName(), d);
+			entry.icon = Utilities.createIconBitmap(d1, mContext);
+		} catch (Exception e) {
+			Drawable	d = info.activityInfo.loadIcon(mPackageManager);
+			Drawable d1 = ThemeSettings.getDrawable(mContext, componentName.getClassName(), d);
+			entry.icon = Utilities.createIconBitmap(d1, mContext);
+		}
+        //Pekall LK Theme icon set , set the application's icon as it's self icon
+
+        if (packageInfo != null && themeInfo != null) {
+            mPersistentCache.store(componentName, packageInfo, themeInfo, mIconDpi, entry);
         }
         return entry;
     }
 
+    /**
+     * @return the package info of the current theme, or null if it can't be found.
+     */
+    private PackageInfo getThemePackageInfo() {
+        final String themePackage = ThemeSettings.getCurrentThemePackage();
+        PackageInfo themeInfo = mThemePackageInfo;
+        if (themeInfo == null || !themeInfo.packageName.equals(themePackage)) {
+            try {
+                themeInfo = mPackageManager.getPackageInfo(themePackage, 0);
+            } catch (NameNotFoundException e) {
+                return null;
+            }
+            mThemePackageInfo = themeInfo;
+        }
+        return themeInfo;
+    }
+
+    private void forgetThemePackage(String packageName) {
+        final PackageInfo themeInfo = mThemePackageInfo;
+        if (themeInfo != null && themeInfo.packageName.equals(packageName)) {
+            mThemePackageInfo = null;
+        }
+    }
+
     public HashMap<ComponentName,Bitmap> getAllIcons() {
         synchronized (mCache) {
             HashMap<ComponentName,Bitmap> set = new HashMap<ComponentName,Bitmap>();
-            for (ComponentName cn : mCache.keySet()) {
-                final CacheEntry e = mCache.get(cn);
-                set.put(cn, e.icon);
+            for (Map.Entry<ComponentName, CacheEntry> e : mCache.entrySet()) {
+                set.put(e.getKey(), e.getValue().icon);
             }
             return set;
         }
     }
-    
+
+    /**
+     * Print every cached icon with the number of live handles on it.  More than one handle
+     * for a component means the same icon is in memory more than once.
+     */
+    public void dump(String prefix, PrintWriter writer) {
+        synchronized (mCache) {
+            writer.println(prefix + "IconCache: entries=" + mCache.size() + " bytes="
+                    + mSizeBytes + "/" + mMaxSizeBytes);
+            final HashMap<ComponentName, Integer> detached = new HashMap<ComponentName, Integer>();
+            for (IconHandle handle : mDetached.keySet()) {
+                if (handle.getRefCount() > 0) {
+                    final Integer count = detached.get(handle.getComponent());
+                    detached.put(handle.getComponent(), count == null ? 1 : count + 1);
+                }
+            }
+            for (Map.Entry<ComponentName, CacheEntry> e : mCache.entrySet()) {
+                final ComponentName component = e.getKey();
+                final int refs = e.getValue().handle.getRefCount();
+                final Integer stale = detached.remove(component);
+                final int handles = (refs > 0 ? 1 : 0) + (stale != null ? stale : 0);
+                final HashMap<String, Bitmap> outlines = e.getValue().outlines;
+                writer.println(prefix + "  " + component.flattenToShortString() + " refs=" + refs
+                        + " handles=" + handles
+                        + " outlines=" + (outlines != null ? outlines.size() : 0));
+            }
+            for (Map.Entry<ComponentName, Integer> e : detached.entrySet()) {
+                writer.println(prefix + "  " + e.getKey().flattenToShortString()
+                        + " refs=0 handles=" + e.getValue() + " (not cached)");
+            }
+        }
+    }
+
 }
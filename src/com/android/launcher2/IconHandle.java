@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher2;
+
+import android.content.ComponentName;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A counted reference to an icon bitmap.
+ *
+ * {@link IconCache} issues one shared handle per component, so the drawer, the workspace,
+ * folders and the hotseat all draw the same bitmap.  Items on the workspace, the hotseat and
+ * in folders retain their handle and release it from {@link ItemInfo#unbind()}; the cache will
+ * not evict an entry while its handle is still referenced, since that would only lead to a
+ * second copy being built.  Apps in the drawer hold their handle without a reference, as the
+ * drawer has every installed app and would otherwise keep all of their icons cached.
+ *
+ * Icons that don't come from the cache (custom shortcut icons, icons read back from the
+ * database) are wrapped in unshared handles, for which the count is informational only.
+ */
+final class IconHandle {
+    private static final String TAG = "Launcher.IconHandle";
+
+    private final ComponentName mComponent;
+    private final Bitmap mBitmap;
+    private final AtomicInteger mRefCount = new AtomicInteger();
+
+    IconHandle(ComponentName component, Bitmap bitmap) {
+        mComponent = component;
+        mBitmap = bitmap;
+    }
+
+    /**
+     * Wraps a bitmap that is not owned by the icon cache.  Returns null for a null bitmap.
+     */
+    static IconHandle wrap(Bitmap bitmap) {
+        return bitmap != null ? new IconHandle(null, bitmap).retain() : null;
+    }
+
+    Bitmap getBitmap() {
+        return mBitmap;
+    }
+
+    /**
+     * The component this icon is shared for, or null if the handle is not shared.
+     */
+    ComponentName getComponent() {
+        return mComponent;
+    }
+
+    boolean isShared() {
+        return mComponent != null;
+    }
+
+    IconHandle retain() {
+        mRefCount.incrementAndGet();
+        return this;
+    }
+
+    void release() {
+        if (mRefCount.decrementAndGet() < 0) {
+            Log.w(TAG, "Icon for " + mComponent + " released more often than retained");
+            mRefCount.set(0);
+        }
+    }
+
+    int getRefCount() {
+        return mRefCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "IconHandle(" + mComponent + " refs=" + mRefCount.get() + " bitmap=" + mBitmap + ")";
+    }
+}
@@ -90,30 +90,18 @@ public class InstallShortcutReceiver extends BroadcastReceiver {
     }
 
     private static boolean findEmptyCell(Context context, int[] xy, int screen) {
-        final int xCount = LauncherModel.getCellCountX();
-        final int yCount = LauncherModel.getCellCountY();
-        boolean[][] occupied = new boolean[xCount][yCount];
+        final CellOccupancy occupied = new CellOccupancy(LauncherModel.getCellCountX(),
+                LauncherModel.getCellCountY());
 
         ArrayList<ItemInfo> items = LauncherModel.getItemsInLocalCoordinates(context);
-        ItemInfo item;
-        int cellX, cellY, spanX, spanY;
-        for (ItemInfo item1 : items) {
-            item = item1;
+        for (ItemInfo item : items) {
             if (item.container == LauncherSettings.Favorites.CONTAINER_DESKTOP) {
                 if (item.screen == screen) {
-                    cellX = item.cellX;
-                    cellY = item.cellY;
-                    spanX = item.spanX;
-                    spanY = item.spanY;
-                    for (int x = cellX; x < cellX + spanX && x < xCount; x++) {
-                        for (int y = cellY; y < cellY + spanY && y < yCount; y++) {
-                            occupied[x][y] = true;
-                        }
-                    }
+                    occupied.markCells(item.cellX, item.cellY, item.spanX, item.spanY, true);
                 }
             }
         }
 
-        return CellLayout.findVacantCell(xy, 1, 1, xCount, yCount, occupied);
+        return occupied.findVacantCell(xy, 1, 1);
     }
 }
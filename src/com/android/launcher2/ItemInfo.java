@@ -22,6 +22,9 @@ import android.util.Log;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 /**
  * Represents an item in the launcher.
@@ -86,6 +89,18 @@ class ItemInfo {
      */
     int[] dropPos = null;
 
+    /**
+     * The icon of the item, if it has one, usually shared through the {@link IconCache}.
+     */
+    private IconHandle mIcon;
+
+    /**
+     * Whether this item currently holds a reference on {@link #mIcon}.  It is released when
+     * the item is unbound, often on the loader thread, and retained again when the item is
+     * next displayed on the UI thread, so both happen under the item's lock.
+     */
+    private boolean mIconRetained;
+
     ItemInfo() {
     }
 
@@ -138,10 +153,84 @@ class ItemInfo {
         }
     }
 
+    /**
+     * Returns a hash of the bitmap's dimensions and pixels, which identifies the icon in the
+     * {@link LauncherSettings.Icons} table.
+     */
+    static String hashBitmap(Bitmap bitmap) {
+        if (bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+            bitmap = bitmap.copy(Bitmap.Config.ARGB_8888, false);
+        }
+        final ByteBuffer pixels =
+                ByteBuffer.allocate(8 + bitmap.getRowBytes() * bitmap.getHeight());
+        pixels.putInt(bitmap.getWidth());
+        pixels.putInt(bitmap.getHeight());
+        bitmap.copyPixelsToBuffer(pixels);
+
+        final byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1").digest(pixels.array());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        final StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
     static void writeBitmap(ContentValues values, Bitmap bitmap) {
         if (bitmap != null) {
             byte[] data = flattenBitmap(bitmap);
             values.put(LauncherSettings.Favorites.ICON, data);
+            values.put(LauncherSettings.Icons.HASH, hashBitmap(bitmap));
+        }
+    }
+
+    /**
+     * Take over a retained handle, releasing the previous one.
+     */
+    synchronized void setIcon(IconHandle icon) {
+        releaseIcon();
+        mIcon = icon;
+        mIconRetained = icon != null;
+    }
+
+    /**
+     * Keep a handle without holding a reference on it, so that the {@link IconCache} remains
+     * free to evict the icon.  For items that can get the icon again whenever they need to.
+     */
+    synchronized void setIconUnretained(IconHandle icon) {
+        releaseIcon();
+        mIcon = icon;
+        mIconRetained = false;
+    }
+
+    /**
+     * The handle on the icon, for things that are kept alongside it in the {@link IconCache}.
+     */
+    synchronized IconHandle getIconHandle() {
+        return mIcon;
+    }
+
+    /**
+     * Returns the handle on the icon, retaining it again if the item has been unbound since
+     * it was set, or null if there is no icon yet.
+     */
+    synchronized IconHandle retainIcon() {
+        if (mIcon != null && !mIconRetained) {
+            mIcon.retain();
+            mIconRetained = true;
+        }
+        return mIcon;
+    }
+
+    private synchronized void releaseIcon() {
+        if (mIcon != null && mIconRetained) {
+            mIcon.release();
+            mIconRetained = false;
         }
     }
 
@@ -152,6 +241,7 @@ class ItemInfo {
      * to the old view hierarchy / activity.
      */
     void unbind() {
+        releaseIcon();
     }
 
     @Override
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher2;
+
+import android.content.ComponentName;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * Process-wide store of activity labels and their collation keys.
+ *
+ * Labels are loaded from the package manager once and then shared by every loader run and
+ * every sort.  Entries for a package are dropped when the package is added, changed or
+ * removed, and everything is dropped when the default locale changes.  Safe to use from
+ * any thread.
+ */
+final class LabelCache {
+    private static final LabelCache sInstance = new LabelCache();
+
+    private final HashMap<ComponentName, String> mLabels = new HashMap<ComponentName, String>();
+    // Collation keys by label, so that identical labels share one key
+    private final HashMap<String, CollationKey> mKeys = new HashMap<String, CollationKey>();
+    private Locale mLocale;
+    private Collator mCollator;
+
+    private LabelCache() {
+    }
+
+    static LabelCache getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Returns the stored label for the component, or null.
+     */
+    synchronized String get(ComponentName component) {
+        checkLocaleLocked();
+        return mLabels.get(component);
+    }
+
+    synchronized void put(ComponentName component, CharSequence label) {
+        checkLocaleLocked();
+        mLabels.put(component, label.toString());
+    }
+
+    /**
+     * Returns the label for the activity, asking the package manager for it if it isn't
+     * stored yet.  The lock is not held during the package manager call.
+     */
+    String getLabel(ResolveInfo info, PackageManager pm) {
+        final ComponentName component = LauncherModel.getComponentNameFromResolveInfo(info);
+        String label = get(component);
+        if (label == null) {
+            label = info.loadLabel(pm).toString();
+            put(component, label);
+        }
+        return label;
+    }
+
+    /**
+     * Returns the collation key of the label in the current locale.  Comparing keys is a
+     * byte comparison, so sorts should use these rather than {@link Collator#compare}.
+     */
+    synchronized CollationKey getCollationKey(String label) {
+        checkLocaleLocked();
+        CollationKey key = mKeys.get(label);
+        if (key == null) {
+            key = mCollator.getCollationKey(label);
+            mKeys.put(label, key);
+        }
+        return key;
+    }
+
+    /**
+     * Drop the labels of every component in the supplied package.
+     */
+    synchronized void removePackage(String packageName) {
+        final Iterator<ComponentName> it = mLabels.keySet().iterator();
+        while (it.hasNext()) {
+            if (packageName.equals(it.next().getPackageName())) {
+                it.remove();
+            }
+        }
+    }
+
+    private void checkLocaleLocked() {
+        final Locale locale = Locale.getDefault();
+        if (!locale.equals(mLocale)) {
+            mLocale = locale;
+            mCollator = Collator.getInstance(locale);
+            mLabels.clear();
+            mKeys.clear();
+        }
+    }
+}
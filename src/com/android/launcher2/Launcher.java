@@ -108,6 +108,7 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 
 /**
  * Default launcher application.
@@ -3299,6 +3300,24 @@ public final class Launcher extends Activity
         }
     }
 
+    /**
+     * The theme changed the icons of some applications, and possibly the icon background.
+     * The items stay bound; only their icons are replaced.
+     *
+     * Implementation of the method from LauncherModel.Callbacks.
+     */
+    public void bindIconsUpdated(HashSet<ComponentName> components) {
+        if (mWorkspace != null) {
+            mWorkspace.updateShortcuts(components);
+        }
+        if (mHotseat != null) {
+            mHotseat.updateAllAppsButton();
+        }
+        if (mAppsCustomizeContent != null) {
+            mAppsCustomizeContent.updateAppIcons();
+        }
+    }
+
     /**
      * A package was uninstalled.
      *
@@ -3318,6 +3337,33 @@ public final class Launcher extends Activity
         mDragController.onAppsRemoved(apps, this);
     }
 
+    /**
+     * Some items bound earlier have been moved or removed since, and need to be taken off
+     * the workspace.  Moved items are bound again afterwards.
+     *
+     * Implementation of the method from LauncherModel.Callbacks.
+     */
+    public void bindItemsRemoved(ArrayList<ItemInfo> items) {
+        setLoadOnResume();
+
+        final HashSet<ItemInfo> workspaceItems = new HashSet<ItemInfo>();
+        for (ItemInfo item : items) {
+            if (item.container >= 0) {
+                final FolderInfo folder = sFolders.get(item.container);
+                if (folder != null) {
+                    folder.remove((ShortcutInfo) item);
+                }
+            } else {
+                workspaceItems.add(item);
+            }
+        }
+        mWorkspace.removeItemViews(workspaceItems);
+
+        for (ItemInfo item : items) {
+            item.unbind();
+        }
+    }
+
     /**
      * A number of packages were updated.
      */
@@ -3538,6 +3584,12 @@ public final class Launcher extends Activity
         for (int i = 0; i < sDumpLogs.size(); i++) {
             writer.println("  " + sDumpLogs.get(i));
         }
+        writer.println(" ");
+        writer.println("Stats: ");
+        LauncherStats.dump("  ", writer);
+        writer.println(" ");
+        writer.println("Icons: ");
+        mIconCache.dump("  ", writer);
     }
 }
 
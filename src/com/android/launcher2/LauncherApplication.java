@@ -36,6 +36,8 @@ import com.android.launcher2.preference.PreferencesProvider;
 public class LauncherApplication extends Application {
     public LauncherModel mModel;
     public IconCache mIconCache;
+    private WidgetPreviewCache mWidgetPreviewCache;
+    private BitmapPool mBitmapPool;
     private static boolean sIsScreenLarge;
     private static float sScreenDensity;
     WeakReference<LauncherProvider> mLauncherProvider;
@@ -60,6 +62,8 @@ public class LauncherApplication extends Application {
         sScreenDensity = getResources().getDisplayMetrics().density;
 
         mIconCache = new IconCache(this);
+        mWidgetPreviewCache = new WidgetPreviewCache(this);
+        mBitmapPool = new BitmapPool(this);
         mModel = new LauncherModel(this, mIconCache);
 
         // Register intent receivers
@@ -95,11 +99,20 @@ public class LauncherApplication extends Application {
         super.onTerminate();
 
         unregisterReceiver(mModel);
+        mModel.flushDatabaseWrites();
 
         ContentResolver resolver = getContentResolver();
         resolver.unregisterContentObserver(mFavoritesObserver);
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+
+        mIconCache.trimMemory(level);
+        mBitmapPool.trimMemory(level);
+    }
+
     /**
      * Receives notifications whenever the user favorites have changed.
      */
@@ -119,6 +132,14 @@ public class LauncherApplication extends Application {
         return mIconCache;
     }
 
+    WidgetPreviewCache getWidgetPreviewCache() {
+        return mWidgetPreviewCache;
+    }
+
+    BitmapPool getBitmapPool() {
+        return mBitmapPool;
+    }
+
     public LauncherModel getModel() {
         return mModel;
     }
@@ -18,12 +18,23 @@ package com.android.launcher2;
 
 import java.lang.ref.WeakReference;
 import java.net.URISyntaxException;
-import java.text.Collator;
+import java.text.CollationKey;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import android.app.SearchManager;
 import android.appwidget.AppWidgetManager;
@@ -39,14 +50,12 @@ import android.content.Intent.ShortcutIconResource;
 import android.content.pm.ActivityInfo;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
-import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.pm.ResolveInfo;
 import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.net.Uri;
 import android.os.Environment;
 import android.os.Handler;
 import android.os.HandlerThread;
@@ -54,10 +63,13 @@ import android.os.Parcelable;
 import android.os.Process;
 import android.os.RemoteException;
 import android.os.SystemClock;
+import android.text.TextUtils;
 import android.util.Log;
+import android.util.SparseArray;
 
 import com.android.launcher2.InstallWidgetReceiver.WidgetMimeTypeHandlerData;
 import com.android.launcher2.theme.ThemePackageManager;
+import com.android.launcher2.theme.ThemeSettings;
 
 /**
  * Maintains in-memory state of the Launcher. It is expected that there should be only one
@@ -65,15 +77,38 @@ import com.android.launcher2.theme.ThemePackageManager;
  * for the Launcher.
  */
 public class LauncherModel extends BroadcastReceiver {
-    static final boolean DEBUG_LOADERS = true;
+    static final boolean DEBUG_LOADERS = false;
     static final String TAG = "Launcher.Model";
 
     private static final int ITEMS_CHUNK = 10; // batch size for the workspace icons
+
+    // The columns compared when checking the workspace snapshot against the database
+    private static final String[] RECONCILE_PROJECTION = new String[] {
+            LauncherSettings.Favorites._ID,
+            LauncherSettings.Favorites.ITEM_TYPE,
+            LauncherSettings.Favorites.CONTAINER,
+            LauncherSettings.Favorites.SCREEN,
+            LauncherSettings.Favorites.CELLX,
+            LauncherSettings.Favorites.CELLY,
+            LauncherSettings.Favorites.SPANX,
+            LauncherSettings.Favorites.SPANY,
+            LauncherSettings.Favorites.TITLE,
+            LauncherSettings.Favorites.INTENT,
+            LauncherSettings.Favorites.APPWIDGET_ID };
+
+    // Selects the hotseat and one workspace screen, see LoaderTask.loadWorkspace()
+    private static final String FIRST_SCREEN_SELECTION =
+            LauncherSettings.Favorites.CONTAINER + "=? OR ("
+            + LauncherSettings.Favorites.CONTAINER + "=? AND "
+            + LauncherSettings.Favorites.SCREEN + "=?)";
+    private static final int ALL_APPS_BATCH_SIZE = 20; // batch size for all apps after the first
+    // The first page of all apps is bound once this much time has been spent building icons
+    private static final long ALL_APPS_FIRST_BIND_BUDGET_MS = 100;
     private final boolean mAppsCanBeOnExternalStorage;
 
     private final LauncherApplication mApp;
     private final Object mLock = new Object();
-    private DeferredHandler mHandler = new DeferredHandler();
+    private final BindScheduler mHandler = new BindScheduler();
     private LoaderTask mLoaderTask;
 
     private static final HandlerThread sWorkerThread = new HandlerThread("launcher-loader");
@@ -82,12 +117,40 @@ public class LauncherModel extends BroadcastReceiver {
     }
     private static final Handler sWorker = new Handler(sWorkerThread.getLooper());
 
+    // Pool used to build all apps labels and icons in parallel with the loader thread
+    private static final int ICON_LOADER_THREADS =
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final boolean PARALLEL_ALL_APPS_LOADING = ICON_LOADER_THREADS > 1;
+    private static final ExecutorService sIconLoaderPool =
+            Executors.newFixedThreadPool(ICON_LOADER_THREADS, new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger(1);
+
+                public Thread newThread(Runnable r) {
+                    return new Thread(r, "launcher-icon-loader-" + mCount.getAndIncrement());
+                }
+            });
+
     // We start off with everything not loaded.  After that, we assume that
     // our monitoring of the package manager provides all updates and we never
     // need to do a requery.  These are only ever touched from the loader thread.
     private boolean mWorkspaceLoaded;
     private boolean mAllAppsLoaded;
 
+    // How long the worker thread has to be free of database writes before the workspace
+    // snapshot is rewritten
+    private static final int WORKSPACE_SNAPSHOT_DELAY = 1000;
+
+    private final WorkspaceSnapshot mWorkspaceSnapshot;
+    private final DatabaseWriteQueue mWriteQueue;
+    private final Runnable mWriteWorkspaceSnapshot = new Runnable() {
+        public void run() {
+            if (mWorkspaceLoaded) {
+                mWorkspaceSnapshot.write(sItemsIdMap.values(), mIconCache, mCellCountX,
+                        mCellCountY);
+            }
+        }
+    };
+
     private WeakReference<Callbacks> mCallbacks;
 
     // < only access in worker thread >
@@ -109,8 +172,11 @@ public class LauncherModel extends BroadcastReceiver {
     // sFolders is all FolderInfos created by LauncherModel. Passed to bindFolders()
     static final HashMap<Long, FolderInfo> sFolders = new HashMap<Long, FolderInfo>();
 
-    // sDbIconCache is the set of ItemInfos that need to have their icons updated in the database
-    static final HashMap<Object, byte[]> sDbIconCache = new HashMap<Object, byte[]>();
+    // sDbIconCache is the set of ItemInfos that need to have their icons updated in the database,
+    // mapped to the hash of the icon currently stored for them.  It only lives for the duration
+    // of a load, and holds no bitmaps or blobs of its own.
+    static final HashMap<ShortcutInfo, String> sDbIconCache =
+            new HashMap<ShortcutInfo, String>();
 
     // </ only access in worker thread >
 
@@ -133,7 +199,9 @@ public class LauncherModel extends BroadcastReceiver {
         public void bindAllApplications(ArrayList<ApplicationInfo> apps);
         public void bindAppsAdded(ArrayList<ApplicationInfo> apps);
         public void bindAppsUpdated(ArrayList<ApplicationInfo> apps);
+        public void bindIconsUpdated(HashSet<ComponentName> components);
         public void bindAppsRemoved(ArrayList<ApplicationInfo> apps, boolean permanent);
+        public void bindItemsRemoved(ArrayList<ItemInfo> items);
         public void bindPackagesUpdated();
         public boolean isAllAppsVisible();
         public void bindSearchablesChanged();
@@ -144,6 +212,8 @@ public class LauncherModel extends BroadcastReceiver {
         mApp = app;
         mAllAppsList = new AllAppsList(iconCache);
         mIconCache = iconCache;
+        mWorkspaceSnapshot = new WorkspaceSnapshot(app);
+        mWriteQueue = new DatabaseWriteQueue(app.getContentResolver(), sWorker);
 
         mDefaultIcon = Utilities.createIconBitmap(
                 mIconCache.getFullResDefaultActivityIcon(), app);
@@ -156,6 +226,45 @@ public class LauncherModel extends BroadcastReceiver {
         mThemePackageManager = new ThemePackageManager();
     }
 
+    /**
+     * Rewrites the workspace snapshot once the workspace has been left alone for a moment.
+     */
+    void scheduleWorkspaceSnapshot() {
+        sWorker.removeCallbacks(mWriteWorkspaceSnapshot);
+        sWorker.postDelayed(mWriteWorkspaceSnapshot, WORKSPACE_SNAPSHOT_DELAY);
+    }
+
+    private static void scheduleWorkspaceSnapshot(Context context) {
+        ((LauncherApplication) context.getApplicationContext()).getModel()
+                .scheduleWorkspaceSnapshot();
+    }
+
+    private static DatabaseWriteQueue getWriteQueue(Context context) {
+        return ((LauncherApplication) context.getApplicationContext()).getModel().mWriteQueue;
+    }
+
+    /**
+     * Applies any writes to the favorites table that are still queued up, on the calling
+     * thread.  Only for when the process is going away, as in
+     * {@link LauncherApplication#onTerminate()}; the loader flushes on the worker thread, and
+     * readers on other threads go through {@link DatabaseWriteQueue#queryWithPending}.
+     */
+    void flushDatabaseWrites() {
+        mWriteQueue.flush();
+    }
+
+    /**
+     * Throws away the workspace snapshot, for changes that it can't detect by itself.
+     */
+    private void invalidateWorkspaceSnapshot() {
+        sWorker.post(new Runnable() {
+            public void run() {
+                sWorker.removeCallbacks(mWriteWorkspaceSnapshot);
+                mWorkspaceSnapshot.delete();
+            }
+        });
+    }
+
     public Bitmap getFallbackIcon() {
         return Bitmap.createBitmap(mDefaultIcon);
     }
@@ -209,12 +318,11 @@ public class LauncherModel extends BroadcastReceiver {
     static void updateItemInDatabaseHelper(Context context, final ContentValues values,
             final ItemInfo item, final String callingFunction) {
         final long itemId = item.id;
-        final Uri uri = LauncherSettings.Favorites.getContentUri(itemId, false);
-        final ContentResolver cr = context.getContentResolver();
+        final DatabaseWriteQueue writeQueue = getWriteQueue(context);
 
         Runnable r = new Runnable() {
             public void run() {
-                cr.update(uri, values, null, null);
+                writeQueue.update(itemId, values);
 
                 ItemInfo modelItem = sItemsIdMap.get(itemId);
                 if (item != modelItem) {
@@ -245,6 +353,7 @@ public class LauncherModel extends BroadcastReceiver {
         } else {
             sWorker.post(r);
         }
+        scheduleWorkspaceSnapshot(context);
     }
     /**
      * Move an item in the DB to a new <container, screen, cellX, cellY>
@@ -308,17 +417,17 @@ public class LauncherModel extends BroadcastReceiver {
      * we identify a shortcut by its title and intent.
      */
     static boolean shortcutExists(Context context, String title, Intent intent) {
-        final ContentResolver cr = context.getContentResolver();
-        Cursor c = cr.query(LauncherSettings.Favorites.CONTENT_URI,
-            new String[] { "title", "intent" }, "title=? and intent=?",
-            new String[] { title, intent.toUri(0) }, null);
-        boolean result = false;
-        try {
-            result = c.moveToFirst();
-        } finally {
-            c.close();
+        // Writes still in the queue count too, without making the caller wait for them
+        final HashMap<Long, ContentValues> rows = getWriteQueue(context).queryWithPending(
+                new String[] { "title", "intent" });
+        final String uri = intent.toUri(0);
+        for (ContentValues row : rows.values()) {
+            if (TextUtils.equals(title, row.getAsString("title"))
+                    && uri.equals(row.getAsString("intent"))) {
+                return true;
+            }
         }
-        return result;
+        return false;
     }
 
     /**
@@ -327,37 +436,27 @@ public class LauncherModel extends BroadcastReceiver {
      */
     static ArrayList<ItemInfo> getItemsInLocalCoordinates(Context context) {
         ArrayList<ItemInfo> items = new ArrayList<ItemInfo>();
-        final ContentResolver cr = context.getContentResolver();
-        Cursor c = cr.query(LauncherSettings.Favorites.CONTENT_URI, new String[] {
+        final HashMap<Long, ContentValues> rows = getWriteQueue(context).queryWithPending(
+                new String[] {
                 LauncherSettings.Favorites.ITEM_TYPE, LauncherSettings.Favorites.CONTAINER,
                 LauncherSettings.Favorites.SCREEN, LauncherSettings.Favorites.CELLX, LauncherSettings.Favorites.CELLY,
-                LauncherSettings.Favorites.SPANX, LauncherSettings.Favorites.SPANY }, null, null, null);
-
-        final int itemTypeIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites.ITEM_TYPE);
-        final int containerIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites.CONTAINER);
-        final int screenIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites.SCREEN);
-        final int cellXIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites.CELLX);
-        final int cellYIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites.CELLY);
-        final int spanXIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites.SPANX);
-        final int spanYIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites.SPANY);
+                LauncherSettings.Favorites.SPANX, LauncherSettings.Favorites.SPANY });
 
         try {
-            while (c.moveToNext()) {
+            for (ContentValues row : rows.values()) {
                 ItemInfo item = new ItemInfo();
-                item.cellX = c.getInt(cellXIndex);
-                item.cellY = c.getInt(cellYIndex);
-                item.spanX = c.getInt(spanXIndex);
-                item.spanY = c.getInt(spanYIndex);
-                item.container = c.getInt(containerIndex);
-                item.itemType = c.getInt(itemTypeIndex);
-                item.screen = c.getInt(screenIndex);
+                item.cellX = row.getAsInteger(LauncherSettings.Favorites.CELLX);
+                item.cellY = row.getAsInteger(LauncherSettings.Favorites.CELLY);
+                item.spanX = row.getAsInteger(LauncherSettings.Favorites.SPANX);
+                item.spanY = row.getAsInteger(LauncherSettings.Favorites.SPANY);
+                item.container = row.getAsInteger(LauncherSettings.Favorites.CONTAINER);
+                item.itemType = row.getAsInteger(LauncherSettings.Favorites.ITEM_TYPE);
+                item.screen = row.getAsInteger(LauncherSettings.Favorites.SCREEN);
 
                 items.add(item);
             }
         } catch (Exception e) {
             items.clear();
-        } finally {
-            c.close();
         }
 
         return items;
@@ -367,42 +466,29 @@ public class LauncherModel extends BroadcastReceiver {
      * Find a folder in the db, creating the FolderInfo if necessary, and adding it to folderList.
      */
     FolderInfo getFolderById(Context context, HashMap<Long,FolderInfo> folderList, long id) {
-        final ContentResolver cr = context.getContentResolver();
-        Cursor c = cr.query(LauncherSettings.Favorites.CONTENT_URI, null,
-                "_id=? and (itemType=? or itemType=?)",
-                new String[] { String.valueOf(id),
-                        String.valueOf(LauncherSettings.Favorites.ITEM_TYPE_FOLDER)}, null);
-
-        try {
-            if (c.moveToFirst()) {
-                final int itemTypeIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites.ITEM_TYPE);
-                final int titleIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites.TITLE);
-                final int containerIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites.CONTAINER);
-                final int screenIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites.SCREEN);
-                final int cellXIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites.CELLX);
-                final int cellYIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites.CELLY);
-
-                FolderInfo folderInfo = null;
-                switch (c.getInt(itemTypeIndex)) {
-                    case LauncherSettings.Favorites.ITEM_TYPE_FOLDER:
-                        folderInfo = findOrMakeFolder(folderList, id);
-                        break;
-                }
-
-                folderInfo.title = c.getString(titleIndex);
-                folderInfo.id = id;
-                folderInfo.container = c.getInt(containerIndex);
-                folderInfo.screen = c.getInt(screenIndex);
-                folderInfo.cellX = c.getInt(cellXIndex);
-                folderInfo.cellY = c.getInt(cellYIndex);
+        // This is called from the main thread, so don't wait for queued writes to be applied
+        final ContentValues row = mWriteQueue.queryWithPending(new String[] {
+                LauncherSettings.Favorites.ITEM_TYPE, LauncherSettings.Favorites.TITLE,
+                LauncherSettings.Favorites.SCREEN, LauncherSettings.Favorites.CELLX,
+                LauncherSettings.Favorites.CELLY }).get(id);
+        if (row == null) {
+            return null;
+        }
 
-                return folderInfo;
-            }
-        } finally {
-            c.close();
+        final Integer itemType = row.getAsInteger(LauncherSettings.Favorites.ITEM_TYPE);
+        if (itemType == null || itemType != LauncherSettings.Favorites.ITEM_TYPE_FOLDER) {
+            return null;
         }
+        FolderInfo folderInfo = findOrMakeFolder(folderList, id);
 
-        return null;
+        folderInfo.title = row.getAsString(LauncherSettings.Favorites.TITLE);
+        folderInfo.id = id;
+        folderInfo.container = row.getAsInteger(LauncherSettings.Favorites.CONTAINER);
+        folderInfo.screen = row.getAsInteger(LauncherSettings.Favorites.SCREEN);
+        folderInfo.cellX = row.getAsInteger(LauncherSettings.Favorites.CELLX);
+        folderInfo.cellY = row.getAsInteger(LauncherSettings.Favorites.CELLY);
+
+        return folderInfo;
     }
 
     /**
@@ -424,7 +510,7 @@ public class LauncherModel extends BroadcastReceiver {
         }
 
         final ContentValues values = new ContentValues();
-        final ContentResolver cr = context.getContentResolver();
+        final DatabaseWriteQueue writeQueue = getWriteQueue(context);
         item.onAddToDatabase(values);
 
         LauncherApplication app = (LauncherApplication) context.getApplicationContext();
@@ -434,8 +520,7 @@ public class LauncherModel extends BroadcastReceiver {
 
         Runnable r = new Runnable() {
             public void run() {
-                cr.insert(notify ? LauncherSettings.Favorites.CONTENT_URI :
-                        LauncherSettings.Favorites.CONTENT_URI_NO_NOTIFICATION, values);
+                writeQueue.insert(item.id, values, notify);
 
                 if (sItemsIdMap.containsKey(item.id)) {
                     // we should not be adding new items in the db with the same id
@@ -466,6 +551,7 @@ public class LauncherModel extends BroadcastReceiver {
         } else {
             sWorker.post(r);
         }
+        scheduleWorkspaceSnapshot(context);
     }
 
     /**
@@ -500,11 +586,10 @@ public class LauncherModel extends BroadcastReceiver {
      * @param item
      */
     static void deleteItemFromDatabase(Context context, final ItemInfo item) {
-        final ContentResolver cr = context.getContentResolver();
-        final Uri uriToDelete = LauncherSettings.Favorites.getContentUri(item.id, false);
+        final DatabaseWriteQueue writeQueue = getWriteQueue(context);
         Runnable r = new Runnable() {
             public void run() {
-                cr.delete(uriToDelete, null, null);
+                writeQueue.delete(item.id);
                 switch (item.itemType) {
                     case LauncherSettings.Favorites.ITEM_TYPE_FOLDER:
                         sFolders.remove(item.id);
@@ -513,6 +598,8 @@ public class LauncherModel extends BroadcastReceiver {
                     case LauncherSettings.Favorites.ITEM_TYPE_APPLICATION:
                     case LauncherSettings.Favorites.ITEM_TYPE_SHORTCUT:
                         sWorkspaceItems.remove(item);
+                        // Let go of the shared icon; it is retained again if shown
+                        ((ShortcutInfo) item).unbind();
                         break;
                     case LauncherSettings.Favorites.ITEM_TYPE_APPWIDGET:
                         sAppWidgets.remove((LauncherAppWidgetInfo) item);
@@ -527,27 +614,28 @@ public class LauncherModel extends BroadcastReceiver {
         } else {
             sWorker.post(r);
         }
+        scheduleWorkspaceSnapshot(context);
     }
 
     /**
      * Remove the contents of the specified folder from the database
      */
     static void deleteFolderContentsFromDatabase(Context context, final FolderInfo info) {
-        final ContentResolver cr = context.getContentResolver();
+        final DatabaseWriteQueue writeQueue = getWriteQueue(context);
 
         Runnable r = new Runnable() {
             public void run() {
-                cr.delete(LauncherSettings.Favorites.getContentUri(info.id, false), null, null);
+                writeQueue.delete(info.id);
                 sItemsIdMap.remove(info.id);
                 sFolders.remove(info.id);
                 sDbIconCache.remove(info);
                 sWorkspaceItems.remove(info);
 
-                cr.delete(LauncherSettings.Favorites.CONTENT_URI_NO_NOTIFICATION,
-                        LauncherSettings.Favorites.CONTAINER + "=" + info.id, null);
+                writeQueue.deleteContents(info.id);
                 for (ItemInfo childInfo : info.contents) {
                     sItemsIdMap.remove(childInfo.id);
                     sDbIconCache.remove(childInfo);
+                    childInfo.unbind();
                 }
             }
         };
@@ -556,6 +644,7 @@ public class LauncherModel extends BroadcastReceiver {
         } else {
             sWorker.post(r);
         }
+        scheduleWorkspaceSnapshot(context);
     }
 
     /**
@@ -658,6 +747,7 @@ public class LauncherModel extends BroadcastReceiver {
             mAllAppsLoaded = false;
             mWorkspaceLoaded = false;
         }
+        invalidateWorkspaceSnapshot();
         // Do this here because if the launcher activity is running it will be restarted.
         // If it's not running startLoaderFromBackground will merely tell it that it needs
         // to reload.
@@ -742,12 +832,15 @@ public class LauncherModel extends BroadcastReceiver {
         private boolean mIsLaunching;
         private boolean mStopped;
         private boolean mLoadAndBindStepFinished;
-        private HashMap<Object, CharSequence> mLabelCache;
+        private final LabelCache mLabelCache = LabelCache.getInstance();
+        // Hashes of the stored icons, by id, while loading the workspace
+        private HashMap<Long, String> mIconHashes;
+        // Package infos looked up while loading the workspace
+        private PackageInfoCache mPackageInfos;
 
         LoaderTask(Context context, boolean isLaunching) {
             mContext = context;
             mIsLaunching = isLaunching;
-            mLabelCache = new HashMap<Object, CharSequence>();
         }
 
         boolean isLaunching() {
@@ -761,17 +854,22 @@ public class LauncherModel extends BroadcastReceiver {
             }
 
             if (!mWorkspaceLoaded) {
-                loadWorkspace();
+                // Bind the snapshot of the workspace if there is one, otherwise load and bind
+                // the workspace a screen at a time
+                if (!loadWorkspaceFromSnapshot() && !mStopped) {
+                    loadWorkspace();
+                    scheduleWorkspaceSnapshot();
+                }
                 synchronized (LoaderTask.this) {
                     if (mStopped) {
                         return;
                     }
                     mWorkspaceLoaded = true;
                 }
+            } else {
+                // Bind the already loaded workspace
+                bindWorkspace();
             }
-
-            // Bind the workspace
-            bindWorkspace();
         }
 
         private void waitForIdle() {
@@ -870,8 +968,8 @@ public class LauncherModel extends BroadcastReceiver {
 
             // Update the saved icons if necessary
             if (DEBUG_LOADERS) Log.d(TAG, "Comparing loaded icons to database icons");
-            for (Object key : sDbIconCache.keySet()) {
-                updateSavedIcon(mContext, (ShortcutInfo) key, sDbIconCache.get(key));
+            for (Map.Entry<ShortcutInfo, String> e : sDbIconCache.entrySet()) {
+                updateSavedIcon(mContext, e.getKey(), e.getValue());
             }
             sDbIconCache.clear();
 
@@ -925,8 +1023,7 @@ public class LauncherModel extends BroadcastReceiver {
         }
 
         // check & update map of what's occupied; used to discard overlapping/invalid items
-        private boolean checkItemPlacement(ItemInfo occupied[][][], ItemInfo item) {
-            int containerIndex = item.screen;
+        private boolean checkItemPlacement(CellOccupancy occupied[], ItemInfo item) {
             if (item.container == LauncherSettings.Favorites.CONTAINER_HOTSEAT) {
                 // Return early if we detect that an item is under the hotseat button
                 if (Hotseat.isAllAppsButtonRank(item.screen)) {
@@ -935,13 +1032,14 @@ public class LauncherModel extends BroadcastReceiver {
 
                 // We use the last index to refer to the hotseat and the screen as the rank, so
                 // test and update the occupied state accordingly
-                if (occupied[Launcher.MAX_SCREEN_COUNT][item.screen][0] != null) {
+                final CellOccupancy hotseat = getOccupancy(occupied, Launcher.MAX_SCREEN_COUNT);
+                if (!hotseat.isRegionVacant(item.screen, 0, 1, 1)) {
                     Log.e(TAG, "Error loading shortcut into hotseat " + item
                         + " into position (" + item.screen + ":" + item.cellX + "," + item.cellY
-                        + ") occupied by " + occupied[Launcher.MAX_SCREEN_COUNT][item.screen][0]);
+                        + "), which is occupied or out of range");
                     return false;
                 } else {
-                    occupied[Launcher.MAX_SCREEN_COUNT][item.screen][0] = item;
+                    hotseat.set(item.screen, 0, true);
                     return true;
                 }
             } else if (item.container != LauncherSettings.Favorites.CONTAINER_DESKTOP) {
@@ -950,52 +1048,491 @@ public class LauncherModel extends BroadcastReceiver {
             }
 
             // Check if any workspace icons overlap with each other
-            for (int x = item.cellX; x < (item.cellX+item.spanX); x++) {
-                for (int y = item.cellY; y < (item.cellY+item.spanY); y++) {
-                    if (occupied[containerIndex][x][y] != null) {
-                        Log.e(TAG, "Error loading shortcut " + item
-                            + " into cell (" + containerIndex + "-" + item.screen + ":"
-                            + x + "," + y
-                            + ") occupied by "
-                            + occupied[containerIndex][x][y]);
+            if (item.screen < 0 || item.screen >= Launcher.MAX_SCREEN_COUNT) {
+                Log.e(TAG, "Error loading shortcut " + item + " into screen " + item.screen);
+                return false;
+            }
+            final CellOccupancy screen = getOccupancy(occupied, item.screen);
+            if (!screen.isRegionVacant(item.cellX, item.cellY, item.spanX, item.spanY)) {
+                Log.e(TAG, "Error loading shortcut " + item
+                    + " into cells (" + item.screen + ":" + item.cellX + "," + item.cellY
+                    + " " + item.spanX + "x" + item.spanY
+                    + "), which are occupied or out of range");
+                return false;
+            }
+            screen.markCells(item.cellX, item.cellY, item.spanX, item.spanY, true);
+
+            return true;
+        }
+
+        /**
+         * Returns the occupancy grid for the screen, or for the hotseat if the index is
+         * MAX_SCREEN_COUNT, creating it if needed.
+         */
+        private CellOccupancy getOccupancy(CellOccupancy occupied[], int index) {
+            if (occupied[index] == null) {
+                // +1 as the hotseat can be larger than the workspace
+                occupied[index] = index == Launcher.MAX_SCREEN_COUNT ?
+                        new CellOccupancy(mCellCountX + 1, 1) :
+                        new CellOccupancy(mCellCountX + 1, mCellCountY + 1);
+            }
+            return occupied[index];
+        }
+
+        /**
+         * Binds the workspace from the snapshot written after the last successful load, and
+         * then checks it against the database.  Items that have been added, moved, changed or
+         * removed since are taken off the workspace or loaded and bound on their own.
+         *
+         * @return false if there was no usable snapshot, or if it can't be brought up to date
+         *         and the workspace needs to be reloaded.
+         */
+        private boolean loadWorkspaceFromSnapshot() {
+            final long t = SystemClock.uptimeMillis();
+            final long startNanos = System.nanoTime();
+
+            final Callbacks oldCallbacks = mCallbacks.get();
+            if (oldCallbacks == null) {
+                return false;
+            }
+
+            // Make sure the database is up to date before checking the snapshot against it
+            mWriteQueue.flush();
+            mIconHashes = null;
+            mPackageInfos = new PackageInfoCache(mContext.getPackageManager());
+
+            final ArrayList<ItemInfo> items = mWorkspaceSnapshot.read(mCellCountX, mCellCountY,
+                    mIconCache);
+            if (items == null) {
+                LauncherStats.WORKSPACE_SNAPSHOT_MISSES.increment();
+                return false;
+            }
+
+            sWorkspaceItems.clear();
+            sAppWidgets.clear();
+            sFolders.clear();
+            sItemsIdMap.clear();
+            sDbIconCache.clear();
+
+            // +1 for the hotseat; the grids are created as items are placed
+            final CellOccupancy occupied[] = new CellOccupancy[Launcher.MAX_SCREEN_COUNT + 1];
+            final AppWidgetManager widgets = AppWidgetManager.getInstance(mContext);
+            final boolean isSafeMode = mContext.getPackageManager().isSafeMode();
+
+            for (ItemInfo item : items) {
+                if (!checkItemPlacement(occupied, item)
+                        || !addSnapshotItem(item, widgets, isSafeMode)) {
+                    Log.w(TAG, "Discarding inconsistent workspace snapshot");
+                    mWorkspaceSnapshot.delete();
+                    // Nothing has been bound yet, so release the icons here
+                    for (ItemInfo discarded : items) {
+                        discarded.unbind();
+                    }
+                    LauncherStats.WORKSPACE_SNAPSHOT_MISSES.increment();
+                    return false;
+                }
+            }
+
+            bindWorkspace();
+            mHandler.post(new Runnable() {
+                public void run() {
+                    LauncherStats.WORKSPACE_FIRST_SCREEN_TIME.recordSince(startNanos);
+                    if (DEBUG_LOADERS) {
+                        Log.d(TAG, "bound workspace snapshot in "
+                                + (SystemClock.uptimeMillis()-t) + "ms");
+                    }
+                }
+            });
+
+            if (!reconcileWorkspaceSnapshot(oldCallbacks, occupied)) {
+                if (DEBUG_LOADERS) Log.d(TAG, "workspace snapshot is out of date");
+                LauncherStats.WORKSPACE_SNAPSHOT_MISSES.increment();
+                return false;
+            }
+            LauncherStats.WORKSPACE_SNAPSHOT_HITS.increment();
+            LauncherStats.WORKSPACE_LOAD_TIME.recordSince(startNanos);
+            return true;
+        }
+
+        /**
+         * Adds an item read from the snapshot to the model.
+         *
+         * @return false if the item can't be added as it is, in which case the snapshot is
+         *         discarded and the full load deals with it, e.g. by deleting widgets whose
+         *         provider has been uninstalled.
+         */
+        private boolean addSnapshotItem(ItemInfo item, AppWidgetManager widgets,
+                boolean isSafeMode) {
+            switch (item.itemType) {
+                case LauncherSettings.Favorites.ITEM_TYPE_APPLICATION:
+                case LauncherSettings.Favorites.ITEM_TYPE_SHORTCUT:
+                    if (item.container == LauncherSettings.Favorites.CONTAINER_DESKTOP ||
+                            item.container == LauncherSettings.Favorites.CONTAINER_HOTSEAT) {
+                        sWorkspaceItems.add(item);
+                    } else {
+                        // Folders are always written ahead of their contents
+                        final FolderInfo folderInfo = sFolders.get(item.container);
+                        if (folderInfo == null) {
+                            return false;
+                        }
+                        folderInfo.add((ShortcutInfo) item);
+                    }
+                    break;
+                case LauncherSettings.Favorites.ITEM_TYPE_FOLDER:
+                    sWorkspaceItems.add(item);
+                    sFolders.put(item.id, (FolderInfo) item);
+                    break;
+                case LauncherSettings.Favorites.ITEM_TYPE_APPWIDGET:
+                    final LauncherAppWidgetInfo appWidgetInfo = (LauncherAppWidgetInfo) item;
+                    final AppWidgetProviderInfo provider =
+                            widgets.getAppWidgetInfo(appWidgetInfo.appWidgetId);
+                    if (!isSafeMode && (provider == null || provider.provider == null ||
+                            provider.provider.getPackageName() == null)) {
+                        if (DEBUG_LOADERS) {
+                            Log.d(TAG, "snapshot widget " + appWidgetInfo.appWidgetId
+                                    + " isn't installed anymore");
+                        }
+                        return false;
+                    }
+                    sAppWidgets.add(appWidgetInfo);
+                    break;
+            }
+            sItemsIdMap.put(item.id, item);
+            return true;
+        }
+
+        /**
+         * Compares the bound snapshot with the database and applies the difference: items
+         * that have been removed or moved are taken off the workspace, and those that have
+         * been added or moved are loaded and bound on their own.  Changes to folders, or to
+         * the contents of folders other than removals, are still reported as a mismatch.
+         *
+         * @return false if the workspace needs to be reloaded.
+         */
+        private boolean reconcileWorkspaceSnapshot(final Callbacks oldCallbacks,
+                CellOccupancy occupied[]) {
+            final ContentResolver contentResolver = mContext.getContentResolver();
+            if (!mWorkspaceSnapshot.packagesUpToDate(mContext.getPackageManager())) {
+                return false;
+            }
+
+            final Cursor c = contentResolver.query(LauncherSettings.Favorites.CONTENT_URI,
+                    RECONCILE_PROJECTION, null, null, null);
+            final HashSet<Long> loadedIds = new HashSet<Long>();
+            final HashSet<Long> seenIds = new HashSet<Long>();
+            final ArrayList<ItemInfo> stale = new ArrayList<ItemInfo>();
+            final StringBuilder reload = new StringBuilder();
+            try {
+                while (!mStopped && c.moveToNext()) {
+                    final long id = c.getLong(0);
+                    final ItemInfo item = sItemsIdMap.get(id);
+                    if (item != null) {
+                        seenIds.add(id);
+                        if (snapshotItemMatches(item, c)) {
+                            loadedIds.add(id);
+                            continue;
+                        }
+                        if (item.itemType == LauncherSettings.Favorites.ITEM_TYPE_FOLDER) {
+                            return false;
+                        }
+                        stale.add(item);
+                    }
+                    if (c.getLong(2) >= 0) {
+                        // Added to a folder that has already been bound
+                        return false;
+                    }
+                    reload.append(reload.length() == 0 ? "" : ",").append(id);
+                }
+            } finally {
+                c.close();
+            }
+            if (mStopped) {
+                return true;
+            }
+            for (ItemInfo item : sItemsIdMap.values()) {
+                if (!seenIds.contains(item.id)) {
+                    if (item.itemType == LauncherSettings.Favorites.ITEM_TYPE_FOLDER) {
                         return false;
                     }
+                    stale.add(item);
                 }
             }
-            for (int x = item.cellX; x < (item.cellX+item.spanX); x++) {
-                for (int y = item.cellY; y < (item.cellY+item.spanY); y++) {
-                    occupied[containerIndex][x][y] = item;
+            if (stale.isEmpty() && reload.length() == 0) {
+                return true;
+            }
+
+            if (!stale.isEmpty()) {
+                for (ItemInfo item : stale) {
+                    removeSnapshotItem(item, occupied);
                 }
+                mHandler.post(new Runnable() {
+                    public void run() {
+                        Callbacks callbacks = tryGetCallbacks(oldCallbacks);
+                        if (callbacks != null) {
+                            callbacks.bindItemsRemoved(stale);
+                        }
+                    }
+                });
             }
 
+            if (reload.length() != 0) {
+                final int firstItem = sWorkspaceItems.size();
+                final int firstWidget = sAppWidgets.size();
+                final int folderCount = sFolders.size();
+                final ArrayList<Long> itemsToRemove = new ArrayList<Long>();
+                loadWorkspaceItems(LauncherSettings.Favorites._ID + " IN (" + reload + ")",
+                        null, occupied, loadedIds, itemsToRemove);
+                if (mStopped) {
+                    return true;
+                }
+                if (!itemsToRemove.isEmpty()) {
+                    return false;
+                }
+                bindWorkspaceItems(oldCallbacks,
+                        new ArrayList<ItemInfo>(sWorkspaceItems.subList(firstItem,
+                                sWorkspaceItems.size())),
+                        new ArrayList<LauncherAppWidgetInfo>(sAppWidgets.subList(firstWidget,
+                                sAppWidgets.size())),
+                        sFolders.size() != folderCount
+                                ? new HashMap<Long, FolderInfo>(sFolders) : null);
+            }
+            scheduleWorkspaceSnapshot();
             return true;
         }
 
+        /**
+         * Takes an item read from the snapshot back off the model, and frees its cells so that
+         * whatever has moved there since can be loaded.  The views are removed, and the icon
+         * released, by {@link Callbacks#bindItemsRemoved}.
+         */
+        private void removeSnapshotItem(ItemInfo item, CellOccupancy occupied[]) {
+            sItemsIdMap.remove(item.id);
+            switch (item.itemType) {
+                case LauncherSettings.Favorites.ITEM_TYPE_APPLICATION:
+                case LauncherSettings.Favorites.ITEM_TYPE_SHORTCUT:
+                    sDbIconCache.remove(item);
+                    sWorkspaceItems.remove(item);
+                    break;
+                case LauncherSettings.Favorites.ITEM_TYPE_APPWIDGET:
+                    sAppWidgets.remove(item);
+                    break;
+            }
+            if (item.container == LauncherSettings.Favorites.CONTAINER_HOTSEAT) {
+                getOccupancy(occupied, Launcher.MAX_SCREEN_COUNT).set(item.screen, 0, false);
+            } else if (item.container == LauncherSettings.Favorites.CONTAINER_DESKTOP) {
+                getOccupancy(occupied, item.screen).markCells(item.cellX, item.cellY,
+                        item.spanX, item.spanY, false);
+            }
+        }
+
+        /**
+         * Returns the hashes of the icons in the icons table, reading them the first time
+         * they are needed during each load.
+         */
+        private HashMap<Long, String> getIconHashes() {
+            if (mIconHashes == null) {
+                mIconHashes = new HashMap<Long, String>();
+                final Cursor c = mContext.getContentResolver().query(
+                        LauncherSettings.Icons.CONTENT_URI, new String[] {
+                                LauncherSettings.Icons._ID, LauncherSettings.Icons.HASH },
+                        null, null, null);
+                try {
+                    while (c.moveToNext()) {
+                        mIconHashes.put(c.getLong(0), c.getString(1));
+                    }
+                } finally {
+                    c.close();
+                }
+            }
+            return mIconHashes;
+        }
+
+        private boolean snapshotItemMatches(ItemInfo item, Cursor c) {
+            if (item.itemType != c.getInt(1) || item.container != c.getLong(2)
+                    || item.screen != c.getInt(3)
+                    || item.cellX != c.getInt(4) || item.cellY != c.getInt(5)) {
+                return false;
+            }
+            switch (item.itemType) {
+                case LauncherSettings.Favorites.ITEM_TYPE_SHORTCUT:
+                    if (!TextUtils.equals(c.getString(8), ((ShortcutInfo) item).title)) {
+                        return false;
+                    }
+                    // Fall through
+                case LauncherSettings.Favorites.ITEM_TYPE_APPLICATION:
+                    try {
+                        final String uri = Intent.parseUri(c.getString(9), 0).toUri(0);
+                        return uri.equals(((ShortcutInfo) item).intent.toUri(0));
+                    } catch (URISyntaxException e) {
+                        return false;
+                    }
+                case LauncherSettings.Favorites.ITEM_TYPE_FOLDER:
+                    return TextUtils.equals(c.getString(8), ((FolderInfo) item).title);
+                case LauncherSettings.Favorites.ITEM_TYPE_APPWIDGET:
+                    return item.spanX == c.getInt(6) && item.spanY == c.getInt(7)
+                            && ((LauncherAppWidgetInfo) item).appWidgetId == c.getInt(10);
+            }
+            return false;
+        }
+
+        /**
+         * Loads the workspace from the database and binds it as it goes.  The hotseat and the
+         * current screen (along with the contents of any folders on them) are queried and
+         * bound first, so that the home screen is usable as soon as possible, and everything
+         * else is loaded and bound afterwards.
+         */
         private void loadWorkspace() {
-            final long t = DEBUG_LOADERS ? SystemClock.uptimeMillis() : 0;
+            final long t = SystemClock.uptimeMillis();
+            final long startNanos = System.nanoTime();
+
+            // Don't use these two variables in any of the callback runnables.
+            // Otherwise we hold a reference to them.
+            final Callbacks oldCallbacks = mCallbacks.get();
+            if (oldCallbacks == null) {
+                // This launcher has exited and nobody bothered to tell us.  Just bail.
+                Log.w(TAG, "LoaderTask running with no launcher");
+                return;
+            }
+
+            final ContentResolver contentResolver = mContext.getContentResolver();
+            mWriteQueue.flush();
+            mIconHashes = null;
+            mPackageInfos = new PackageInfoCache(mContext.getPackageManager());
+
+            sWorkspaceItems.clear();
+            sAppWidgets.clear();
+            sFolders.clear();
+            sItemsIdMap.clear();
+            sDbIconCache.clear();
+
+            final ArrayList<Long> itemsToRemove = new ArrayList<Long>();
+            final HashSet<Long> loadedIds = new HashSet<Long>();
+
+            // +1 for the hotseat; the grids are created as items are placed
+            final CellOccupancy occupied[] = new CellOccupancy[Launcher.MAX_SCREEN_COUNT + 1];
+
+            // WARNING: this is calling into the workspace from the background thread,
+            // but since getCurrentScreen() just returns the int, we should be okay.  This
+            // is just a hint for the order, and if it's wrong, we'll be okay.
+            final int currentScreen = oldCallbacks.getCurrentWorkspaceScreen();
+
+            // First pass: the hotseat and the current screen
+            loadWorkspaceItems(FIRST_SCREEN_SELECTION, new String[] {
+                    String.valueOf(LauncherSettings.Favorites.CONTAINER_HOTSEAT),
+                    String.valueOf(LauncherSettings.Favorites.CONTAINER_DESKTOP),
+                    String.valueOf(currentScreen) }, occupied, loadedIds, itemsToRemove);
+            if (!mStopped && !sFolders.isEmpty()) {
+                // ... and the contents of the folders on them
+                final StringBuilder selection = new StringBuilder(
+                        LauncherSettings.Favorites.CONTAINER + " IN (");
+                boolean first = true;
+                for (long folderId : sFolders.keySet()) {
+                    if (!first) {
+                        selection.append(',');
+                    }
+                    selection.append(folderId);
+                    first = false;
+                }
+                selection.append(')');
+                loadWorkspaceItems(selection.toString(), null, occupied, loadedIds,
+                        itemsToRemove);
+            }
+            if (mStopped) {
+                return;
+            }
+
+            mHandler.post(new Runnable() {
+                public void run() {
+                    Callbacks callbacks = tryGetCallbacks(oldCallbacks);
+                    if (callbacks != null) {
+                        callbacks.startBinding();
+                    }
+                }
+            });
+            int firstItem = sWorkspaceItems.size();
+            int firstWidget = sAppWidgets.size();
+            bindWorkspaceItems(oldCallbacks, new ArrayList<ItemInfo>(sWorkspaceItems),
+                    new ArrayList<LauncherAppWidgetInfo>(sAppWidgets),
+                    new HashMap<Long, FolderInfo>(sFolders));
+            mHandler.post(new Runnable() {
+                public void run() {
+                    LauncherStats.WORKSPACE_FIRST_SCREEN_TIME.recordSince(startNanos);
+                    if (DEBUG_LOADERS) {
+                        Log.d(TAG, "bound current screen in "
+                                + (SystemClock.uptimeMillis()-t) + "ms");
+                    }
+                }
+            });
+
+            // Second pass: everything else
+            loadWorkspaceItems(null, null, occupied, loadedIds, itemsToRemove);
+            if (mStopped) {
+                return;
+            }
+
+            bindWorkspaceItems(oldCallbacks,
+                    new ArrayList<ItemInfo>(sWorkspaceItems.subList(firstItem,
+                            sWorkspaceItems.size())),
+                    new ArrayList<LauncherAppWidgetInfo>(sAppWidgets.subList(firstWidget,
+                            sAppWidgets.size())),
+                    new HashMap<Long, FolderInfo>(sFolders));
+            finishBindingWorkspace(oldCallbacks, t);
+
+            if (itemsToRemove.size() > 0) {
+                ContentProviderClient client = contentResolver.acquireContentProviderClient(
+                                LauncherSettings.Favorites.CONTENT_URI);
+                // Remove dead items
+                for (long id : itemsToRemove) {
+                    if (DEBUG_LOADERS) {
+                        Log.d(TAG, "Removed id = " + id);
+                    }
+                    // Don't notify content observers
+                    try {
+                        client.delete(LauncherSettings.Favorites.getContentUri(id, false),
+                                null, null);
+                    } catch (RemoteException e) {
+                        Log.w(TAG, "Could not remove id = " + id);
+                    }
+                }
+            }
+
+            LauncherStats.WORKSPACE_LOAD_TIME.recordSince(startNanos);
+
+            if (DEBUG_LOADERS) {
+                Log.d(TAG, "loaded workspace in " + (SystemClock.uptimeMillis()-t) + "ms");
+                Log.d(TAG, "workspace layout: ");
+                for (int y = 0; y < mCellCountY; y++) {
+                    String line = "";
+                    for (int s = 0; s < Launcher.MAX_SCREEN_COUNT; s++) {
+                        if (s > 0) {
+                            line += " | ";
+                        }
+                        for (int x = 0; x < mCellCountX; x++) {
+                            line += ((occupied[s] != null && occupied[s].isOccupied(x, y)) ?
+                                    "#" : ".");
+                        }
+                    }
+                    Log.d(TAG, "[ " + line + " ]");
+                }
+            }
+        }
 
+        /**
+         * Runs the supplied query against the favorites table and adds the resulting items to
+         * the model.  Rows whose ids are already in loadedIds are skipped, and the ids of the
+         * rows read are added to it.
+         */
+        private void loadWorkspaceItems(String selection, String[] selectionArgs,
+                CellOccupancy occupied[], HashSet<Long> loadedIds,
+                ArrayList<Long> itemsToRemove) {
             final Context context = mContext;
             final ContentResolver contentResolver = context.getContentResolver();
             final PackageManager manager = context.getPackageManager();
             final AppWidgetManager widgets = AppWidgetManager.getInstance(context);
             final boolean isSafeMode = manager.isSafeMode();
 
-            sWorkspaceItems.clear();
-            sAppWidgets.clear();
-            sFolders.clear();
-            sItemsIdMap.clear();
-            sDbIconCache.clear();
-
-            final ArrayList<Long> itemsToRemove = new ArrayList<Long>();
-
             final Cursor c = contentResolver.query(
-                    LauncherSettings.Favorites.CONTENT_URI, null, null, null, null);
-
-            // +1 for the hotseat (it can be larger than the workspace)
-            // Load workspace in reverse order to ensure that latest items are loaded first (and
-            // before any earlier duplicates)
-            final ItemInfo occupied[][][] =
-                    new ItemInfo[Launcher.MAX_SCREEN_COUNT + 1][mCellCountX + 1][mCellCountY + 1];
+                    LauncherSettings.Favorites.CONTENT_URI, null, selection, selectionArgs, null);
 
             try {
                 final int idIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites._ID);
@@ -1006,6 +1543,8 @@ public class LauncherModel extends BroadcastReceiver {
                 final int iconTypeIndex = c.getColumnIndexOrThrow(
                         LauncherSettings.Favorites.ICON_TYPE);
                 final int iconIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites.ICON);
+                final int iconIdIndex = c.getColumnIndexOrThrow(
+                        LauncherSettings.Favorites.ICON_ID);
                 final int iconPackageIndex = c.getColumnIndexOrThrow(
                         LauncherSettings.Favorites.ICON_PACKAGE);
                 final int iconResourceIndex = c.getColumnIndexOrThrow(
@@ -1030,6 +1569,8 @@ public class LauncherModel extends BroadcastReceiver {
                 final int displayModeIndex = c.getColumnIndexOrThrow(
                         LauncherSettings.Favorites.DISPLAY_MODE);
 
+                final StoredIcons storedIcons = new StoredIcons(context, c, itemTypeIndex,
+                        iconIndex, iconIdIndex);
                 ShortcutInfo info;
                 String intentDescription;
                 LauncherAppWidgetInfo appWidgetInfo;
@@ -1039,6 +1580,10 @@ public class LauncherModel extends BroadcastReceiver {
 
                 while (!mStopped && c.moveToNext()) {
                     try {
+                        if (!loadedIds.add(c.getLong(idIndex))) {
+                            // Already loaded by an earlier pass
+                            continue;
+                        }
                         int itemType = c.getInt(itemTypeIndex);
 
                         switch (itemType) {
@@ -1053,11 +1598,11 @@ public class LauncherModel extends BroadcastReceiver {
 
                             if (itemType == LauncherSettings.Favorites.ITEM_TYPE_APPLICATION) {
                                 info = getShortcutInfo(manager, intent, context, c, iconIndex,
-                                        titleIndex, mLabelCache);
+                                        titleIndex, mLabelCache, storedIcons, mPackageInfos);
                             } else {
                                 info = getShortcutInfo(c, context, iconTypeIndex,
                                         iconPackageIndex, iconResourceIndex, iconIndex,
-                                        titleIndex);
+                                        titleIndex, storedIcons);
                             }
 
                             if (info != null) {
@@ -1090,7 +1635,9 @@ public class LauncherModel extends BroadcastReceiver {
 
                                 // now that we've loaded everthing re-save it with the
                                 // icon in case it disappears somehow.
-                                queueIconToBeChecked(sDbIconCache, info, c, iconIndex);
+                                queueIconToBeChecked(sDbIconCache, info,
+                                        c.isNull(iconIdIndex) ? null
+                                                : getIconHashes().get(c.getLong(iconIdIndex)));
                             } else {
                                 // Failed to load the shortcut, probably because the
                                 // activity manager couldn't resolve it (maybe the app
@@ -1179,45 +1726,10 @@ public class LauncherModel extends BroadcastReceiver {
             } finally {
                 c.close();
             }
-
-            if (itemsToRemove.size() > 0) {
-                ContentProviderClient client = contentResolver.acquireContentProviderClient(
-                                LauncherSettings.Favorites.CONTENT_URI);
-                // Remove dead items
-                for (long id : itemsToRemove) {
-                    if (DEBUG_LOADERS) {
-                        Log.d(TAG, "Removed id = " + id);
-                    }
-                    // Don't notify content observers
-                    try {
-                        client.delete(LauncherSettings.Favorites.getContentUri(id, false),
-                                null, null);
-                    } catch (RemoteException e) {
-                        Log.w(TAG, "Could not remove id = " + id);
-                    }
-                }
-            }
-
-            if (DEBUG_LOADERS) {
-                Log.d(TAG, "loaded workspace in " + (SystemClock.uptimeMillis()-t) + "ms");
-                Log.d(TAG, "workspace layout: ");
-                for (int y = 0; y < mCellCountY; y++) {
-                    String line = "";
-                    for (int s = 0; s < Launcher.MAX_SCREEN_COUNT; s++) {
-                        if (s > 0) {
-                            line += " | ";
-                        }
-                        for (int x = 0; x < mCellCountX; x++) {
-                            line += ((occupied[s][x][y] != null) ? "#" : ".");
-                        }
-                    }
-                    Log.d(TAG, "[ " + line + " ]");
-                }
-            }
         }
 
         /**
-         * Read everything out of our database.
+         * Bind the already loaded workspace, the hotseat and current screen first.
          */
         private void bindWorkspace() {
             final long t = SystemClock.uptimeMillis();
@@ -1231,7 +1743,6 @@ public class LauncherModel extends BroadcastReceiver {
                 return;
             }
 
-            int N;
             // Tell the workspace that we're about to start firing items at it
             mHandler.post(new Runnable() {
                 public void run() {
@@ -1244,73 +1755,113 @@ public class LauncherModel extends BroadcastReceiver {
 
             final ArrayList<ItemInfo> workspaceItems = unbindWorkspaceItemsOnMainThread();
 
+            // See the comment in loadWorkspace() about calling this from here
+            final int currentScreen = oldCallbacks.getCurrentWorkspaceScreen();
+            final ArrayList<ItemInfo> currentItems = new ArrayList<ItemInfo>();
+            final ArrayList<ItemInfo> otherItems = new ArrayList<ItemInfo>();
+            for (ItemInfo item : workspaceItems) {
+                if (isOnScreen(item, currentScreen)) {
+                    currentItems.add(item);
+                } else {
+                    otherItems.add(item);
+                }
+            }
+            final ArrayList<LauncherAppWidgetInfo> currentWidgets =
+                    new ArrayList<LauncherAppWidgetInfo>();
+            final ArrayList<LauncherAppWidgetInfo> otherWidgets =
+                    new ArrayList<LauncherAppWidgetInfo>();
+            for (LauncherAppWidgetInfo widget : sAppWidgets) {
+                if (isOnScreen(widget, currentScreen)) {
+                    currentWidgets.add(widget);
+                } else {
+                    otherWidgets.add(widget);
+                }
+            }
+
+            // Ensure that we don't use the same folders data structure on the main thread
+            bindWorkspaceItems(oldCallbacks, currentItems, currentWidgets,
+                    new HashMap<Long, FolderInfo>(sFolders));
+            bindWorkspaceItems(oldCallbacks, otherItems, otherWidgets, null);
+            finishBindingWorkspace(oldCallbacks, t);
+        }
+
+        private boolean isOnScreen(ItemInfo item, int screen) {
+            return item.container == LauncherSettings.Favorites.CONTAINER_HOTSEAT
+                    || item.screen == screen;
+        }
+
+        /**
+         * Post the supplied items, folders and widgets to the workspace.  None of the lists
+         * may be shared with the loader thread.  Items are posted to the bind lane for where
+         * they are, so that the current screen and the hotseat are filled in first.
+         */
+        private void bindWorkspaceItems(final Callbacks oldCallbacks,
+                ArrayList<ItemInfo> workspaceItems,
+                ArrayList<LauncherAppWidgetInfo> appWidgets,
+                final HashMap<Long, FolderInfo> folders) {
+            final int currentScreen = oldCallbacks.getCurrentWorkspaceScreen();
+            final ArrayList<ItemInfo> currentItems = new ArrayList<ItemInfo>();
+            final ArrayList<ItemInfo> hotseatItems = new ArrayList<ItemInfo>();
+            final ArrayList<ItemInfo> otherItems = new ArrayList<ItemInfo>();
+            for (ItemInfo item : workspaceItems) {
+                if (item.container == LauncherSettings.Favorites.CONTAINER_HOTSEAT) {
+                    hotseatItems.add(item);
+                } else if (item.screen == currentScreen) {
+                    currentItems.add(item);
+                } else {
+                    otherItems.add(item);
+                }
+            }
+
             // Add the items to the workspace.
-            N = workspaceItems.size();
-            for (int i = 0; i < N; i += ITEMS_CHUNK) {
-                final int start = i;
-                final int chunkSize = (i + ITEMS_CHUNK <= N) ? ITEMS_CHUNK : (N - i);
+            bindItemChunks(oldCallbacks, currentItems, BindScheduler.LANE_CURRENT_SCREEN);
+            bindItemChunks(oldCallbacks, hotseatItems, BindScheduler.LANE_HOTSEAT);
+            bindItemChunks(oldCallbacks, otherItems, BindScheduler.LANE_OTHER_SCREENS);
+            if (folders != null) {
                 mHandler.post(new Runnable() {
                     public void run() {
                         Callbacks callbacks = tryGetCallbacks(oldCallbacks);
                         if (callbacks != null) {
-                            callbacks.bindItems(workspaceItems, start, start+chunkSize);
+                            callbacks.bindFolders(folders);
                         }
                     }
-                });
+                }, BindScheduler.LANE_CURRENT_SCREEN);
             }
-            // Ensure that we don't use the same folders data structure on the main thread
-            final HashMap<Long, FolderInfo> folders = new HashMap<Long, FolderInfo>(sFolders);
-            mHandler.post(new Runnable() {
-                public void run() {
-                    Callbacks callbacks = tryGetCallbacks(oldCallbacks);
-                    if (callbacks != null) {
-                        callbacks.bindFolders(folders);
-                    }
-                }
-            });
-            // Wait until the queue goes empty.
-            mHandler.post(new Runnable() {
-                public void run() {
-                    if (DEBUG_LOADERS) {
-                        Log.d(TAG, "Going to start binding widgets soon.");
-                    }
-                }
-            });
             // Bind the widgets, one at a time.
-            // WARNING: this is calling into the workspace from the background thread,
-            // but since getCurrentScreen() just returns the int, we should be okay.  This
-            // is just a hint for the order, and if it's wrong, we'll be okay.
-            // TODO: instead, we should have that push the current screen into here.
-            final int currentScreen = oldCallbacks.getCurrentWorkspaceScreen();
-            N = sAppWidgets.size();
-            // once for the current screen
+            final int N = appWidgets.size();
             for (int i = 0; i < N; i++) {
-                final LauncherAppWidgetInfo widget = sAppWidgets.get(i);
-                if (widget.screen == currentScreen) {
-                    mHandler.post(new Runnable() {
-                        public void run() {
-                            Callbacks callbacks = tryGetCallbacks(oldCallbacks);
-                            if (callbacks != null) {
-                                callbacks.bindAppWidget(widget);
-                            }
+                final LauncherAppWidgetInfo widget = appWidgets.get(i);
+                mHandler.post(new Runnable() {
+                    public void run() {
+                        Callbacks callbacks = tryGetCallbacks(oldCallbacks);
+                        if (callbacks != null) {
+                            callbacks.bindAppWidget(widget);
                         }
-                    });
-                }
+                    }
+                }, isOnScreen(widget, currentScreen)
+                        ? BindScheduler.LANE_CURRENT_SCREEN : BindScheduler.LANE_WIDGETS);
             }
-            // once for the other screens
-            for (int i=0; i<N; i++) {
-                final LauncherAppWidgetInfo widget = sAppWidgets.get(i);
-                if (widget.screen != currentScreen) {
-                    mHandler.post(new Runnable() {
-                        public void run() {
-                            Callbacks callbacks = tryGetCallbacks(oldCallbacks);
-                            if (callbacks != null) {
-                                callbacks.bindAppWidget(widget);
-                            }
+        }
+
+        private void bindItemChunks(final Callbacks oldCallbacks,
+                final ArrayList<ItemInfo> items, int lane) {
+            final int N = items.size();
+            for (int i = 0; i < N; i += ITEMS_CHUNK) {
+                final int start = i;
+                final int chunkSize = (i + ITEMS_CHUNK <= N) ? ITEMS_CHUNK : (N - i);
+                mHandler.post(new Runnable() {
+                    public void run() {
+                        Callbacks callbacks = tryGetCallbacks(oldCallbacks);
+                        if (callbacks != null) {
+                            callbacks.bindItems(items, start, start+chunkSize);
+                            LauncherStats.WORKSPACE_CHUNKS_BOUND.increment();
                         }
-                    });
-                }
+                    }
+                }, lane);
             }
+        }
+
+        private void finishBindingWorkspace(final Callbacks oldCallbacks, final long t) {
             // Tell the workspace that we're done.
             mHandler.post(new Runnable() {
                 public void run() {
@@ -1371,12 +1922,13 @@ public class LauncherModel extends BroadcastReceiver {
                                 + (SystemClock.uptimeMillis()-t) + "ms");
                     }
                 }
-            });
+            }, BindScheduler.LANE_ALL_APPS);
 
         }
 
         private void loadAllAppsByBatch() {
-            final long t = DEBUG_LOADERS ? SystemClock.uptimeMillis() : 0;
+            final long t = SystemClock.uptimeMillis();
+            final long startNanos = System.nanoTime();
 
             // Don't use these two variables in any of the callback runnables.
             // Otherwise we hold a reference to them.
@@ -1392,6 +1944,8 @@ public class LauncherModel extends BroadcastReceiver {
 
             final PackageManager packageManager = mContext.getPackageManager();
             List<ResolveInfo> apps = null;
+            // Most installed packages have a launchable activity, so fetch them all at once
+            final PackageInfoCache packageInfos = new PackageInfoCache(packageManager);
 
             int N = Integer.MAX_VALUE;
 
@@ -1400,6 +1954,7 @@ public class LauncherModel extends BroadcastReceiver {
             while (i < N && !mStopped) {
                 if (i == 0) {
                     mAllAppsList.clear();
+                    packageInfos.addInstalledPackages();
                     final long qiaTime = DEBUG_LOADERS ? SystemClock.uptimeMillis() : 0;
                     apps = packageManager.queryIntentActivities(mainIntent, 0);
                     if (DEBUG_LOADERS) {
@@ -1429,50 +1984,137 @@ public class LauncherModel extends BroadcastReceiver {
 
                 final long t2 = DEBUG_LOADERS ? SystemClock.uptimeMillis() : 0;
 
-                startIndex = i;
-                for (int j = 0; i < N && j < N; j++) {
-                    // This builds the icon bitmaps.
-                    mAllAppsList.add(new ApplicationInfo(packageManager, apps.get(i),
-                            mIconCache, mLabelCache));
-                    i++;
+                // Fan the label and icon work out to the icon loader pool, then consume the
+                // results in sorted order, binding in chunks as we go.
+                final ArrayList<FutureTask<ApplicationInfo>> pending =
+                        new ArrayList<FutureTask<ApplicationInfo>>(N);
+                for (int k = 0; k < N; k++) {
+                    final FutureTask<ApplicationInfo> task = new FutureTask<ApplicationInfo>(
+                            new ApplicationInfoLoader(packageManager, apps.get(k),
+                                    packageInfos));
+                    pending.add(task);
+                    if (PARALLEL_ALL_APPS_LOADING) {
+                        sIconLoaderPool.execute(task);
+                    }
                 }
 
-                final boolean first = i <= N;
-                final Callbacks callbacks = tryGetCallbacks(oldCallbacks);
-                final ArrayList<ApplicationInfo> added = mAllAppsList.added;
-                mAllAppsList.added = new ArrayList<ApplicationInfo>();
-
-                mHandler.post(new Runnable() {
-                    public void run() {
-                        final long t = SystemClock.uptimeMillis();
-                        if (callbacks != null) {
-                            if (first) {
-                                callbacks.bindAllApplications(added);
-                            } else {
-                                callbacks.bindAppsAdded(added);
-                            }
-                            if (DEBUG_LOADERS) {
-                                Log.d(TAG, "bound " + added.size() + " apps in "
-                                    + (SystemClock.uptimeMillis() - t) + "ms");
+                final long firstBindDeadline = SystemClock.uptimeMillis()
+                        + ALL_APPS_FIRST_BIND_BUDGET_MS;
+                boolean first = true;
+                startIndex = i;
+                while (i < N && !mStopped) {
+                    final FutureTask<ApplicationInfo> task = pending.get(i);
+                    if (!PARALLEL_ALL_APPS_LOADING) {
+                        task.run();
+                    }
+                    ApplicationInfo info = null;
+                    try {
+                        if (first && mAllAppsList.added.size() > 0) {
+                            // Don't let a slow icon hold back the first page
+                            final long remaining = firstBindDeadline - SystemClock.uptimeMillis();
+                            try {
+                                info = task.get(Math.max(remaining, 0), TimeUnit.MILLISECONDS);
+                            } catch (TimeoutException e) {
+                                bindAllAppsBatch(oldCallbacks, first, i - startIndex, t2);
+                                first = false;
+                                startIndex = i;
+                                info = task.get();
                             }
                         } else {
-                            Log.i(TAG, "not binding apps: no Launcher activity");
+                            info = task.get();
                         }
+                    } catch (InterruptedException e) {
+                        // Ignore, we'll just skip this app
+                    } catch (ExecutionException e) {
+                        Log.w(TAG, "Failed to load " + apps.get(i), e.getCause());
                     }
-                });
+                    if (info != null) {
+                        mAllAppsList.add(info);
+                    }
+                    i++;
 
-                if (DEBUG_LOADERS) {
-                    Log.d(TAG, "batch of " + (i-startIndex) + " icons processed in "
-                            + (SystemClock.uptimeMillis()-t2) + "ms");
+                    final boolean batchReady = first
+                            ? SystemClock.uptimeMillis() >= firstBindDeadline
+                            : mAllAppsList.added.size() >= ALL_APPS_BATCH_SIZE;
+                    if (i == N || batchReady) {
+                        bindAllAppsBatch(oldCallbacks, first, i - startIndex, t2);
+                        first = false;
+                        startIndex = i;
+                    }
+                }
+
+                if (mStopped) {
+                    for (int k = i; k < N; k++) {
+                        pending.get(k).cancel(false);
+                    }
                 }
             }
 
+            LauncherStats.ALL_APPS_LOAD_TIME.recordSince(startNanos);
             if (DEBUG_LOADERS) {
                 Log.d(TAG, "cached all " + N + " apps in "
                         + (SystemClock.uptimeMillis()-t) + "ms");
             }
         }
 
+        /**
+         * Post the apps added to mAllAppsList since the last call to the UI thread.
+         */
+        private void bindAllAppsBatch(final Callbacks oldCallbacks, final boolean first,
+                int count, long batchStartTime) {
+            final Callbacks callbacks = tryGetCallbacks(oldCallbacks);
+            final ArrayList<ApplicationInfo> added = mAllAppsList.added;
+            mAllAppsList.added = new ArrayList<ApplicationInfo>();
+
+            mHandler.post(new Runnable() {
+                public void run() {
+                    final long t = SystemClock.uptimeMillis();
+                    final long startNanos = System.nanoTime();
+                    if (callbacks != null) {
+                        if (first) {
+                            callbacks.bindAllApplications(added);
+                        } else {
+                            callbacks.bindAppsAdded(added);
+                        }
+                        LauncherStats.ALL_APPS_BATCHES_BOUND.increment();
+                        LauncherStats.ALL_APPS_BATCH_BIND_TIME.recordSince(startNanos);
+                        if (DEBUG_LOADERS) {
+                            Log.d(TAG, "bound " + added.size() + " apps in "
+                                + (SystemClock.uptimeMillis() - t) + "ms");
+                        }
+                    } else {
+                        Log.i(TAG, "not binding apps: no Launcher activity");
+                    }
+                }
+            }, BindScheduler.LANE_ALL_APPS);
+
+            if (DEBUG_LOADERS) {
+                Log.d(TAG, "batch of " + count + " icons processed in "
+                        + (SystemClock.uptimeMillis() - batchStartTime) + "ms");
+            }
+        }
+
+        /**
+         * Builds the ApplicationInfo for one activity.  Runs on the icon loader pool.
+         */
+        private class ApplicationInfoLoader implements Callable<ApplicationInfo> {
+            private final PackageManager mPackageManager;
+            private final ResolveInfo mResolveInfo;
+            private final PackageInfoCache mPackageInfos;
+
+            ApplicationInfoLoader(PackageManager pm, ResolveInfo info,
+                    PackageInfoCache packageInfos) {
+                mPackageManager = pm;
+                mResolveInfo = info;
+                mPackageInfos = packageInfos;
+            }
+
+            public ApplicationInfo call() {
+                return new ApplicationInfo(mPackageManager, mResolveInfo, mIconCache, mLabelCache,
+                        mPackageInfos);
+            }
+        }
+
         public void dumpState() {
             Log.d(TAG, "mLoaderTask.mContext=" + mContext);
             Log.d(TAG, "mLoaderTask.mWaitThread=" + mWaitThread);
@@ -1519,6 +2161,8 @@ public class LauncherModel extends BroadcastReceiver {
                     for (int i = 0; i < N; i++) {
                         if (DEBUG_LOADERS) Log.d(TAG, "mAllAppsList.updatePackage " + packages[i]);
                         mAllAppsList.updatePackage(context, packages[i]);
+                        // Icons on disk drawn with an older version of a theme
+                        mIconCache.removeTheme(packages[i]);
                     }
                     break;
                 case OP_REMOVE:
@@ -1526,6 +2170,9 @@ public class LauncherModel extends BroadcastReceiver {
                     for (int i = 0; i < N; i++) {
                         if (DEBUG_LOADERS) Log.d(TAG, "mAllAppsList.removePackage " + packages[i]);
                         mAllAppsList.removePackage(packages[i]);
+                        if (mOp == OP_REMOVE) {
+                            mApp.getWidgetPreviewCache().removePackage(packages[i]);
+                        }
                     }
                     break;
             }
@@ -1542,6 +2189,7 @@ public class LauncherModel extends BroadcastReceiver {
                 removed = mAllAppsList.removed;
                 mAllAppsList.removed = new ArrayList<ApplicationInfo>();
                 for (ApplicationInfo info : removed) {
+                    info.unbind();
                     mIconCache.remove(info.intent.getComponent());
                 }
             }
@@ -1608,16 +2256,18 @@ public class LauncherModel extends BroadcastReceiver {
      * doesn't have a Cursor, but
      */
     public ShortcutInfo getShortcutInfo(PackageManager manager, Intent intent, Context context) {
-        return getShortcutInfo(manager, intent, context, null, -1, -1, null);
+        return getShortcutInfo(manager, intent, context, null, -1, -1, null, null, null);
     }
 
     /**
      * Make an ShortcutInfo object for a shortcut that is an application.
      *
      * If c is not null, then it will be used to fill in missing data like the title and icon.
+     * packageInfos, if not null, holds the package infos of the current load pass.
      */
     public ShortcutInfo getShortcutInfo(PackageManager manager, Intent intent, Context context,
-            Cursor c, int iconIndex, int titleIndex, HashMap<Object, CharSequence> labelCache) {
+            Cursor c, int iconIndex, int titleIndex, LabelCache labelCache,
+            StoredIcons storedIcons, PackageInfoCache packageInfos) {
         Bitmap icon = null;
         final ShortcutInfo info = new ShortcutInfo();
 
@@ -1626,15 +2276,14 @@ public class LauncherModel extends BroadcastReceiver {
             return null;
         }
 
-        try {
-            PackageInfo pi = manager.getPackageInfo(componentName.getPackageName(), 0);
-            if (!pi.applicationInfo.enabled) {
-                // If we return null here, the corresponding item will be removed from the launcher
-                // db and will not appear in the workspace.
-                return null;
-            }
-        } catch (NameNotFoundException e) {
+        final PackageInfo pi = PackageInfoCache.get(packageInfos, manager,
+                componentName.getPackageName());
+        if (pi == null) {
             Log.d(TAG, "getPackInfo failed for package " + componentName.getPackageName());
+        } else if (!pi.applicationInfo.enabled) {
+            // If we return null here, the corresponding item will be removed from the launcher
+            // db and will not appear in the workspace.
+            return null;
         }
 
         // TODO: See if the PackageManager knows about this case.  If it doesn't
@@ -1646,31 +2295,27 @@ public class LauncherModel extends BroadcastReceiver {
         // have icons anyway.
         final ResolveInfo resolveInfo = manager.resolveActivity(intent, 0);
         if (resolveInfo != null) {
-            icon = mIconCache.getIcon(componentName, resolveInfo, labelCache);
-        }
-        // the db
-        if (icon == null) {
+            info.setIcon(mIconCache.acquireIcon(componentName, resolveInfo, labelCache,
+                    packageInfos));
+        } else {
+            // the db
             if (c != null) {
-                icon = getIconFromCursor(c, iconIndex, context);
+                icon = getIconFromCursor(c, iconIndex, storedIcons, context);
             }
+            // the fallback icon
+            if (icon == null) {
+                icon = getFallbackIcon();
+                info.usingFallbackIcon = true;
+            }
+            info.setIcon(icon);
         }
-        // the fallback icon
-        if (icon == null) {
-            icon = getFallbackIcon();
-            info.usingFallbackIcon = true;
-        }
-        info.setIcon(icon);
 
         // from the resource
         if (resolveInfo != null) {
-            ComponentName key = LauncherModel.getComponentNameFromResolveInfo(resolveInfo);
-            if (labelCache != null && labelCache.containsKey(key)) {
-                info.title = labelCache.get(key);
+            if (labelCache != null) {
+                info.title = labelCache.getLabel(resolveInfo, manager);
             } else {
                 info.title = resolveInfo.activityInfo.loadLabel(manager);
-                if (labelCache != null) {
-                    labelCache.put(key, info.title);
-                }
             }
         }
         // from the db
@@ -1692,7 +2337,7 @@ public class LauncherModel extends BroadcastReceiver {
      */
     private ShortcutInfo getShortcutInfo(Cursor c, Context context,
             int iconTypeIndex, int iconPackageIndex, int iconResourceIndex, int iconIndex,
-            int titleIndex) {
+            int titleIndex, StoredIcons storedIcons) {
 
         Bitmap icon = null;
         final ShortcutInfo info = new ShortcutInfo();
@@ -1712,7 +2357,7 @@ public class LauncherModel extends BroadcastReceiver {
             // the resource
             try {
                 Resources resources = packageManager.getResourcesForApplication(packageName);
-                Log.d(TAG, "package name ="+packageName);
+                if (DEBUG_LOADERS) Log.d(TAG, "package name =" + packageName);
                 if (resources != null) {
                     final int id = resources.getIdentifier(resourceName, null, null);
                     icon = Utilities.createIconBitmap(
@@ -1723,7 +2368,7 @@ public class LauncherModel extends BroadcastReceiver {
             }
             // the db
             if (icon == null) {
-                icon = getIconFromCursor(c, iconIndex, context);
+                icon = getIconFromCursor(c, iconIndex, storedIcons, context);
             }
             // the fallback icon
             if (icon == null) {
@@ -1732,7 +2377,7 @@ public class LauncherModel extends BroadcastReceiver {
             }
             break;
         case LauncherSettings.Favorites.ICON_TYPE_BITMAP:
-            icon = getIconFromCursor(c, iconIndex, context);
+            icon = getIconFromCursor(c, iconIndex, storedIcons, context);
             if (icon == null) {
                 icon = getFallbackIcon();
                 info.customIcon = false;
@@ -1751,12 +2396,24 @@ public class LauncherModel extends BroadcastReceiver {
         return info;
     }
 
-    Bitmap getIconFromCursor(Cursor c, int iconIndex, Context context) {
-        if (true) {
+    Bitmap getIconFromCursor(Cursor c, int iconIndex, StoredIcons storedIcons,
+            Context context) {
+        if (DEBUG_LOADERS) {
             Log.d(TAG, "getIconFromCursor app="
                     + c.getString(c.getColumnIndexOrThrow(LauncherSettings.Favorites.TITLE)));
         }
         byte[] data = c.getBlob(iconIndex);
+        if (data == null) {
+            // The icon is kept in the icons table
+            if (storedIcons != null) {
+                data = storedIcons.get();
+            } else {
+                final int iconIdIndex = c.getColumnIndex(LauncherSettings.Favorites.ICON_ID);
+                if (iconIdIndex != -1 && !c.isNull(iconIdIndex)) {
+                    data = loadStoredIcon(context, c.getLong(iconIdIndex));
+                }
+            }
+        }
         try {
             return Utilities.createIconBitmap(
                     BitmapFactory.decodeByteArray(data, 0, data.length), context);
@@ -1765,6 +2422,89 @@ public class LauncherModel extends BroadcastReceiver {
         }
     }
 
+    private static byte[] loadStoredIcon(Context context, long iconId) {
+        final Cursor c = context.getContentResolver().query(
+                LauncherSettings.Icons.getContentUri(iconId),
+                new String[] { LauncherSettings.Icons.ICON }, null, null, null);
+        try {
+            return c.moveToFirst() ? c.getBlob(0) : null;
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * The icons kept in the icons table for the rows of a favorites cursor.  The first time
+     * one is needed, those of every row of the same item type are read with a single query,
+     * rather than one query per row.  Applications only need theirs when they can't be
+     * resolved, so they are read separately from shortcuts.
+     */
+    static class StoredIcons {
+        private final Context mContext;
+        private final Cursor mCursor;
+        private final int mItemTypeIndex;
+        private final int mIconIndex;
+        private final int mIconIdIndex;
+        private final SparseArray<HashMap<Long, byte[]>> mIcons =
+                new SparseArray<HashMap<Long, byte[]>>();
+
+        StoredIcons(Context context, Cursor c, int itemTypeIndex, int iconIndex,
+                int iconIdIndex) {
+            mContext = context;
+            mCursor = c;
+            mItemTypeIndex = itemTypeIndex;
+            mIconIndex = iconIndex;
+            mIconIdIndex = iconIdIndex;
+        }
+
+        /**
+         * @return the stored icon of the cursor's current row, or null if it has none.
+         */
+        byte[] get() {
+            if (mCursor.isNull(mIconIdIndex)) {
+                return null;
+            }
+            final int itemType = mCursor.getInt(mItemTypeIndex);
+            HashMap<Long, byte[]> icons = mIcons.get(itemType);
+            if (icons == null) {
+                icons = load(itemType);
+                mIcons.put(itemType, icons);
+            }
+            return icons.get(mCursor.getLong(mIconIdIndex));
+        }
+
+        private HashMap<Long, byte[]> load(int itemType) {
+            final Cursor c = mCursor;
+            final int position = c.getPosition();
+            final StringBuilder ids = new StringBuilder();
+            c.moveToPosition(-1);
+            while (c.moveToNext()) {
+                if (c.getInt(mItemTypeIndex) == itemType && c.isNull(mIconIndex)
+                        && !c.isNull(mIconIdIndex)) {
+                    ids.append(ids.length() == 0 ? "" : ",").append(c.getLong(mIconIdIndex));
+                }
+            }
+            c.moveToPosition(position);
+
+            final HashMap<Long, byte[]> icons = new HashMap<Long, byte[]>();
+            if (ids.length() == 0) {
+                return icons;
+            }
+            final Cursor iconsCursor = mContext.getContentResolver().query(
+                    LauncherSettings.Icons.CONTENT_URI, new String[] {
+                            LauncherSettings.Icons._ID, LauncherSettings.Icons.ICON },
+                    LauncherSettings.Icons._ID + " IN (" + ids + ")", null, null);
+            try {
+                while (iconsCursor.moveToNext()) {
+                    icons.put(iconsCursor.getLong(0), iconsCursor.getBlob(1));
+                }
+            } finally {
+                iconsCursor.close();
+            }
+            return icons;
+        }
+    }
+
     ShortcutInfo addShortcut(Context context, Intent data, long container, int screen,
             int cellX, int cellY, boolean notify) {
         final ShortcutInfo info = infoFromShortcutIntent(context, data, null);
@@ -1884,8 +2624,8 @@ public class LauncherModel extends BroadcastReceiver {
         return info;
     }
 
-    boolean queueIconToBeChecked(HashMap<Object, byte[]> cache, ShortcutInfo info, Cursor c,
-            int iconIndex) {
+    boolean queueIconToBeChecked(HashMap<ShortcutInfo, String> cache, ShortcutInfo info,
+            String savedHash) {
         // If apps can't be on SD, don't even bother.
         if (!mAppsCanBeOnExternalStorage) {
             return false;
@@ -1897,18 +2637,17 @@ public class LauncherModel extends BroadcastReceiver {
         // package manager can't find an icon (for example because
         // the app is on SD) then we can use that instead.
         if (!info.customIcon && !info.usingFallbackIcon) {
-            cache.put(info, c.getBlob(iconIndex));
+            cache.put(info, savedHash);
             return true;
         }
         return false;
     }
-    void updateSavedIcon(Context context, ShortcutInfo info, byte[] data) {
+    void updateSavedIcon(Context context, ShortcutInfo info, String savedHash) {
         boolean needSave = false;
         try {
-            if (data != null) {
-                Bitmap saved = BitmapFactory.decodeByteArray(data, 0, data.length);
+            if (savedHash != null) {
                 Bitmap loaded = info.getIcon(mIconCache);
-                needSave = !saved.sameAs(loaded);
+                needSave = !savedHash.equals(ItemInfo.hashBitmap(loaded));
             } else {
                 needSave = true;
             }
@@ -1938,11 +2677,10 @@ public class LauncherModel extends BroadcastReceiver {
         return folderInfo;
     }
 
-    private static final Collator sCollator = Collator.getInstance();
     public static final Comparator<ApplicationInfo> APP_NAME_COMPARATOR
             = new Comparator<ApplicationInfo>() {
         public final int compare(ApplicationInfo a, ApplicationInfo b) {
-            int result = sCollator.compare(a.title.toString(), b.title.toString());
+            int result = a.getTitleKey().compareTo(b.getTitleKey());
             if (result == 0) {
                 result = a.componentName.compareTo(b.componentName);
             }
@@ -1960,7 +2698,9 @@ public class LauncherModel extends BroadcastReceiver {
     public static final Comparator<AppWidgetProviderInfo> WIDGET_NAME_COMPARATOR
             = new Comparator<AppWidgetProviderInfo>() {
         public final int compare(AppWidgetProviderInfo a, AppWidgetProviderInfo b) {
-            return sCollator.compare(a.label.toString(), b.label.toString());
+            final LabelCache labels = LabelCache.getInstance();
+            return labels.getCollationKey(a.label.toString()).compareTo(
+                    labels.getCollationKey(b.label.toString()));
         }
     };
     static ComponentName getComponentNameFromResolveInfo(ResolveInfo info) {
@@ -1970,64 +2710,55 @@ public class LauncherModel extends BroadcastReceiver {
             return new ComponentName(info.serviceInfo.packageName, info.serviceInfo.name);
         }
     }
+    /**
+     * Sorts activities by label.  Labels and their collation keys come from the shared
+     * {@link LabelCache}, so each one is loaded and keyed at most once per locale and
+     * every comparison is a byte comparison.
+     */
     public static class ShortcutNameComparator implements Comparator<ResolveInfo> {
-        private PackageManager mPackageManager;
-        private HashMap<Object, CharSequence> mLabelCache;
+        private final PackageManager mPackageManager;
+        private final LabelCache mLabelCache;
+        private final HashMap<ResolveInfo, CollationKey> mKeys =
+                new HashMap<ResolveInfo, CollationKey>();
         ShortcutNameComparator(PackageManager pm) {
-            mPackageManager = pm;
-            mLabelCache = new HashMap<Object, CharSequence>();
+            this(pm, LabelCache.getInstance());
         }
-        ShortcutNameComparator(PackageManager pm, HashMap<Object, CharSequence> labelCache) {
+        ShortcutNameComparator(PackageManager pm, LabelCache labelCache) {
             mPackageManager = pm;
             mLabelCache = labelCache;
         }
-        public final int compare(ResolveInfo a, ResolveInfo b) {
-            CharSequence labelA, labelB;
-            ComponentName keyA = LauncherModel.getComponentNameFromResolveInfo(a);
-            ComponentName keyB = LauncherModel.getComponentNameFromResolveInfo(b);
-            if (mLabelCache.containsKey(keyA)) {
-                labelA = mLabelCache.get(keyA);
-            } else {
-                labelA = a.loadLabel(mPackageManager).toString();
-
-                mLabelCache.put(keyA, labelA);
-            }
-            if (mLabelCache.containsKey(keyB)) {
-                labelB = mLabelCache.get(keyB);
-            } else {
-                labelB = b.loadLabel(mPackageManager).toString();
-
-                mLabelCache.put(keyB, labelB);
+        private CollationKey getKey(ResolveInfo info) {
+            CollationKey key = mKeys.get(info);
+            if (key == null) {
+                key = mLabelCache.getCollationKey(mLabelCache.getLabel(info, mPackageManager));
+                mKeys.put(info, key);
             }
-            return sCollator.compare(labelA, labelB);
+            return key;
+        }
+        public final int compare(ResolveInfo a, ResolveInfo b) {
+            return getKey(a).compareTo(getKey(b));
         }
     };
     public static class WidgetAndShortcutNameComparator implements Comparator<Object> {
-        private PackageManager mPackageManager;
-        private HashMap<Object, String> mLabelCache;
+        private final PackageManager mPackageManager;
+        private final LabelCache mLabelCache = LabelCache.getInstance();
+        private final HashMap<Object, CollationKey> mKeys = new HashMap<Object, CollationKey>();
         WidgetAndShortcutNameComparator(PackageManager pm) {
             mPackageManager = pm;
-            mLabelCache = new HashMap<Object, String>();
         }
-        public final int compare(Object a, Object b) {
-            String labelA, labelB;
-            if (mLabelCache.containsKey(a)) {
-                labelA = mLabelCache.get(a);
-            } else {
-                labelA = (a instanceof AppWidgetProviderInfo) ?
-                    ((AppWidgetProviderInfo) a).label :
-                    ((ResolveInfo) a).loadLabel(mPackageManager).toString();
-                mLabelCache.put(a, labelA);
-            }
-            if (mLabelCache.containsKey(b)) {
-                labelB = mLabelCache.get(b);
-            } else {
-                labelB = (b instanceof AppWidgetProviderInfo) ?
-                    ((AppWidgetProviderInfo) b).label :
-                    ((ResolveInfo) b).loadLabel(mPackageManager).toString();
-                mLabelCache.put(b, labelB);
+        private CollationKey getKey(Object info) {
+            CollationKey key = mKeys.get(info);
+            if (key == null) {
+                final String label = (info instanceof AppWidgetProviderInfo) ?
+                    ((AppWidgetProviderInfo) info).label :
+                    mLabelCache.getLabel((ResolveInfo) info, mPackageManager);
+                key = mLabelCache.getCollationKey(label);
+                mKeys.put(info, key);
             }
-            return sCollator.compare(labelA, labelB);
+            return key;
+        }
+        public final int compare(Object a, Object b) {
+            return getKey(a).compareTo(getKey(b));
         }
     };
 
@@ -2042,6 +2773,7 @@ public class LauncherModel extends BroadcastReceiver {
         } else {
             Log.d(TAG, "mLoaderTask=null");
         }
+        LauncherStats.dumpState();
     }
     
     //Pekall LK
@@ -2049,6 +2781,7 @@ public class LauncherModel extends BroadcastReceiver {
 		synchronized (this) {
 			mAllAppsLoaded = mWorkspaceLoaded = false;
 		}
+		invalidateWorkspaceSnapshot();
 		boolean runLoader = true;
 		if (mCallbacks != null) {
 			Callbacks callbacks = mCallbacks.get();
@@ -2064,6 +2797,146 @@ public class LauncherModel extends BroadcastReceiver {
 			startLoader(mApp, false);
 		}
 	}
+
+	/**
+	 * Move the bound icons over to the current theme, which has just replaced oldThemePackage.
+	 *
+	 * Only the icons of components that either theme has a drawable for are built again, on
+	 * the icon loader pool, unless the icon background changed as well, in which case all of
+	 * them are.  The new icons are then swapped into the bound views in place.  Everything is
+	 * reloaded instead if nothing has been bound yet, or if the theme changes the icon size.
+	 */
+	public void applyTheme(final String oldThemePackage) {
+		sWorker.post(new Runnable() {
+			public void run() {
+				final long startNanos = System.nanoTime();
+				final boolean loaded;
+				synchronized (mLock) {
+					loaded = mAllAppsLoaded && mWorkspaceLoaded;
+				}
+				if (!Utilities.reloadThemeBackground(mApp) || !loaded) {
+					mIconCache.flush();
+					reset(mApp);
+					return;
+				}
+
+				// Everything that shows a cached icon
+				final HashMap<ComponentName, Intent> intents = new HashMap<ComponentName, Intent>();
+				for (ApplicationInfo app : mAllAppsList.data) {
+					intents.put(app.componentName, app.intent);
+				}
+				for (ItemInfo item : sWorkspaceItems) {
+					addApplicationIntent(intents, item);
+				}
+				for (FolderInfo folder : sFolders.values()) {
+					for (ShortcutInfo item : folder.contents) {
+						addApplicationIntent(intents, item);
+					}
+				}
+				// Anything else is built again when next asked for
+				mIconCache.flushExcept(intents.keySet());
+
+				final String newThemePackage = ThemeSettings.getCurrentThemePackage();
+				final String backgroundName =
+						mApp.getResources().getResourceEntryName(R.drawable.icon_background);
+				final ArrayList<String> names = new ArrayList<String>(intents.size() + 1);
+				for (ComponentName component : intents.keySet()) {
+					names.add(component.getClassName());
+				}
+				names.add(backgroundName);
+				final HashSet<String> overrides =
+						ThemeSettings.getDrawableOverrides(mApp, oldThemePackage, names);
+				overrides.addAll(ThemeSettings.getDrawableOverrides(mApp, newThemePackage, names));
+				final boolean allIcons =
+						Utilities.hasIconBackground() && overrides.contains(backgroundName);
+
+				final PackageManager packageManager = mApp.getPackageManager();
+				final HashMap<ComponentName, FutureTask<IconHandle>> pending =
+						new HashMap<ComponentName, FutureTask<IconHandle>>();
+				for (final ComponentName component : intents.keySet()) {
+					if (!allIcons && !overrides.contains(component.getClassName())) {
+						continue;
+					}
+					final Intent intent = intents.get(component);
+					final FutureTask<IconHandle> task = new FutureTask<IconHandle>(
+							new Callable<IconHandle>() {
+								public IconHandle call() {
+									final ResolveInfo info =
+											packageManager.resolveActivity(intent, 0);
+									return info != null
+											? mIconCache.refreshIcon(component, info) : null;
+								}
+							});
+					pending.put(component, task);
+					sIconLoaderPool.execute(task);
+				}
+
+				final HashSet<ComponentName> updated = new HashSet<ComponentName>();
+				final ArrayList<ApplicationInfo> apps = new ArrayList<ApplicationInfo>();
+				final ArrayList<IconHandle> icons = new ArrayList<IconHandle>();
+				for (ApplicationInfo app : mAllAppsList.data) {
+					final IconHandle icon = getRefreshedIcon(pending.remove(app.componentName));
+					if (icon != null) {
+						updated.add(app.componentName);
+						apps.add(app);
+						icons.add(icon);
+					}
+				}
+				for (Map.Entry<ComponentName, FutureTask<IconHandle>> e : pending.entrySet()) {
+					final IconHandle icon = getRefreshedIcon(e.getValue());
+					if (icon != null) {
+						// The shortcuts acquire their own reference when they are updated
+						updated.add(e.getKey());
+						icon.release();
+					}
+				}
+				LauncherStats.THEME_ICONS_REBUILT.add(updated.size());
+
+				final Callbacks callbacks = mCallbacks != null ? mCallbacks.get() : null;
+				mHandler.post(new Runnable() {
+					public void run() {
+						for (int i = 0; i < apps.size(); i++) {
+							// Apps in the drawer don't keep a reference
+							apps.get(i).setIconUnretained(icons.get(i));
+							icons.get(i).release();
+						}
+						Callbacks cb = mCallbacks != null ? mCallbacks.get() : null;
+						if (callbacks == cb && cb != null) {
+							callbacks.bindIconsUpdated(updated);
+						}
+						LauncherStats.THEME_SWITCH_TIME.recordSince(startNanos);
+						scheduleWorkspaceSnapshot();
+					}
+				});
+			}
+		});
+	}
+
+	private static void addApplicationIntent(HashMap<ComponentName, Intent> intents,
+			ItemInfo item) {
+		if (item instanceof ShortcutInfo
+				&& item.itemType == LauncherSettings.Favorites.ITEM_TYPE_APPLICATION) {
+			final Intent intent = ((ShortcutInfo) item).intent;
+			final ComponentName component = intent.getComponent();
+			if (component != null && Intent.ACTION_MAIN.equals(intent.getAction())) {
+				intents.put(component, intent);
+			}
+		}
+	}
+
+	private static IconHandle getRefreshedIcon(FutureTask<IconHandle> task) {
+		if (task == null) {
+			return null;
+		}
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			return null;
+		} catch (ExecutionException e) {
+			Log.w(TAG, "Failed to rebuild icon", e.getCause());
+			return null;
+		}
+	}
 	
 	
 	private ThemePackageManager mThemePackageManager;
@@ -22,11 +22,14 @@ import android.appwidget.AppWidgetManager;
 import android.appwidget.AppWidgetProviderInfo;
 import android.content.ComponentName;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.content.OperationApplicationException;
 import android.content.pm.ActivityInfo;
 import android.content.pm.PackageManager;
 import android.content.res.Resources;
@@ -64,12 +67,13 @@ public class LauncherProvider extends ContentProvider {
 
     private static final String DATABASE_NAME = "launcher.db";
 
-    private static final int DATABASE_VERSION = 9;
+    private static final int DATABASE_VERSION = 10;
 
     //Pekall LK reset AUTHORITY to avoid the same provider
     static final String AUTHORITY = "com.pekall.launcher2.settings";
 
     static final String TABLE_FAVORITES = "favorites";
+    static final String TABLE_ICONS = "icons";
     static final String PARAMETER_NOTIFY = "notify";
 
     /**
@@ -119,7 +123,55 @@ public class LauncherProvider extends ContentProvider {
         if (!values.containsKey(LauncherSettings.Favorites._ID)) {
             throw new RuntimeException("Error: attempting to add item without specifying an id");
         }
-        return db.insert(table, nullColumnHack, values);
+        return db.insert(table, nullColumnHack, storeIcon(db, table, values));
+    }
+
+    /**
+     * Moves any icon in the supplied favorites values into the icons table, and replaces it
+     * with a reference to the stored copy.  Icons that are already stored are shared.
+     */
+    private static ContentValues storeIcon(SQLiteDatabase db, String table,
+            ContentValues values) {
+        if (!TABLE_FAVORITES.equals(table) || values == null
+                || !values.containsKey(Favorites.ICON)) {
+            return values;
+        }
+        values = new ContentValues(values);
+        final byte[] data = values.getAsByteArray(Favorites.ICON);
+        String hash = values.getAsString(LauncherSettings.Icons.HASH);
+        values.putNull(Favorites.ICON);
+        values.remove(LauncherSettings.Icons.HASH);
+
+        if (data != null && hash == null) {
+            final Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length);
+            if (bitmap != null) {
+                hash = ItemInfo.hashBitmap(bitmap);
+                bitmap.recycle();
+            }
+        }
+        if (hash == null) {
+            values.putNull(Favorites.ICON_ID);
+            return values;
+        }
+
+        long iconId = -1;
+        final Cursor c = db.query(TABLE_ICONS, new String[] { LauncherSettings.Icons._ID },
+                LauncherSettings.Icons.HASH + "=?", new String[] { hash }, null, null, null);
+        try {
+            if (c.moveToFirst()) {
+                iconId = c.getLong(0);
+            }
+        } finally {
+            c.close();
+        }
+        if (iconId == -1) {
+            final ContentValues icon = new ContentValues();
+            icon.put(LauncherSettings.Icons.HASH, hash);
+            icon.put(LauncherSettings.Icons.ICON, data);
+            iconId = db.insert(TABLE_ICONS, null, icon);
+        }
+        values.put(Favorites.ICON_ID, iconId);
+        return values;
     }
 
     private static void deleteId(SQLiteDatabase db, long id) {
@@ -164,6 +216,20 @@ public class LauncherProvider extends ContentProvider {
         return values.length;
     }
 
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentProviderResult[] results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+            return results;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
         SqlArguments args = new SqlArguments(uri, selection, selectionArgs);
@@ -180,7 +246,8 @@ public class LauncherProvider extends ContentProvider {
         SqlArguments args = new SqlArguments(uri, selection, selectionArgs);
 
         SQLiteDatabase db = mOpenHelper.getWritableDatabase();
-        int count = db.update(args.table, values, args.where, args.args);
+        int count = db.update(args.table, storeIcon(db, args.table, values), args.where,
+                args.args);
         if (count > 0) sendNotify(uri);
 
         return count;
@@ -257,8 +324,10 @@ public class LauncherProvider extends ContentProvider {
                     "iconResource TEXT," +
                     "icon BLOB," +
                     "uri TEXT," +
-                    "displayMode INTEGER" +
+                    "displayMode INTEGER," +
+                    "iconId INTEGER" +
                     ");");
+            createIconsTable(db);
 
             // Database was just created, so wipe any previous widgets
             if (mAppWidgetHost != null) {
@@ -272,6 +341,24 @@ public class LauncherProvider extends ContentProvider {
             }
         }
 
+        private void createIconsTable(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE_ICONS + " (" +
+                    "_id INTEGER PRIMARY KEY," +
+                    "hash TEXT NOT NULL UNIQUE," +
+                    "icon BLOB" +
+                    ");");
+        }
+
+        @Override
+        public void onOpen(SQLiteDatabase db) {
+            super.onOpen(db);
+            if (!db.isReadOnly()) {
+                // Drop the icons that nothing refers to any more
+                db.execSQL("DELETE FROM " + TABLE_ICONS + " WHERE _id NOT IN " +
+                        "(SELECT iconId FROM " + TABLE_FAVORITES + " WHERE iconId IS NOT NULL);");
+            }
+        }
+
         private boolean convertDatabase(SQLiteDatabase db) {
             if (LOGD) Log.d(TAG, "converting database from an older format, but not onUpgrade");
             boolean converted = false;
@@ -450,13 +537,47 @@ public class LauncherProvider extends ContentProvider {
                 version = 9;
             }
 
+            if (version < 10) {
+                // Version 10 moves the icons into their own table, stored once per bitmap
+                db.beginTransaction();
+                try {
+                    db.execSQL("ALTER TABLE favorites ADD COLUMN iconId INTEGER;");
+                    createIconsTable(db);
+                    moveIconsToIconsTable(db);
+                    db.setTransactionSuccessful();
+                    version = 10;
+                } catch (SQLException ex) {
+                    // Old version remains, which means we wipe old data
+                    Log.e(TAG, ex.getMessage(), ex);
+                } finally {
+                    db.endTransaction();
+                }
+            }
+
             if (version != DATABASE_VERSION) {
                 Log.w(TAG, "Destroying all old data.");
                 db.execSQL("DROP TABLE IF EXISTS " + TABLE_FAVORITES);
+                db.execSQL("DROP TABLE IF EXISTS " + TABLE_ICONS);
                 onCreate(db);
             }
         }
 
+        private void moveIconsToIconsTable(SQLiteDatabase db) {
+            final Cursor c = db.rawQuery("SELECT _id, icon FROM favorites WHERE icon IS NOT NULL",
+                    null);
+            try {
+                final ContentValues values = new ContentValues();
+                while (c.moveToNext()) {
+                    values.clear();
+                    values.put(Favorites.ICON, c.getBlob(1));
+                    db.update(TABLE_FAVORITES, storeIcon(db, TABLE_FAVORITES, values),
+                            "_id=" + c.getLong(0), null);
+                }
+            } finally {
+                c.close();
+            }
+        }
+
         private boolean updateContactsShortcuts(SQLiteDatabase db) {
             Cursor c = null;
             final String selectWhere = buildOrWhereString(Favorites.ITEM_TYPE,
@@ -84,7 +84,53 @@ class LauncherSettings {
         static final String ICON_RESOURCE = "iconResource";
 
         /**
-         * The custom icon bitmap, if icon type is ICON_TYPE_BITMAP.
+         * The custom icon bitmap, if icon type is ICON_TYPE_BITMAP.  Written icons are moved
+         * into the {@link Icons} table by the provider, and only {@link #ICON_ID} is kept.
+         * <P>Type: BLOB</P>
+         */
+        static final String ICON = "icon";
+
+        /**
+         * The id of the row in the {@link Icons} table holding the icon bitmap.
+         * <P>Type: INTEGER</P>
+         */
+        static final String ICON_ID = "iconId";
+    }
+
+    /**
+     * Icons referenced by favorites, stored once for each distinct bitmap.
+     */
+    static final class Icons implements BaseColumns {
+        /**
+         * The content:// style URL for this table
+         */
+        static final Uri CONTENT_URI = Uri.parse("content://" +
+                LauncherProvider.AUTHORITY + "/" + LauncherProvider.TABLE_ICONS +
+                "?" + LauncherProvider.PARAMETER_NOTIFY + "=false");
+
+        /**
+         * The content:// style URL for a given row, identified by its id.
+         *
+         * @param id The row id.
+         *
+         * @return The unique content URL for the specified row.
+         */
+        static Uri getContentUri(long id) {
+            return Uri.parse("content://" + LauncherProvider.AUTHORITY +
+                    "/" + LauncherProvider.TABLE_ICONS + "/" + id + "?" +
+                    LauncherProvider.PARAMETER_NOTIFY + "=false");
+        }
+
+        /**
+         * Hash of the icon's pixels, see {@link ItemInfo#hashBitmap(android.graphics.Bitmap)}.
+         * Also passed alongside {@link BaseLauncherColumns#ICON} when writing a favorite, so
+         * that the provider doesn't have to decode the icon to find its hash.
+         * <P>Type: TEXT</P>
+         */
+        static final String HASH = "hash";
+
+        /**
+         * The icon bitmap, PNG compressed.
          * <P>Type: BLOB</P>
          */
         static final String ICON = "icon";
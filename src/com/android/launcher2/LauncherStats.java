@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher2;
+
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-memory counters and latency histograms for the loader and icon paths.
+ *
+ * Recording is a couple of atomic adds and never allocates, so it is always on.  Verbose
+ * per-event logging should be guarded by {@link #TRACE}, which is a compile time constant so
+ * the guarded code is stripped from release builds.
+ */
+final class LauncherStats {
+    static final String TAG = "Launcher.Stats";
+
+    /** Set to true to log individual trace points. */
+    static final boolean TRACE = false;
+
+    private static final ArrayList<Object> sRegistry = new ArrayList<Object>();
+
+    static final Counter ICONS_CREATED = new Counter("icons created");
+    static final Histogram ICON_CREATE_TIME = new Histogram("icon create time");
+    static final Counter WORKSPACE_CHUNKS_BOUND = new Counter("workspace chunks bound");
+    static final Counter ALL_APPS_BATCHES_BOUND = new Counter("all apps batches bound");
+    static final Histogram ALL_APPS_BATCH_BIND_TIME = new Histogram("all apps batch bind time");
+    static final Histogram WORKSPACE_FIRST_SCREEN_TIME =
+            new Histogram("workspace first screen time");
+    static final Counter WORKSPACE_SNAPSHOT_HITS = new Counter("workspace snapshot hits");
+    static final Counter WORKSPACE_SNAPSHOT_MISSES = new Counter("workspace snapshot misses");
+    static final Counter DB_WRITES_QUEUED = new Counter("db writes queued");
+    static final Counter DB_WRITES_COALESCED = new Counter("db writes coalesced");
+    static final Counter DB_BATCHES_APPLIED = new Counter("db batches applied");
+    static final Histogram WORKSPACE_LOAD_TIME = new Histogram("workspace load time");
+    static final Histogram ALL_APPS_LOAD_TIME = new Histogram("all apps load time");
+    static final Histogram THEME_SWITCH_TIME = new Histogram("theme switch time");
+    static final Counter THEME_ICONS_REBUILT = new Counter("theme icons rebuilt");
+
+    private LauncherStats() {
+    }
+
+    /**
+     * A monotonically increasing event count.
+     */
+    static final class Counter {
+        private final String mName;
+        private final AtomicLong mCount = new AtomicLong();
+
+        Counter(String name) {
+            mName = name;
+            synchronized (sRegistry) {
+                sRegistry.add(this);
+            }
+        }
+
+        void increment() {
+            mCount.incrementAndGet();
+        }
+
+        void add(long delta) {
+            mCount.addAndGet(delta);
+        }
+
+        long get() {
+            return mCount.get();
+        }
+
+        @Override
+        public String toString() {
+            return mName + ": " + mCount.get();
+        }
+    }
+
+    /**
+     * A level that goes up and down, along with the highest it has been.
+     */
+    static final class Gauge {
+        private final String mName;
+        private final AtomicLong mValue = new AtomicLong();
+        private final AtomicLong mMax = new AtomicLong();
+
+        Gauge(String name) {
+            mName = name;
+            synchronized (sRegistry) {
+                sRegistry.add(this);
+            }
+        }
+
+        void set(long value) {
+            mValue.set(value);
+            long max;
+            do {
+                max = mMax.get();
+            } while (value > max && !mMax.compareAndSet(max, value));
+        }
+
+        long get() {
+            return mValue.get();
+        }
+
+        @Override
+        public String toString() {
+            return mName + ": " + mValue.get() + " (max " + mMax.get() + ")";
+        }
+    }
+
+    /**
+     * Durations bucketed by powers of two microseconds, from under 1us up to over a minute.
+     */
+    static final class Histogram {
+        private static final int BUCKETS = 28;
+
+        private final String mName;
+        private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mTotalMicros = new AtomicLong();
+        private final AtomicLong mMaxMicros = new AtomicLong();
+
+        Histogram(String name) {
+            mName = name;
+            synchronized (sRegistry) {
+                sRegistry.add(this);
+            }
+        }
+
+        /**
+         * Record one sample, given the {@link System#nanoTime()} at which it started.
+         */
+        void recordSince(long startNanos) {
+            record((System.nanoTime() - startNanos) / 1000);
+        }
+
+        void record(long micros) {
+            if (micros < 0) {
+                micros = 0;
+            }
+            final int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+            mBuckets.incrementAndGet(bucket);
+            mCount.incrementAndGet();
+            mTotalMicros.addAndGet(micros);
+
+            long max;
+            do {
+                max = mMaxMicros.get();
+            } while (micros > max && !mMaxMicros.compareAndSet(max, micros));
+        }
+
+        long getCount() {
+            return mCount.get();
+        }
+
+        @Override
+        public String toString() {
+            final long count = mCount.get();
+            final StringBuilder sb = new StringBuilder(mName);
+            sb.append(": count=").append(count);
+            if (count > 0) {
+                sb.append(" mean=").append(mTotalMicros.get() / count / 1000f).append("ms");
+                sb.append(" max=").append(mMaxMicros.get() / 1000f).append("ms");
+                sb.append(" buckets(<us)=[");
+                boolean first = true;
+                for (int i = 0; i < BUCKETS; i++) {
+                    final long n = mBuckets.get(i);
+                    if (n != 0) {
+                        if (!first) {
+                            sb.append(", ");
+                        }
+                        sb.append(1L << i).append(':').append(n);
+                        first = false;
+                    }
+                }
+                sb.append(']');
+            }
+            return sb.toString();
+        }
+    }
+
+    static void dumpState() {
+        synchronized (sRegistry) {
+            for (Object stat : sRegistry) {
+                Log.d(TAG, stat.toString());
+            }
+        }
+    }
+
+    static void dump(String prefix, PrintWriter writer) {
+        synchronized (sRegistry) {
+            for (Object stat : sRegistry) {
+                writer.println(prefix + stat);
+            }
+        }
+    }
+}
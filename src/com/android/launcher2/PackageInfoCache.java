@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher2;
+
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.PackageManager.NameNotFoundException;
+
+import java.util.HashMap;
+
+/**
+ * The PackageInfo of each package, asked of the package manager at most once.
+ *
+ * A loader pass creates one and passes it to everything that needs the version or flags of
+ * a package, so that apps with several activities, or several items on the workspace, don't
+ * cost a call each.  It is not kept between passes, so that it never goes stale.  Safe to use
+ * from any thread.
+ */
+final class PackageInfoCache {
+    private final PackageManager mPackageManager;
+    // Packages that aren't installed are stored as null
+    private final HashMap<String, PackageInfo> mPackages = new HashMap<String, PackageInfo>();
+
+    PackageInfoCache(PackageManager pm) {
+        mPackageManager = pm;
+    }
+
+    /**
+     * Fetches every installed package in a single call, for passes that will need most of
+     * them anyway.
+     */
+    void addInstalledPackages() {
+        for (PackageInfo info : mPackageManager.getInstalledPackages(0)) {
+            synchronized (mPackages) {
+                mPackages.put(info.packageName, info);
+            }
+        }
+    }
+
+    /**
+     * Returns the info for the package, asking the package manager for it if it isn't stored
+     * yet, or null if it isn't installed.  The lock is not held during the package manager call.
+     */
+    PackageInfo get(String packageName) {
+        synchronized (mPackages) {
+            if (mPackages.containsKey(packageName)) {
+                return mPackages.get(packageName);
+            }
+        }
+        final PackageInfo info = getPackageInfo(mPackageManager, packageName);
+        synchronized (mPackages) {
+            mPackages.put(packageName, info);
+        }
+        return info;
+    }
+
+    /**
+     * Returns the info for the package from the cache if there is one, otherwise straight
+     * from the package manager, or null if it isn't installed.
+     */
+    static PackageInfo get(PackageInfoCache cache, PackageManager pm, String packageName) {
+        return cache != null ? cache.get(packageName) : getPackageInfo(pm, packageName);
+    }
+
+    private static PackageInfo getPackageInfo(PackageManager pm, String packageName) {
+        try {
+            return pm.getPackageInfo(packageName, 0);
+        } catch (NameNotFoundException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher2;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.ArrayList;
+
+/**
+ * Runs the background part of page content tasks (widget previews, holographic outlines) on a
+ * thread of its own, lowest priority value first, and delivers the results on the main thread.
+ *
+ * Unlike AsyncTask this does not share its threads with the rest of the process, and the order
+ * in which pending tasks run can be changed at any time with {@link #setPriority(Task, int)},
+ * so there is no need to play with thread priorities or sleep to keep side pages from getting
+ * ahead of the current one.
+ */
+class PageContentExecutor {
+    private static final String TAG = "Launcher.PageContentExecutor";
+
+    private static final LauncherStats.Histogram sGenerateTime =
+            new LauncherStats.Histogram("page content generate time");
+    private static final LauncherStats.Histogram sLatency =
+            new LauncherStats.Histogram("page content latency");
+    private static final LauncherStats.Counter sCancelled =
+            new LauncherStats.Counter("page content tasks cancelled");
+
+    /**
+     * A unit of page content work.  {@link #doInBackground()} runs on the executor's thread and
+     * {@link #onPostExecute()} then runs on the main thread, even if the task was cancelled in
+     * the meantime, so that it can release whatever it generated.
+     */
+    abstract static class Task {
+        final int page;
+        // All guarded by the executor
+        private int mPriority;
+        private long mSequence;
+        private long mSubmittedNanos;
+        private volatile boolean mCancelled;
+
+        Task(int page) {
+            this.page = page;
+        }
+
+        abstract void doInBackground();
+
+        abstract void onPostExecute();
+
+        /**
+         * Whether the task has been cancelled.  Long running tasks should check this between
+         * items and stop early.
+         */
+        boolean isCancelled() {
+            return mCancelled;
+        }
+    }
+
+    private final ArrayList<Task> mPending = new ArrayList<Task>();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final String mName;
+    private Thread mThread;
+    private long mNextSequence;
+
+    PageContentExecutor(String name) {
+        mName = name;
+    }
+
+    /**
+     * Queue the task.  Among pending tasks, the one with the lowest priority value runs first;
+     * tasks of equal priority run in the order they were submitted.
+     */
+    synchronized void execute(Task task, int priority) {
+        task.mPriority = priority;
+        task.mSequence = mNextSequence++;
+        task.mSubmittedNanos = System.nanoTime();
+        mPending.add(task);
+        if (mThread == null) {
+            mThread = new Thread(new Worker(), mName);
+            mThread.start();
+        } else {
+            notify();
+        }
+    }
+
+    /**
+     * Change the priority of a task that hasn't started yet.
+     */
+    synchronized void setPriority(Task task, int priority) {
+        task.mPriority = priority;
+    }
+
+    /**
+     * Cancel the task.  A pending task is dropped without running; a running one is left to
+     * notice {@link Task#isCancelled()}.
+     */
+    synchronized void cancel(Task task) {
+        if (!task.mCancelled) {
+            task.mCancelled = true;
+            sCancelled.increment();
+        }
+        mPending.remove(task);
+    }
+
+    private synchronized Task takeNext() throws InterruptedException {
+        while (mPending.isEmpty()) {
+            wait();
+        }
+        int best = 0;
+        for (int i = 1; i < mPending.size(); i++) {
+            final Task t = mPending.get(i);
+            final Task b = mPending.get(best);
+            if (t.mPriority < b.mPriority
+                    || (t.mPriority == b.mPriority && t.mSequence < b.mSequence)) {
+                best = i;
+            }
+        }
+        return mPending.remove(best);
+    }
+
+    private class Worker implements Runnable {
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND
+                    + Process.THREAD_PRIORITY_MORE_FAVORABLE);
+            while (true) {
+                final Task task;
+                try {
+                    task = takeNext();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                final long start = System.nanoTime();
+                try {
+                    task.doInBackground();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Page content task for page " + task.page + " failed", e);
+                    continue;
+                }
+                sGenerateTime.recordSince(start);
+                if (LauncherStats.TRACE) {
+                    Log.d(TAG, "page " + task.page + " generated in "
+                            + (System.nanoTime() - start) / 1000000 + "ms");
+                }
+                mHandler.post(new Runnable() {
+                    public void run() {
+                        if (!task.isCancelled()) {
+                            sLatency.recordSince(task.mSubmittedNanos);
+                        }
+                        task.onPostExecute();
+                    }
+                });
+            }
+        }
+    }
+}
@@ -90,7 +90,7 @@ public class PagedViewIcon extends TextView implements Checkable {
     public void applyFromApplicationInfo(ApplicationInfo info,
             HolographicOutlineHelper holoOutlineHelper) {
         mHolographicOutlineHelper = holoOutlineHelper;
-        mIcon = info.iconBitmap;
+        mIcon = info.getIconBitmap();
         setCompoundDrawablesWithIntrinsicBounds(null, new FastBitmapDrawable(mIcon), null, null);
         setText(info.title);
         setTag(info);
@@ -99,11 +99,17 @@ public class PagedViewWidget extends LinearLayout implements Checkable {
             final ImageView image = (ImageView) findViewById(R.id.widget_preview);
             if (image != null) {
                 FastBitmapDrawable preview = (FastBitmapDrawable) image.getDrawable();
+                image.setImageDrawable(null);
                 if (preview != null && preview.getBitmap() != null) {
-                    preview.getBitmap().recycle();
+                    ((LauncherApplication) getContext().getApplicationContext()).getBitmapPool()
+                            .release(preview.getBitmap());
                 }
-                image.setImageDrawable(null);
                 }
+            if (mHolographicOutline != null) {
+                ((LauncherApplication) getContext().getApplicationContext()).getBitmapPool()
+                        .release(mHolographicOutline);
+                mHolographicOutline = null;
+            }
         }
     }
 
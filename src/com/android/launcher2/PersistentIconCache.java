@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher2;
+
+import android.content.ComponentName;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.util.Locale;
+
+/**
+ * On-disk store of rasterised application icons and labels, so that a cold start does not
+ * have to go back to the PackageManager for every launcher activity.
+ *
+ * Rows are keyed by component, theme package and icon dpi, and are only considered valid
+ * while the lastUpdateTime and versionCode of both the owning package and the theme package
+ * (and the current locale, for the label) still match what was stored.
+ */
+class PersistentIconCache {
+    private static final String TAG = "Launcher.PersistentIconCache";
+    private static final boolean LOGD = false;
+
+    private static final String DATABASE_NAME = "app_icons.db";
+    private static final int DATABASE_VERSION = 2;
+
+    private static final String TABLE_ICONS = "icons";
+
+    private static final String COMPONENT = "componentName";
+    private static final String THEME_PACKAGE = "themePackage";
+    private static final String ICON_DPI = "iconDpi";
+    private static final String LAST_UPDATED = "lastUpdated";
+    private static final String VERSION = "version";
+    private static final String THEME_LAST_UPDATED = "themeLastUpdated";
+    private static final String THEME_VERSION = "themeVersion";
+    private static final String LOCALE = "locale";
+    private static final String ICON = "icon";
+    private static final String LABEL = "label";
+
+    private static final String[] QUERY_COLUMNS = new String[] {
+            LAST_UPDATED, VERSION, THEME_LAST_UPDATED, THEME_VERSION, LOCALE, ICON, LABEL };
+    private static final String QUERY_SELECTION =
+            COMPONENT + "=? AND " + THEME_PACKAGE + "=? AND " + ICON_DPI + "=?";
+
+    private final Context mContext;
+    private final DatabaseHelper mOpenHelper;
+
+    PersistentIconCache(Context context) {
+        mContext = context;
+        mOpenHelper = new DatabaseHelper(context);
+    }
+
+    /**
+     * Fills in the icon and title of the supplied entry from disk.
+     *
+     * @return true if a valid row was found, false if the caller needs to rebuild the entry.
+     */
+    boolean load(ComponentName componentName, PackageInfo packageInfo, PackageInfo themeInfo,
+            int iconDpi, IconCache.CacheEntry entry) {
+        Cursor c = null;
+        try {
+            final SQLiteDatabase db = mOpenHelper.getReadableDatabase();
+            c = db.query(TABLE_ICONS, QUERY_COLUMNS, QUERY_SELECTION,
+                    new String[] { componentName.flattenToString(), themeInfo.packageName,
+                            String.valueOf(iconDpi) }, null, null, null);
+            if (!c.moveToFirst()) {
+                return false;
+            }
+            if (c.getLong(0) != packageInfo.lastUpdateTime
+                    || c.getInt(1) != packageInfo.versionCode
+                    || c.getLong(2) != themeInfo.lastUpdateTime
+                    || c.getInt(3) != themeInfo.versionCode
+                    || !getLocale().equals(c.getString(4))) {
+                if (LOGD) Log.d(TAG, "stale icon for " + componentName);
+                return false;
+            }
+            final byte[] data = c.getBlob(5);
+            final Bitmap icon = data != null
+                    ? BitmapFactory.decodeByteArray(data, 0, data.length) : null;
+            if (icon == null) {
+                return false;
+            }
+            entry.icon = icon;
+            entry.title = c.getString(6);
+            return true;
+        } catch (SQLException e) {
+            Log.w(TAG, "Could not read icon for " + componentName, e);
+            return false;
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+    }
+
+    /**
+     * Writes the supplied entry to disk, replacing any previous row for the same key.
+     */
+    void store(ComponentName componentName, PackageInfo packageInfo, PackageInfo themeInfo,
+            int iconDpi, IconCache.CacheEntry entry) {
+        final byte[] data = ItemInfo.flattenBitmap(entry.icon);
+        if (data == null) {
+            return;
+        }
+        final ContentValues values = new ContentValues();
+        values.put(COMPONENT, componentName.flattenToString());
+        values.put(THEME_PACKAGE, themeInfo.packageName);
+        values.put(ICON_DPI, iconDpi);
+        values.put(LAST_UPDATED, packageInfo.lastUpdateTime);
+        values.put(VERSION, packageInfo.versionCode);
+        values.put(THEME_LAST_UPDATED, themeInfo.lastUpdateTime);
+        values.put(THEME_VERSION, themeInfo.versionCode);
+        values.put(LOCALE, getLocale());
+        values.put(ICON, data);
+        values.put(LABEL, entry.title);
+        try {
+            mOpenHelper.getWritableDatabase().replace(TABLE_ICONS, null, values);
+        } catch (SQLException e) {
+            Log.w(TAG, "Could not write icon for " + componentName, e);
+        }
+    }
+
+    /**
+     * Remove any rows for the supplied ComponentName, for every theme and density.
+     */
+    void remove(ComponentName componentName) {
+        try {
+            mOpenHelper.getWritableDatabase().delete(TABLE_ICONS, COMPONENT + "=?",
+                    new String[] { componentName.flattenToString() });
+        } catch (SQLException e) {
+            Log.w(TAG, "Could not remove icon for " + componentName, e);
+        }
+    }
+
+    /**
+     * Remove any rows belonging to the supplied package, either as the owner of the
+     * component or as the theme the icon was drawn with.
+     */
+    void removePackage(String packageName) {
+        try {
+            mOpenHelper.getWritableDatabase().delete(TABLE_ICONS,
+                    COMPONENT + " LIKE ? ESCAPE '\\' OR " + THEME_PACKAGE + "=?",
+                    new String[] { escapeLike(packageName) + "/%", packageName });
+        } catch (SQLException e) {
+            Log.w(TAG, "Could not remove icons for " + packageName, e);
+        }
+    }
+
+    /**
+     * Remove any rows drawn with the supplied theme package.
+     */
+    void removeTheme(String themePackage) {
+        try {
+            mOpenHelper.getWritableDatabase().delete(TABLE_ICONS, THEME_PACKAGE + "=?",
+                    new String[] { themePackage });
+        } catch (SQLException e) {
+            Log.w(TAG, "Could not remove icons for theme " + themePackage, e);
+        }
+    }
+
+    private static String escapeLike(String s) {
+        return s.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    private String getLocale() {
+        final Locale locale = mContext.getResources().getConfiguration().locale;
+        return locale != null ? locale.toString() : "";
+    }
+
+    private static class DatabaseHelper extends SQLiteOpenHelper {
+        DatabaseHelper(Context context) {
+            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            if (LOGD) Log.d(TAG, "creating new icon database");
+
+            db.execSQL("CREATE TABLE " + TABLE_ICONS + " (" +
+                    COMPONENT + " TEXT NOT NULL," +
+                    THEME_PACKAGE + " TEXT NOT NULL," +
+                    ICON_DPI + " INTEGER NOT NULL," +
+                    LAST_UPDATED + " INTEGER NOT NULL DEFAULT 0," +
+                    VERSION + " INTEGER NOT NULL DEFAULT 0," +
+                    THEME_LAST_UPDATED + " INTEGER NOT NULL DEFAULT 0," +
+                    THEME_VERSION + " INTEGER NOT NULL DEFAULT 0," +
+                    LOCALE + " TEXT," +
+                    ICON + " BLOB," +
+                    LABEL + " TEXT," +
+                    "PRIMARY KEY (" + COMPONENT + ", " + THEME_PACKAGE + ", " + ICON_DPI + ")" +
+                    ");");
+            db.execSQL("CREATE INDEX " + TABLE_ICONS + "_" + THEME_PACKAGE + " ON " +
+                    TABLE_ICONS + " (" + THEME_PACKAGE + ");");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            // This is only a cache, so there is nothing worth migrating.
+            Log.w(TAG, "Destroying all old icons.");
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_ICONS);
+            onCreate(db);
+        }
+    }
+}
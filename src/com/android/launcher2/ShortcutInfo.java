@@ -57,11 +57,6 @@ class ShortcutInfo extends ItemInfo {
      */
     Intent.ShortcutIconResource iconResource;
 
-    /**
-     * The application icon.
-     */
-    private Bitmap mIcon;
-
     ShortcutInfo() {
         itemType = LauncherSettings.BaseLauncherColumns.ITEM_TYPE_SHORTCUT;
     }
@@ -75,7 +70,10 @@ class ShortcutInfo extends ItemInfo {
             iconResource.packageName = info.iconResource.packageName;
             iconResource.resourceName = info.iconResource.resourceName;
         }
-        mIcon = info.mIcon; // TODO: should make a copy here.  maybe we don't need this ctor at all
+        final IconHandle icon = info.getIconHandle();
+        if (icon != null) {
+            setIcon(icon.retain());
+        }
         customIcon = info.customIcon;
     }
 
@@ -87,16 +85,21 @@ class ShortcutInfo extends ItemInfo {
         customIcon = false;
     }
 
+    /**
+     * Set an icon that is not shared with anything else.
+     */
     public void setIcon(Bitmap b) {
-        mIcon = b;
+        setIcon(IconHandle.wrap(b));
     }
 
     public Bitmap getIcon(IconCache iconCache) {
-        if (mIcon == null) {
-            mIcon = iconCache.getIcon(this.intent);
-            this.usingFallbackIcon = iconCache.isDefaultIcon(mIcon);
+        IconHandle icon = retainIcon();
+        if (icon == null) {
+            icon = iconCache.acquireIcon(this.intent);
+            setIcon(icon);
+            this.usingFallbackIcon = iconCache.isDefaultIcon(icon.getBitmap());
         }
-        return mIcon;
+        return icon.getBitmap();
     }
 
     /**
@@ -124,13 +127,15 @@ class ShortcutInfo extends ItemInfo {
         String uri = intent != null ? intent.toUri(0) : null;
         values.put(LauncherSettings.BaseLauncherColumns.INTENT, uri);
 
+        final IconHandle icon = getIconHandle();
+        final Bitmap bitmap = icon != null ? icon.getBitmap() : null;
         if (customIcon) {
             values.put(LauncherSettings.BaseLauncherColumns.ICON_TYPE,
                     LauncherSettings.BaseLauncherColumns.ICON_TYPE_BITMAP);
-            writeBitmap(values, mIcon);
+            writeBitmap(values, bitmap);
         } else {
             if (!usingFallbackIcon) {
-                writeBitmap(values, mIcon);
+                writeBitmap(values, bitmap);
             }
             values.put(LauncherSettings.BaseLauncherColumns.ICON_TYPE,
                     LauncherSettings.BaseLauncherColumns.ICON_TYPE_RESOURCE);
@@ -152,7 +157,7 @@ class ShortcutInfo extends ItemInfo {
             ArrayList<ShortcutInfo> list) {
         Log.d(tag, label + " size=" + list.size());
         for (ShortcutInfo info: list) {
-            Log.d(tag, "   title=\"" + info.title + " icon=" + info.mIcon
+            Log.d(tag, "   title=\"" + info.title + " icon=" + info.getIconHandle()
                     + " customIcon=" + info.customIcon);
         }
     }
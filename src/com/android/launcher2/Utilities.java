@@ -50,22 +50,87 @@ import com.android.launcher2.theme.ThemeSettings;
 public final class Utilities {
     private static final String TAG = "Launcher.Utilities";
 
-    private static int sIconWidth = -1;
-    private static int sIconHeight = -1;
-    private static int sIconTextureWidth = -1;
-    private static int sIconTextureHeight = -1;
-
-    private static final Paint sBlurPaint = new Paint();
-    private static final Paint sGlowColorPressedPaint = new Paint();
-    private static final Paint sGlowColorFocusedPaint = new Paint();
-    private static final Paint sDisabledPaint = new Paint();
-    private static final Rect sOldBounds = new Rect();
-    private static final Canvas sCanvas = new Canvas();
-
-    static {
-        sCanvas.setDrawFilter(new PaintFlagsDrawFilter(Paint.DITHER_FLAG,
-                Paint.FILTER_BITMAP_FLAG));
+    /**
+     * Icon size and background of the current theme.  A theme change publishes a new one, so
+     * the icons being drawn meanwhile on other threads each get one theme or the other.
+     */
+    private static final class IconTheme {
+        final int iconWidth;
+        final int iconHeight;
+        final int iconTextureWidth;
+        final int iconTextureHeight;
+        final boolean hasBackground;
+        final Drawable[] backgrounds;
+        final Drawable singleBackground;
+
+        IconTheme(int iconSize, boolean hasBackground, Drawable[] backgrounds,
+                Drawable singleBackground) {
+            iconWidth = iconHeight = iconSize;
+            iconTextureWidth = iconTextureHeight = iconSize;
+            this.hasBackground = hasBackground;
+            this.backgrounds = backgrounds;
+            this.singleBackground = singleBackground;
+        }
     }
+
+    private static volatile IconTheme sTheme;
+
+    private static float sDensity;
+
+    private static final Object sInitLock = new Object();
+
+    /**
+     * Drawing state used to rasterise icons.  Each thread gets its own, so that icons can be
+     * created on several threads at once without serialising on shared Canvas or Paint objects.
+     */
+    private static class IconCanvas {
+        final Canvas canvas = new Canvas();
+        final Rect oldBounds = new Rect();
+        final Paint blurPaint = new Paint();
+        final Paint glowColorPressedPaint = new Paint();
+        final Paint glowColorFocusedPaint = new Paint();
+        final Paint disabledPaint = new Paint();
+        private Drawable mBackgroundSource;
+        private Drawable mBackground;
+
+        IconCanvas() {
+            canvas.setDrawFilter(new PaintFlagsDrawFilter(Paint.DITHER_FLAG,
+                    Paint.FILTER_BITMAP_FLAG));
+
+            blurPaint.setMaskFilter(new BlurMaskFilter(5 * sDensity, BlurMaskFilter.Blur.NORMAL));
+            glowColorPressedPaint.setColor(0xffffc300);
+            glowColorPressedPaint.setMaskFilter(TableMaskFilter.CreateClipTable(0, 30));
+            glowColorFocusedPaint.setColor(0xffff8e00);
+            glowColorFocusedPaint.setMaskFilter(TableMaskFilter.CreateClipTable(0, 30));
+
+            ColorMatrix cm = new ColorMatrix();
+            cm.setSaturation(0.2f);
+            disabledPaint.setColorFilter(new ColorMatrixColorFilter(cm));
+            disabledPaint.setAlpha(0x88);
+        }
+
+        /**
+         * Returns this thread's copy of the theme's icon background, as drawing mutates bounds.
+         */
+        Drawable getBackground(IconTheme theme) {
+            final Drawable source = theme.singleBackground;
+            if (source != mBackgroundSource) {
+                mBackgroundSource = source;
+                final Drawable.ConstantState state =
+                        source != null ? source.getConstantState() : null;
+                mBackground = state != null ? state.newDrawable() : source;
+            }
+            return mBackground;
+        }
+    }
+
+    private static final ThreadLocal<IconCanvas> sIconCanvas = new ThreadLocal<IconCanvas>() {
+        @Override
+        protected IconCanvas initialValue() {
+            return new IconCanvas();
+        }
+    };
+
     static int sColors[] = { 0xffff0000, 0xff00ff00, 0xff0000ff };
     static int sColorIndex = 0;
 
@@ -75,10 +140,9 @@ public final class Utilities {
      * to the proper size (48dp)
      */
     public static Bitmap createIconBitmap(Bitmap icon, Context context) {
-    	
-    	Log.d(TAG, "createIconBitmap bitmap");
-        int textureWidth = sIconTextureWidth;
-        int textureHeight = sIconTextureHeight;
+        final IconTheme theme = ensureStatics(context);
+        int textureWidth = theme.iconTextureWidth;
+        int textureHeight = theme.iconTextureHeight;
         int sourceWidth = icon.getWidth();
         int sourceHeight = icon.getHeight();
         if (sourceWidth > textureWidth && sourceHeight > textureHeight) {
@@ -97,23 +161,16 @@ public final class Utilities {
     }
 
     
-    //Pekall LK
-    private static Drawable[] sBackgrounds;
-    private static Drawable sSingleBackground;
-    
     /**
      * Returns a bitmap suitable for the all apps view.
      */
     public static Bitmap createIconBitmap(Drawable icon, Context context) {
-        synchronized (sCanvas) { // we share the statics :-(
-            if (sIconWidth == -1) {
-                initStatics(context);
-            }
-
-            Log.d(TAG, "createIconBitmap drawable");
-            
-            int width = sIconWidth;
-            int height = sIconHeight;
+        final long start = System.nanoTime();
+        final IconTheme theme = ensureStatics(context);
+        final IconCanvas state = sIconCanvas.get();
+        try {
+            int width = theme.iconWidth;
+            int height = theme.iconHeight;
 
             if (icon instanceof PaintDrawable) {
                 PaintDrawable painter = (PaintDrawable) icon;
@@ -129,13 +186,16 @@ public final class Utilities {
             }
             int sourceWidth = icon.getIntrinsicWidth();
             int sourceHeight = icon.getIntrinsicHeight();
-            
-            Log.d(TAG, "sHasBackgraound:"+sHasBackgraound+" sBackgrounds:"+sBackgrounds+" width:"+width+" height:"+height+" sourceWidth:"+sourceWidth);
+
+            if (LauncherStats.TRACE) {
+                Log.d(TAG, "createIconBitmap hasBackground=" + theme.hasBackground + " size=" + width
+                        + "x" + height + " source=" + sourceWidth + "x" + sourceHeight);
+            }
 
             //Pekall LK
 			Drawable bg = null;
 			//if (sHasBackgraound && sBackgrounds != null && sBackgrounds.length > 0) {
-			if (sHasBackgraound && sSingleBackground != null) {
+			if (theme.hasBackground && theme.singleBackground != null) {
 	            //Pekall LK if app icon size is bigger than background , reset it
 	            if (sourceWidth>=width)
 	            	sourceWidth = (int)(width*(4f/5));
@@ -143,11 +203,9 @@ public final class Utilities {
 	            	sourceHeight =(int)(height*(4f/5));	
 	            // && (width > sourceWidth || height > sourceHeight)) {
 				//bg = sBackgrounds[sRandom.nextInt(sBackgrounds.length)];
-	            bg = sSingleBackground;
-				Log.d(TAG, "icon bg is not null");
+	            bg = state.getBackground(theme);
 			} else {
 				bg = null;
-				Log.d(TAG, "icon bg is null");
 			}
             
             if (sourceWidth > 0 && sourceHeight > 0) {
@@ -168,47 +226,52 @@ public final class Utilities {
             }
             
             // no intrinsic size --> use default size
-            int textureWidth = sIconTextureWidth;
-            int textureHeight = sIconTextureHeight;
+            int textureWidth = theme.iconTextureWidth;
+            int textureHeight = theme.iconTextureHeight;
 
             final Bitmap bitmap = Bitmap.createBitmap(textureWidth, textureHeight,
                     Bitmap.Config.ARGB_8888);
-            final Canvas canvas = sCanvas;
+            final Canvas canvas = state.canvas;
             canvas.setBitmap(bitmap);
 
             
 			if (bg != null) {
 				bg.setBounds(0, 0, textureWidth, textureHeight);
 				bg.draw(canvas);
-				Log.d(TAG, "icon bg is not null ,set bg it to canvas");
 			}  
             
             
             final int left = (textureWidth-width) / 2;
             final int top = (textureHeight-height) / 2;
 
-            sOldBounds.set(icon.getBounds());
+            state.oldBounds.set(icon.getBounds());
             icon.setBounds(left, top, left+width, top+height);
             icon.draw(canvas);
-            icon.setBounds(sOldBounds);
-            canvas.setBitmap(null);
+            icon.setBounds(state.oldBounds);
 
+            LauncherStats.ICONS_CREATED.increment();
+            LauncherStats.ICON_CREATE_TIME.recordSince(start);
             return bitmap;
+        } finally {
+            // Don't keep the last icon alive through this thread's canvas
+            state.canvas.setBitmap(null);
         }
     }
     
     
     //Pekall LK 
     public static Bitmap createAllAppButtonBitmap(Drawable icon, Context context) {
-        synchronized (sCanvas) {
+        final IconTheme theme = ensureStatics(context);
+        final IconCanvas state = sIconCanvas.get();
+        try {
             int width = 100;
             int height = 100;
             int textureWidth = 135;
             int textureHeight = 135;
 			Drawable bg = null;
 			//if (sHasBackgraound && sBackgrounds != null && sBackgrounds.length > 0) {
-			if (sHasBackgraound && sSingleBackground != null) {
-				bg = sSingleBackground;
+			if (theme.hasBackground && theme.singleBackground != null) {
+				bg = state.getBackground(theme);
 			} else {
 				bg = null;
 				return null;
@@ -216,24 +279,24 @@ public final class Utilities {
 
             final Bitmap bitmap = Bitmap.createBitmap(textureWidth, textureHeight,
                     Bitmap.Config.ARGB_8888);
-            final Canvas canvas = sCanvas;
+            final Canvas canvas = state.canvas;
             canvas.setBitmap(bitmap);
             
 			if (bg != null) {
 				bg.setBounds(0, 0, textureWidth, textureHeight);
 				bg.draw(canvas);
-				Log.d(TAG, "icon bg is not null ,set bg it to canvas");
 			}  
             
             final int left = (textureWidth-width) / 2;
             final int top = (textureHeight-height) / 2;
 
-            sOldBounds.set(icon.getBounds());
+            state.oldBounds.set(icon.getBounds());
             icon.setBounds(left, top, left+width, top+height);
             icon.draw(canvas);
-            icon.setBounds(sOldBounds);
-            canvas.setBitmap(null);
+            icon.setBounds(state.oldBounds);
             return bitmap;
+        } finally {
+            state.canvas.setBitmap(null);
         }
     }
     
@@ -250,100 +313,128 @@ public final class Utilities {
      *         thumbnail could not be created.
      */
     static Bitmap resampleIconBitmap(Bitmap bitmap, Context context) {
-        synchronized (sCanvas) { // we share the statics :-(
-            if (sIconWidth == -1) {
-                initStatics(context);
-            }
+        final IconTheme theme = ensureStatics(context);
 
-            if (bitmap.getWidth() == sIconWidth && bitmap.getHeight() == sIconHeight) {
-                return bitmap;
-            } else {
-                return createIconBitmap(new BitmapDrawable(bitmap), context);
-            }
+        if (bitmap.getWidth() == theme.iconWidth && bitmap.getHeight() == theme.iconHeight) {
+            return bitmap;
+        } else {
+            return createIconBitmap(new BitmapDrawable(bitmap), context);
         }
     }
 
     static Bitmap drawDisabledBitmap(Bitmap bitmap, Context context) {
-        synchronized (sCanvas) { // we share the statics :-(
-            if (sIconWidth == -1) {
-                initStatics(context);
-            }
+        ensureStatics(context);
+        final IconCanvas state = sIconCanvas.get();
+        try {
             final Bitmap disabled = Bitmap.createBitmap(bitmap.getWidth(), bitmap.getHeight(),
                     Bitmap.Config.ARGB_8888);
-            final Canvas canvas = sCanvas;
+            final Canvas canvas = state.canvas;
             canvas.setBitmap(disabled);
             
-            canvas.drawBitmap(bitmap, 0.0f, 0.0f, sDisabledPaint);
-
-            canvas.setBitmap(null);
+            canvas.drawBitmap(bitmap, 0.0f, 0.0f, state.disabledPaint);
 
             return disabled;
+        } finally {
+            state.canvas.setBitmap(null);
         }
     }
 
     //Pekall LK
-	private static boolean sHasBackgraound = true;
 	private static Random sRandom;
     
-    private static void initStatics(Context context) {
+    private static IconTheme ensureStatics(Context context) {
+        IconTheme theme = sTheme;
+        if (theme == null) {
+            synchronized (sInitLock) {
+                theme = sTheme;
+                if (theme == null) {
+                    theme = initStatics(context);
+                }
+            }
+        }
+        return theme;
+    }
+
+    /**
+     * Load the icon size and background of the current theme and publish them.  Callers hold
+     * sInitLock.
+     */
+    private static IconTheme initStatics(Context context) {
         final Resources resources = context.getResources();
         final DisplayMetrics metrics = resources.getDisplayMetrics();
         final float density = metrics.density;
 
+        // The per-thread paints are built from this, so it must be set before any IconCanvas
+        sDensity = density;
+
         //Pekall LK
-		sHasBackgraound = ThemeSettings.getBoolean(context,
+		final boolean hasBackground = ThemeSettings.getBoolean(context,
 				R.bool.config_icon_has_background);
-		sBackgrounds = loadIconBackground(context);
-		sSingleBackground = loadSingleIconBackground(context);
+		final Drawable[] backgrounds = loadIconBackground(context);
+		final Drawable singleBackground = loadSingleIconBackground(context);
 		sRandom = new Random();
 		
-        sIconWidth = sIconHeight = (int) (resources.getDimension(R.dimen.app_icon_size)*(sHasBackgraound?(5f / 4):1));
-        
-        sIconTextureWidth = sIconTextureHeight = sIconWidth;
-
-        sBlurPaint.setMaskFilter(new BlurMaskFilter(5 * density, BlurMaskFilter.Blur.NORMAL));
-        sGlowColorPressedPaint.setColor(0xffffc300);
-        sGlowColorPressedPaint.setMaskFilter(TableMaskFilter.CreateClipTable(0, 30));
-        sGlowColorFocusedPaint.setColor(0xffff8e00);
-        sGlowColorFocusedPaint.setMaskFilter(TableMaskFilter.CreateClipTable(0, 30));
-
-        ColorMatrix cm = new ColorMatrix();
-        cm.setSaturation(0.2f);
-        sDisabledPaint.setColorFilter(new ColorMatrixColorFilter(cm));
-        sDisabledPaint.setAlpha(0x88);
+        final int iconSize = (int) (resources.getDimension(R.dimen.app_icon_size)*(hasBackground?(5f / 4):1));
+
+        final IconTheme theme =
+                new IconTheme(iconSize, hasBackground, backgrounds, singleBackground);
+        sTheme = theme;
+        return theme;
+    }
+
+    /**
+     * Load the icon background of the current theme.  Returns false if the theme also changes
+     * the icon size, in which case icons made before can't be reused.
+     *
+     * Icons being drawn on other threads meanwhile keep the theme they started with, so callers
+     * that need every icon in the new theme must build them after this returns.
+     */
+    static boolean reloadThemeBackground(Context context) {
+        synchronized (sInitLock) {
+            final IconTheme oldTheme = sTheme;
+            final IconTheme theme = initStatics(context);
+            return oldTheme == null || oldTheme.iconWidth == theme.iconWidth;
+        }
+    }
+
+    /**
+     * Whether icons are drawn on the theme's icon background.
+     */
+    static boolean hasIconBackground() {
+        final IconTheme theme = sTheme;
+        return theme != null && theme.hasBackground;
     }
     
 	public static void drawSelectedAllAppsBitmap(Canvas dest, int scrollX,
 			int scrollY, int destWidth, int destHeight, int paddingLeft,
 			int paddingTop, boolean pressed, Bitmap src) {
-		synchronized (sCanvas) { // we share the statics :-(
-			if (sIconWidth == -1) {
-				// We can't have gotten to here without src being initialized,
-				// which
-				// comes from this file already. So just assert.
-				// initStatics(context);
-				throw new RuntimeException(
-						"Assertion failed: Utilities not initialized");
-			}
+		if (sTheme == null) {
+			// We can't have gotten to here without src being initialized,
+			// which
+			// comes from this file already. So just assert.
+			// initStatics(context);
+			throw new RuntimeException(
+					"Assertion failed: Utilities not initialized");
+		}
+		final IconCanvas state = sIconCanvas.get();
 
-			int[] xy = new int[2];
-			Bitmap mask = src.extractAlpha(sBlurPaint, xy);
+		int[] xy = new int[2];
+		Bitmap mask = src.extractAlpha(state.blurPaint, xy);
 
-			float px = (destWidth - mask.getWidth()) / 2;
-			float py = paddingTop - (mask.getHeight() - src.getHeight()) / 2;
+		float px = (destWidth - mask.getWidth()) / 2;
+		float py = paddingTop - (mask.getHeight() - src.getHeight()) / 2;
 
-			if ((scrollX | scrollY) == 0) {
-				dest.drawBitmap(mask, px, py, pressed ? sGlowColorPressedPaint
-						: sGlowColorFocusedPaint);
-			} else {
-				dest.translate(scrollX, scrollY);
-				dest.drawBitmap(mask, px, py, pressed ? sGlowColorPressedPaint
-						: sGlowColorFocusedPaint);
-				dest.translate(-scrollX, -scrollY);
-			}
-
-			mask.recycle();
+		final Paint glowPaint = pressed ? state.glowColorPressedPaint
+				: state.glowColorFocusedPaint;
+		if ((scrollX | scrollY) == 0) {
+			dest.drawBitmap(mask, px, py, glowPaint);
+		} else {
+			dest.translate(scrollX, scrollY);
+			dest.drawBitmap(mask, px, py, glowPaint);
+			dest.translate(-scrollX, -scrollY);
 		}
+
+		mask.recycle();
 	}
 	
 	public static void setContrastTranslateOnly(ColorMatrix cm, float contrast) {
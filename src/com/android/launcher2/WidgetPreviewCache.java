@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher2;
+
+import android.content.ComponentName;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import com.android.launcher2.theme.ThemeSettings;
+
+/**
+ * On-disk store of rendered widget and shortcut previews, so that the widgets tab can be
+ * filled in without loading other packages' resources.
+ *
+ * Rows are keyed by provider, cell spans, target size and theme package, and are only
+ * considered valid while the provider package's lastUpdateTime and versionCode still match
+ * what was stored.  Safe to use from any thread.
+ */
+class WidgetPreviewCache {
+    private static final String TAG = "Launcher.WidgetPreviewCache";
+    private static final boolean LOGD = false;
+
+    private static final String DATABASE_NAME = "widget_previews.db";
+    private static final int DATABASE_VERSION = 1;
+
+    private static final String TABLE_PREVIEWS = "previews";
+
+    private static final String COMPONENT = "componentName";
+    private static final String SPAN_X = "spanX";
+    private static final String SPAN_Y = "spanY";
+    private static final String WIDTH = "width";
+    private static final String HEIGHT = "height";
+    private static final String THEME_PACKAGE = "themePackage";
+    private static final String LAST_UPDATED = "lastUpdated";
+    private static final String VERSION = "version";
+    private static final String PREVIEW = "preview";
+
+    private static final String[] QUERY_COLUMNS = new String[] {
+            LAST_UPDATED, VERSION, PREVIEW };
+    private static final String QUERY_SELECTION =
+            COMPONENT + "=? AND " + SPAN_X + "=? AND " + SPAN_Y + "=? AND " + WIDTH + "=? AND "
+            + HEIGHT + "=? AND " + THEME_PACKAGE + "=?";
+
+    private final PackageManager mPackageManager;
+    private final DatabaseHelper mOpenHelper;
+
+    WidgetPreviewCache(Context context) {
+        mPackageManager = context.getPackageManager();
+        mOpenHelper = new DatabaseHelper(context);
+    }
+
+    /**
+     * Returns the stored preview, or null if there is none or it is out of date.
+     *
+     * @param width the largest width the preview may have
+     * @param height the largest height the preview may have
+     */
+    Bitmap load(ComponentName provider, int spanX, int spanY, int width, int height) {
+        final PackageInfo packageInfo = getPackageInfo(provider);
+        if (packageInfo == null) {
+            return null;
+        }
+        Cursor c = null;
+        try {
+            final SQLiteDatabase db = mOpenHelper.getReadableDatabase();
+            c = db.query(TABLE_PREVIEWS, QUERY_COLUMNS, QUERY_SELECTION,
+                    getSelectionArgs(provider, spanX, spanY, width, height), null, null, null);
+            if (!c.moveToFirst()) {
+                return null;
+            }
+            if (c.getLong(0) != packageInfo.lastUpdateTime
+                    || c.getInt(1) != packageInfo.versionCode) {
+                if (LOGD) Log.d(TAG, "stale preview for " + provider);
+                return null;
+            }
+            final byte[] data = c.getBlob(2);
+            if (data == null) {
+                return null;
+            }
+            // Decode as mutable so that the bitmap can go back to the BitmapPool when the
+            // preview is dropped
+            final BitmapFactory.Options opts = new BitmapFactory.Options();
+            opts.inMutable = true;
+            return BitmapFactory.decodeByteArray(data, 0, data.length, opts);
+        } catch (SQLException e) {
+            Log.w(TAG, "Could not read preview for " + provider, e);
+            return null;
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+    }
+
+    /**
+     * Writes the supplied preview to disk, replacing any previous row for the same key.
+     */
+    void store(ComponentName provider, int spanX, int spanY, int width, int height,
+            Bitmap preview) {
+        final PackageInfo packageInfo = getPackageInfo(provider);
+        if (packageInfo == null) {
+            return;
+        }
+        final byte[] data = ItemInfo.flattenBitmap(preview);
+        if (data == null) {
+            return;
+        }
+        final ContentValues values = new ContentValues();
+        values.put(COMPONENT, provider.flattenToString());
+        values.put(SPAN_X, spanX);
+        values.put(SPAN_Y, spanY);
+        values.put(WIDTH, width);
+        values.put(HEIGHT, height);
+        values.put(THEME_PACKAGE, ThemeSettings.getCurrentThemePackage());
+        values.put(LAST_UPDATED, packageInfo.lastUpdateTime);
+        values.put(VERSION, packageInfo.versionCode);
+        values.put(PREVIEW, data);
+        try {
+            mOpenHelper.getWritableDatabase().replace(TABLE_PREVIEWS, null, values);
+        } catch (SQLException e) {
+            Log.w(TAG, "Could not write preview for " + provider, e);
+        }
+    }
+
+    /**
+     * Remove any rows belonging to the supplied package.
+     */
+    void removePackage(String packageName) {
+        try {
+            mOpenHelper.getWritableDatabase().delete(TABLE_PREVIEWS, COMPONENT + " LIKE ?",
+                    new String[] { packageName + "/%" });
+        } catch (SQLException e) {
+            Log.w(TAG, "Could not remove previews for " + packageName, e);
+        }
+    }
+
+    private PackageInfo getPackageInfo(ComponentName provider) {
+        try {
+            return mPackageManager.getPackageInfo(provider.getPackageName(), 0);
+        } catch (PackageManager.NameNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static String[] getSelectionArgs(ComponentName provider, int spanX, int spanY,
+            int width, int height) {
+        return new String[] { provider.flattenToString(), String.valueOf(spanX),
+                String.valueOf(spanY), String.valueOf(width), String.valueOf(height),
+                ThemeSettings.getCurrentThemePackage() };
+    }
+
+    private static class DatabaseHelper extends SQLiteOpenHelper {
+        DatabaseHelper(Context context) {
+            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            if (LOGD) Log.d(TAG, "creating new widget preview database");
+
+            db.execSQL("CREATE TABLE " + TABLE_PREVIEWS + " (" +
+                    COMPONENT + " TEXT NOT NULL," +
+                    SPAN_X + " INTEGER NOT NULL," +
+                    SPAN_Y + " INTEGER NOT NULL," +
+                    WIDTH + " INTEGER NOT NULL," +
+                    HEIGHT + " INTEGER NOT NULL," +
+                    THEME_PACKAGE + " TEXT NOT NULL," +
+                    LAST_UPDATED + " INTEGER NOT NULL DEFAULT 0," +
+                    VERSION + " INTEGER NOT NULL DEFAULT 0," +
+                    PREVIEW + " BLOB," +
+                    "PRIMARY KEY (" + COMPONENT + ", " + SPAN_X + ", " + SPAN_Y + ", " +
+                    WIDTH + ", " + HEIGHT + ", " + THEME_PACKAGE + ")" +
+                    ");");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            // This is only a cache, so there is nothing worth migrating.
+            Log.w(TAG, "Destroying all old widget previews.");
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_PREVIEWS);
+            onCreate(db);
+        }
+    }
+}
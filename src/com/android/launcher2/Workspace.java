@@ -3808,37 +3808,107 @@ public class Workspace extends PagedView
         }
     }
 
+    /**
+     * Removes the views of the given items from the workspace and hotseat, without touching
+     * the database.  Unlike {@link #removeItems} this happens straight away, so that items
+     * bound afterwards can take their place.
+     */
+    void removeItemViews(HashSet<ItemInfo> items) {
+        ArrayList<CellLayout> cellLayouts = getWorkspaceAndHotseatCellLayouts();
+        for (CellLayout layoutParent: cellLayouts) {
+            final ViewGroup layout = layoutParent.getChildrenLayout();
+            final ArrayList<View> childrenToRemove = new ArrayList<View>();
+
+            int childCount = layout.getChildCount();
+            for (int j = 0; j < childCount; j++) {
+                final View view = layout.getChildAt(j);
+                if (items.contains(view.getTag())) {
+                    childrenToRemove.add(view);
+                }
+            }
+
+            childCount = childrenToRemove.size();
+            for (int j = 0; j < childCount; j++) {
+                View child = childrenToRemove.get(j);
+                layoutParent.removeViewInLayout(child);
+                if (child instanceof DropTarget) {
+                    mDragController.removeDropTarget((DropTarget)child);
+                }
+                if (child.getTag() instanceof LauncherAppWidgetInfo) {
+                    mLauncher.removeAppWidget((LauncherAppWidgetInfo) child.getTag());
+                }
+            }
+
+            if (childCount > 0) {
+                layout.requestLayout();
+                layout.invalidate();
+            }
+        }
+    }
+
     void updateShortcuts(ArrayList<ApplicationInfo> apps) {
+        final HashSet<ComponentName> components = new HashSet<ComponentName>(apps.size());
+        for (ApplicationInfo app : apps) {
+            components.add(app.componentName);
+        }
+        updateShortcuts(components);
+    }
+
+    /**
+     * Give the application shortcuts to any of the components, including those in folders,
+     * the icons that are now in the icon cache.
+     */
+    void updateShortcuts(HashSet<ComponentName> components) {
         ArrayList<CellLayoutChildren> childrenLayouts = getWorkspaceAndHotseatCellLayoutChildren();
         for (CellLayoutChildren layout: childrenLayouts) {
             int childCount = layout.getChildCount();
             for (int j = 0; j < childCount; j++) {
                 final View view = layout.getChildAt(j);
-                Object tag = view.getTag();
-                if (tag instanceof ShortcutInfo) {
-                    ShortcutInfo info = (ShortcutInfo)tag;
-                    // We need to check for ACTION_MAIN otherwise getComponent() might
-                    // return null for some shortcuts (for instance, for shortcuts to
-                    // web pages.)
-                    final Intent intent = info.intent;
-                    final ComponentName name = intent.getComponent();
-                    if (info.itemType == LauncherSettings.Favorites.ITEM_TYPE_APPLICATION &&
-                            Intent.ACTION_MAIN.equals(intent.getAction()) && name != null) {
-                        final int appCount = apps.size();
-                        for (ApplicationInfo app : apps) {
-                            if (app.componentName.equals(name)) {
-                                info.setIcon(mIconCache.getIcon(info.intent));
-                                ((TextView) view).setCompoundDrawablesWithIntrinsicBounds(null,
-                                        new FastBitmapDrawable(info.getIcon(mIconCache)),
-                                        null, null);
-                            }
-                        }
+                if (view instanceof FolderIcon && ((FolderIcon) view).mFolder != null) {
+                    // Folder contents show the same icons, and the folder icon previews them
+                    final FolderIcon folderIcon = (FolderIcon) view;
+                    boolean updated = false;
+                    for (View item : folderIcon.mFolder.getItemsInReadingOrder()) {
+                        updated |= updateShortcut(item, components);
                     }
+                    if (updated) {
+                        folderIcon.invalidate();
+                    }
+                } else {
+                    updateShortcut(view, components);
                 }
             }
         }
     }
 
+    /**
+     * Give the view a new icon from the cache if it is an application shortcut to one of the
+     * components.
+     *
+     * @return whether the view was updated
+     */
+    private boolean updateShortcut(View view, HashSet<ComponentName> components) {
+        Object tag = view.getTag();
+        if (tag instanceof ShortcutInfo) {
+            ShortcutInfo info = (ShortcutInfo)tag;
+            // We need to check for ACTION_MAIN otherwise getComponent() might
+            // return null for some shortcuts (for instance, for shortcuts to
+            // web pages.)
+            final Intent intent = info.intent;
+            final ComponentName name = intent.getComponent();
+            if (info.itemType == LauncherSettings.Favorites.ITEM_TYPE_APPLICATION &&
+                    Intent.ACTION_MAIN.equals(intent.getAction()) && name != null
+                    && components.contains(name)) {
+                info.setIcon(mIconCache.acquireIcon(info.intent));
+                ((TextView) view).setCompoundDrawablesWithIntrinsicBounds(null,
+                        new FastBitmapDrawable(info.getIcon(mIconCache)),
+                        null, null);
+                return true;
+            }
+        }
+        return false;
+    }
+
     void moveToDefaultScreen(boolean animate) {
         if (!isSmall()) {
             if (animate) {
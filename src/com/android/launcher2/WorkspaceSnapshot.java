@@ -0,0 +1,482 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher2;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.PackageManager.NameNotFoundException;
+import android.content.pm.ResolveInfo;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import com.android.launcher2.theme.ThemeSettings;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URISyntaxException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compact binary copy of the workspace model, written after the workspace has been loaded
+ * and bound so that the next cold start can bind it without going through the provider,
+ * parsing every row or decoding every icon.
+ *
+ * Applications get their icon from the {@link IconCache}, so that it is shared with the rest
+ * of the launcher.  Other icons, and those of applications that can't be resolved, are stored
+ * as raw pixels and copied straight out of the memory-mapped file.  The snapshot is only a
+ * hint; LoaderTask checks it against the database once it has been bound.
+ * Only touch this on the worker thread.
+ */
+class WorkspaceSnapshot {
+    private static final String TAG = "Launcher.WorkspaceSnapshot";
+    private static final boolean LOGD = false;
+
+    private static final String FILE_NAME = "workspace.snapshot";
+
+    private static final int MAGIC = 0x4c575353; // LWSS
+    private static final int VERSION = 2;
+
+    private static final int FLAG_CUSTOM_ICON = 1;
+    private static final int FLAG_FALLBACK_ICON = 1 << 1;
+    private static final int FLAG_ICON_RESOURCE = 1 << 2;
+    private static final int FLAG_ICON = 1 << 3;
+
+    private final Context mContext;
+    private final File mFile;
+
+    /** lastUpdateTime of the packages of the applications in the last snapshot read. */
+    private final HashMap<String, Long> mPackages = new HashMap<String, Long>();
+
+    WorkspaceSnapshot(Context context) {
+        mContext = context;
+        mFile = new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    /**
+     * Reads the snapshot.  Folders are returned ahead of their contents.  The items hold
+     * references on their icons, which are released when they are unbound.
+     *
+     * @return the items in the snapshot, or null if there isn't one or it was written for a
+     *         different grid, density, locale, theme or version of the theme.
+     */
+    ArrayList<ItemInfo> read(int cellCountX, int cellCountY, IconCache iconCache) {
+        mPackages.clear();
+        if (!mFile.exists()) {
+            return null;
+        }
+
+        final PackageInfo themeInfo = getThemePackageInfo();
+        FileInputStream in = null;
+        ArrayList<ItemInfo> items = null;
+        try {
+            in = new FileInputStream(mFile);
+            final FileChannel channel = in.getChannel();
+            final MappedByteBuffer buf =
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION
+                    || buf.getInt() != cellCountX || buf.getInt() != cellCountY
+                    || buf.getInt() != getDensity()
+                    || !getLocale().equals(readString(buf))
+                    || !getThemePackage().equals(readString(buf))
+                    || buf.getInt() != (themeInfo != null ? themeInfo.versionCode : -1)
+                    || buf.getLong() != (themeInfo != null ? themeInfo.lastUpdateTime : -1)) {
+                if (LOGD) Log.d(TAG, "snapshot does not match the current configuration");
+                return null;
+            }
+
+            int count = buf.getInt();
+            for (int i = 0; i < count; i++) {
+                final String packageName = readString(buf);
+                mPackages.put(packageName, buf.getLong());
+            }
+
+            count = buf.getInt();
+            items = new ArrayList<ItemInfo>(count);
+            for (int i = 0; i < count; i++) {
+                items.add(readItem(buf, iconCache));
+            }
+            return items;
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read workspace snapshot", e);
+        } catch (BufferUnderflowException e) {
+            Log.w(TAG, "Truncated workspace snapshot", e);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Corrupt workspace snapshot", e);
+        } catch (URISyntaxException e) {
+            Log.w(TAG, "Corrupt workspace snapshot", e);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+        }
+        if (items != null) {
+            for (ItemInfo item : items) {
+                item.unbind();
+            }
+        }
+        delete();
+        return null;
+    }
+
+    /**
+     * @return true if none of the applications in the last snapshot read have been updated,
+     *         or uninstalled, since it was written.
+     */
+    boolean packagesUpToDate(PackageManager packageManager) {
+        for (Map.Entry<String, Long> entry : mPackages.entrySet()) {
+            try {
+                if (packageManager.getPackageInfo(entry.getKey(), 0).lastUpdateTime
+                        != entry.getValue()) {
+                    return false;
+                }
+            } catch (NameNotFoundException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the snapshot with the supplied items.  The file is written in full before
+     * being moved into place, so a reader never sees a partially written snapshot.
+     */
+    void write(Collection<ItemInfo> items, IconCache iconCache, int cellCountX,
+            int cellCountY) {
+        final long t = LOGD ? System.currentTimeMillis() : 0;
+        final PackageManager packageManager = mContext.getPackageManager();
+
+        // Folders go first so that their contents can be added to them as they are read
+        final ArrayList<ItemInfo> sorted = new ArrayList<ItemInfo>(items.size());
+        for (ItemInfo item : items) {
+            if (item.itemType == LauncherSettings.Favorites.ITEM_TYPE_FOLDER) {
+                sorted.add(item);
+            }
+        }
+        final HashMap<String, Long> packages = new HashMap<String, Long>();
+        for (ItemInfo item : items) {
+            if (item.itemType == LauncherSettings.Favorites.ITEM_TYPE_FOLDER) {
+                continue;
+            }
+            if (item.itemType == LauncherSettings.Favorites.ITEM_TYPE_APPLICATION) {
+                final ComponentName component = ((ShortcutInfo) item).intent.getComponent();
+                if (component == null) {
+                    continue;
+                }
+                final String packageName = component.getPackageName();
+                if (!packages.containsKey(packageName)) {
+                    try {
+                        packages.put(packageName,
+                                packageManager.getPackageInfo(packageName, 0).lastUpdateTime);
+                    } catch (NameNotFoundException e) {
+                        // The loader would drop this item, so don't snapshot it
+                        continue;
+                    }
+                }
+            }
+            sorted.add(item);
+        }
+
+        final File tmp = new File(mFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(cellCountX);
+            out.writeInt(cellCountY);
+            out.writeInt(getDensity());
+            writeString(out, getLocale());
+            writeString(out, getThemePackage());
+            final PackageInfo themeInfo = getThemePackageInfo();
+            out.writeInt(themeInfo != null ? themeInfo.versionCode : -1);
+            out.writeLong(themeInfo != null ? themeInfo.lastUpdateTime : -1);
+
+            out.writeInt(packages.size());
+            for (Map.Entry<String, Long> entry : packages.entrySet()) {
+                writeString(out, entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+
+            out.writeInt(sorted.size());
+            for (ItemInfo item : sorted) {
+                writeItem(out, item, iconCache);
+            }
+            out.close();
+            out = null;
+
+            if (!tmp.renameTo(mFile)) {
+                Log.w(TAG, "Could not replace workspace snapshot");
+                tmp.delete();
+            } else if (LOGD) {
+                Log.d(TAG, "wrote " + sorted.size() + " items in "
+                        + (System.currentTimeMillis() - t) + "ms");
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write workspace snapshot", e);
+            tmp.delete();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+    void delete() {
+        if (mFile.exists() && !mFile.delete()) {
+            Log.w(TAG, "Could not delete workspace snapshot");
+        }
+    }
+
+    private ItemInfo readItem(ByteBuffer buf, IconCache iconCache) throws URISyntaxException {
+        final ItemInfo item;
+        final int itemType = buf.getInt();
+        switch (itemType) {
+            case LauncherSettings.Favorites.ITEM_TYPE_APPLICATION:
+            case LauncherSettings.Favorites.ITEM_TYPE_SHORTCUT:
+                final ShortcutInfo info = new ShortcutInfo();
+                info.title = readString(buf);
+                info.intent = Intent.parseUri(readString(buf), 0);
+                final int flags = buf.getInt();
+                info.customIcon = (flags & FLAG_CUSTOM_ICON) != 0;
+                info.usingFallbackIcon = (flags & FLAG_FALLBACK_ICON) != 0;
+                if ((flags & FLAG_ICON_RESOURCE) != 0) {
+                    info.iconResource = new Intent.ShortcutIconResource();
+                    info.iconResource.packageName = readString(buf);
+                    info.iconResource.resourceName = readString(buf);
+                }
+                final IconHandle cachedIcon =
+                        itemType == LauncherSettings.Favorites.ITEM_TYPE_APPLICATION
+                                ? acquireCachedIcon(info.intent, iconCache) : null;
+                if (cachedIcon != null) {
+                    info.setIcon(cachedIcon);
+                    info.usingFallbackIcon = false;
+                    if ((flags & FLAG_ICON) != 0) {
+                        skipBitmap(buf);
+                    }
+                } else if ((flags & FLAG_ICON) != 0) {
+                    final Bitmap icon = readBitmap(buf);
+                    if (icon == null) {
+                        throw new IllegalArgumentException("Corrupt icon for " + info.title);
+                    }
+                    info.setIcon(icon);
+                }
+                item = info;
+                break;
+            case LauncherSettings.Favorites.ITEM_TYPE_FOLDER:
+                final FolderInfo folderInfo = new FolderInfo();
+                folderInfo.title = readString(buf);
+                item = folderInfo;
+                break;
+            case LauncherSettings.Favorites.ITEM_TYPE_APPWIDGET:
+                item = new LauncherAppWidgetInfo(buf.getInt());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown item type " + itemType);
+        }
+        item.itemType = itemType;
+        item.id = buf.getLong();
+        item.container = buf.getLong();
+        item.screen = buf.getInt();
+        item.cellX = buf.getInt();
+        item.cellY = buf.getInt();
+        item.spanX = buf.getInt();
+        item.spanY = buf.getInt();
+        return item;
+    }
+
+    private static void writeItem(DataOutputStream out, ItemInfo item, IconCache iconCache)
+            throws IOException {
+        out.writeInt(item.itemType);
+        switch (item.itemType) {
+            case LauncherSettings.Favorites.ITEM_TYPE_APPLICATION:
+            case LauncherSettings.Favorites.ITEM_TYPE_SHORTCUT:
+                final ShortcutInfo info = (ShortcutInfo) item;
+                final Bitmap icon;
+                final boolean fallback;
+                if (item.itemType == LauncherSettings.Favorites.ITEM_TYPE_APPLICATION) {
+                    // The icon cache is kept up to date with package changes, the item may not be
+                    icon = iconCache.getIcon(info.intent);
+                    fallback = iconCache.isDefaultIcon(icon);
+                } else {
+                    icon = info.getIcon(iconCache);
+                    fallback = info.usingFallbackIcon;
+                }
+                int flags = 0;
+                if (info.customIcon) flags |= FLAG_CUSTOM_ICON;
+                if (fallback) flags |= FLAG_FALLBACK_ICON;
+                if (info.iconResource != null) flags |= FLAG_ICON_RESOURCE;
+                if (icon != null) flags |= FLAG_ICON;
+
+                writeString(out, info.title != null ? info.title.toString() : null);
+                writeString(out, info.intent.toUri(0));
+                out.writeInt(flags);
+                if (info.iconResource != null) {
+                    writeString(out, info.iconResource.packageName);
+                    writeString(out, info.iconResource.resourceName);
+                }
+                if (icon != null) {
+                    writeBitmap(out, icon);
+                }
+                break;
+            case LauncherSettings.Favorites.ITEM_TYPE_FOLDER:
+                final FolderInfo folderInfo = (FolderInfo) item;
+                writeString(out, folderInfo.title != null ? folderInfo.title.toString() : null);
+                break;
+            case LauncherSettings.Favorites.ITEM_TYPE_APPWIDGET:
+                out.writeInt(((LauncherAppWidgetInfo) item).appWidgetId);
+                break;
+        }
+        out.writeLong(item.id);
+        out.writeLong(item.container);
+        out.writeInt(item.screen);
+        out.writeInt(item.cellX);
+        out.writeInt(item.cellY);
+        out.writeInt(item.spanX);
+        out.writeInt(item.spanY);
+    }
+
+    /**
+     * Returns a retained handle on the cached icon of the application the intent starts, or
+     * null if it can't be resolved.
+     */
+    private IconHandle acquireCachedIcon(Intent intent, IconCache iconCache) {
+        final ComponentName component = intent.getComponent();
+        if (component == null) {
+            return null;
+        }
+        final ResolveInfo resolveInfo = mContext.getPackageManager().resolveActivity(intent, 0);
+        return iconCache.acquireIcon(component, resolveInfo, null);
+    }
+
+    private static void skipBitmap(ByteBuffer buf) {
+        buf.getInt();
+        buf.getInt();
+        final int length = buf.getInt();
+        if (length < 0 || length > buf.remaining()) {
+            throw new IllegalArgumentException("Bad icon length " + length);
+        }
+        buf.position(buf.position() + length);
+    }
+
+    /**
+     * @return the bitmap, or null if the stored pixels don't describe one.
+     */
+    private static Bitmap readBitmap(ByteBuffer buf) {
+        final int width = buf.getInt();
+        final int height = buf.getInt();
+        final int length = buf.getInt();
+        try {
+            final ByteBuffer pixels = buf.slice();
+            pixels.limit(length);
+            buf.position(buf.position() + length);
+
+            final Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            bitmap.copyPixelsFromBuffer(pixels);
+            return bitmap;
+        } catch (RuntimeException e) {
+            // A bad size or a buffer too small for the bitmap
+            Log.w(TAG, "Corrupt bitmap in workspace snapshot", e);
+            return null;
+        }
+    }
+
+    private static void writeBitmap(DataOutputStream out, Bitmap bitmap) throws IOException {
+        if (bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+            bitmap = bitmap.copy(Bitmap.Config.ARGB_8888, false);
+        }
+        final ByteBuffer pixels = ByteBuffer.allocate(bitmap.getRowBytes() * bitmap.getHeight());
+        bitmap.copyPixelsToBuffer(pixels);
+        out.writeInt(bitmap.getWidth());
+        out.writeInt(bitmap.getHeight());
+        out.writeInt(pixels.capacity());
+        out.write(pixels.array());
+    }
+
+    private static String readString(ByteBuffer buf) {
+        final int length = buf.getInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        buf.get(bytes);
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = s.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private int getDensity() {
+        return mContext.getResources().getDisplayMetrics().densityDpi;
+    }
+
+    private String getLocale() {
+        final Locale locale = mContext.getResources().getConfiguration().locale;
+        return locale != null ? locale.toString() : "";
+    }
+
+    /**
+     * @return the package info of the current theme, or null if it can't be found.
+     */
+    private PackageInfo getThemePackageInfo() {
+        try {
+            return mContext.getPackageManager().getPackageInfo(getThemePackage(), 0);
+        } catch (NameNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static String getThemePackage() {
+        final String themePackage = ThemeSettings.getCurrentThemePackage();
+        return themePackage != null ? themePackage : "";
+    }
+}
@@ -208,12 +208,12 @@ public final class PreferencesProvider {
         			return;
         		}
 
+        		final String oldThemePackageName = ThemeSettings.getCurrentThemePackage();
+        		ThemeSettings.init(context);
+
         		final LauncherApplication app = ((LauncherApplication) (context
         				.getApplicationContext()));
-        		app.mIconCache.flush();
-        		app.mModel.reset(app);
-
-        		ThemeSettings.init(context);
+        		app.mModel.applyTheme(oldThemePackageName);
         	}
         	public static String getThemePackageName(Context context) {
         		SharedPreferences sp = context.getSharedPreferences(
@@ -27,12 +27,15 @@ import android.content.DialogInterface;
 import android.content.res.AssetManager;
 import android.graphics.Bitmap;
 import android.graphics.MaskFilter;
+import android.graphics.TableMaskFilter;
 import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.KeyEvent;
 import android.view.WindowManager;
 import android.widget.ListAdapter;
 
+import com.android.internal.util.XmlUtils;
+
 public class InnerClass {
 	final static String LOG_TAG = "InnerClass";
 
@@ -50,7 +53,7 @@ public class InnerClass {
 
 	public static WindowManager WindowManagerImpl_getDefault() {
 		try {
-			Class<?> clazz = Class.forName("android.view.WindowManagerImpl");
+			Class<?> clazz = Reflector.forName("android.view.WindowManagerImpl");
 			return (WindowManager) Reflector.invokeStaticMethod(clazz,
 					"getDefault", null, null);
 		} catch (Exception e) {
@@ -61,20 +64,13 @@ public class InnerClass {
 	}
 
 	public static boolean Bitmap_sameAs(Bitmap thisBmp, Bitmap otherBmp) {
-		try {
-			return (Boolean) Reflector.invokeMethod(thisBmp, "sameAs",
-					new Class[] { Bitmap.class }, new Object[] { otherBmp });
-		} catch (Exception e) {
-			Log.e(LOG_TAG, "Bitmap_sameAs exception : " + e.toString());
-		}
-		return false;
+		return thisBmp.sameAs(otherBmp);
 	}
 
 	public static ComponentName SearchManager_getGlobalSearchActivity(
 			SearchManager searchmanager) {
 		try {
-			return (ComponentName) Reflector.invokeMethod(searchmanager,
-					"getGlobalSearchActivity", null, null);
+			return searchmanager.getGlobalSearchActivity();
 		} catch (Exception e) {
 			Log.e(LOG_TAG, "SearchManager_getGlobalSearchActivity exception : "
 					+ e.toString());
@@ -85,10 +81,7 @@ public class InnerClass {
 	public static void XmlUtils_beginDocument(XmlPullParser parser,
 			String firstElementName) {
 		try {
-			Class<?> clazz = Class.forName("com.android.internal.util.XmlUtils");
-			Reflector.invokeStaticMethod(clazz, "beginDocument", new Class[] {
-					XmlPullParser.class, String.class }, new Object[] { parser,
-					firstElementName });
+			XmlUtils.beginDocument(parser, firstElementName);
 		} catch (Exception e) {
 			Log
 					.e(LOG_TAG, "XmlUtils_beginDocument exception : "
@@ -97,16 +90,7 @@ public class InnerClass {
 	}
 
 	public static MaskFilter TableMaskFilter_CreateClipTable(int min, int max) {
-		try {
-			Class<?> clazz = Class.forName("android.graphics.TableMaskFilter");
-			return (MaskFilter) Reflector.invokeStaticMethod(clazz,
-					"CreateClipTable", new Class[] { int.class, int.class },
-					new Object[] { min, max });
-		} catch (Exception e) {
-			Log.e(LOG_TAG, "TableMaskFilter_CreateClipTable exception : "
-					+ e.toString());
-		}
-		return null;
+		return TableMaskFilter.CreateClipTable(min, max);
 	}
 
 	public static Object PackageParser_parsePackage(File sourceFile,
@@ -309,8 +309,8 @@ public class InstallThemePkgActivity extends Activity {
 				ApplicationInfo info = new ApplicationInfo();
 				info.title = file.getName();
 				if (pkgInfo.icon == 0) {
-					info.iconBitmap = Utilities.createIconBitmap(
-							getPackageManager().getDefaultActivityIcon(), this);
+					info.setIconBitmap(Utilities.createIconBitmap(
+							getPackageManager().getDefaultActivityIcon(), this));
 				} else {
 					AssetManager assmgr;
 					try {
@@ -322,8 +322,8 @@ public class InstallThemePkgActivity extends Activity {
 					}
 					InnerClass.AssertManager_addAssetPath(assmgr, filePath);
 					Resources res = new Resources(assmgr, metrics, config);
-					info.iconBitmap = Utilities.createIconBitmap(res
-							.getDrawable(pkgInfo.icon), this);
+					info.setIconBitmap(Utilities.createIconBitmap(res
+							.getDrawable(pkgInfo.icon), this));
 				}
 
 				Intent intent = new Intent(Intent.ACTION_VIEW);
@@ -381,10 +381,10 @@ public class InstallThemePkgActivity extends Activity {
 
 			final ApplicationView appView = (ApplicationView) convertView;
 			final ApplicationInfo info = getItem(position);
-			info.iconBitmap.setDensity(Bitmap.DENSITY_NONE);
+			info.getIconBitmap().setDensity(Bitmap.DENSITY_NONE);
 			appView.setCompoundDrawablesWithIntrinsicBounds(null,
 					new BitmapDrawable(getContext().getResources(),
-							info.iconBitmap), null, null);
+							info.getIconBitmap()), null, null);
 			appView.setText(info.title);
 			appView.setTag(mApps.get(position));
 			return convertView;
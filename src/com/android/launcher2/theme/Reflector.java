@@ -19,24 +19,81 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Reflective access to hidden framework members.  Resolved classes, constructors, methods and
+ * fields are cached by class, name and parameter types, as are members that turned out not
+ * to exist, so that each is looked up and made accessible only once.
+ */
 public class Reflector {
 
+	// Cached for members and classes that don't exist
+	private static final Object NOT_FOUND = new Object();
+
+	private static final int KIND_CONSTRUCTOR = 0;
+	private static final int KIND_METHOD = 1;
+	private static final int KIND_METHOD_BY_NAME = 2;
+	private static final int KIND_FIELD = 3;
+
+	private static final Class<?>[] NO_TYPES = new Class<?>[0];
+
+	private static final ConcurrentHashMap<String, Object> sClasses =
+			new ConcurrentHashMap<String, Object>();
+	private static final ConcurrentHashMap<MemberKey, Object> sMembers =
+			new ConcurrentHashMap<MemberKey, Object>();
+
+	private static final class MemberKey {
+		final int kind;
+		final Class<?> clazz;
+		final String name;
+		final Class<?>[] types;
+		private final int mHashCode;
+
+		MemberKey(int kind, Class<?> clazz, String name, Class<?>[] types) {
+			this.kind = kind;
+			this.clazz = clazz;
+			this.name = name;
+			this.types = types != null ? types : NO_TYPES;
+			int h = kind;
+			h = 31 * h + clazz.hashCode();
+			h = 31 * h + (name != null ? name.hashCode() : 0);
+			h = 31 * h + Arrays.hashCode(this.types);
+			mHashCode = h;
+		}
+
+		@Override
+		public int hashCode() {
+			return mHashCode;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof MemberKey)) {
+				return false;
+			}
+			final MemberKey other = (MemberKey) o;
+			return kind == other.kind && clazz == other.clazz
+					&& (name == null ? other.name == null : name.equals(other.name))
+					&& Arrays.equals(types, other.types);
+		}
+	}
+
 	public static Object newInstance(String className, Class[] classTypes,
 			Object[] classArgs) throws ClassNotFoundException,
 			SecurityException, NoSuchMethodException, IllegalArgumentException,
 			InstantiationException, IllegalAccessException,
 			InvocationTargetException {
-		Class clazz = Class.forName(className);
-		Constructor constructor = clazz.getDeclaredConstructor(classTypes);
-		constructor.setAccessible(true);
+		Class clazz = forName(className);
+		Constructor constructor = getConstructor(clazz, classTypes);
 		return constructor.newInstance(classArgs);
 	}
 
 	public static Object newInstance(String className)
 			throws ClassNotFoundException, InstantiationException,
 			IllegalAccessException {
-		Class clazz = Class.forName(className);
+		Class clazz = forName(className);
 		return clazz.newInstance();
 	}
 
@@ -46,7 +103,6 @@ public class Reflector {
 			IllegalAccessException, InvocationTargetException {
 		Method accessMethod = getMethod(instance.getClass(), methodName,
 				methodTypes);
-		accessMethod.setAccessible(true);
 		return accessMethod.invoke(instance, methodArgs);
 	}
 
@@ -55,7 +111,6 @@ public class Reflector {
 			IllegalArgumentException, IllegalAccessException,
 			InvocationTargetException {
 		Method accessMethod = getMethod(instance.getClass(), methodName);
-		accessMethod.setAccessible(true);
 		return accessMethod.invoke(instance, methodArgs);
 	}
 
@@ -64,7 +119,6 @@ public class Reflector {
 			throws NoSuchMethodException, IllegalArgumentException,
 			IllegalAccessException, InvocationTargetException {
 		Method accessMethod = getMethod(clazz, methodName, methodTypes);
-		accessMethod.setAccessible(true);
 		return accessMethod.invoke(null, methodArgs);
 	}
 
@@ -72,7 +126,6 @@ public class Reflector {
 			throws SecurityException, NoSuchFieldException,
 			IllegalArgumentException, IllegalAccessException {
 		Field field = getField(instance.getClass(), fieldName);
-		field.setAccessible(true);
 		field.set(instance, value);
 	}
 
@@ -80,7 +133,6 @@ public class Reflector {
 			throws SecurityException, NoSuchFieldException,
 			IllegalArgumentException, IllegalAccessException {
 		Field field = getField(instance.getClass(), fieldName);
-		field.setAccessible(true);
 		return field.get(instance);
 	}
 
@@ -88,35 +140,118 @@ public class Reflector {
 			throws SecurityException, NoSuchFieldException,
 			IllegalArgumentException, IllegalAccessException {
 		Field field = getField(clazz, fieldName);
-		field.setAccessible(true);
 		return field.get(null);
 	}
 
-	private static Method getMethod(Class clazz, String methodName,
-			Class[] classTypes) throws NoSuchMethodException {
-
+	/**
+	 * Class.forName, remembering the result.
+	 */
+	public static Class<?> forName(String className)
+			throws ClassNotFoundException {
+		Object clazz = sClasses.get(className);
 		if (clazz == null) {
-			throw new NoSuchMethodException(" No such method ! ");
+			try {
+				clazz = Class.forName(className);
+			} catch (ClassNotFoundException e) {
+				clazz = NOT_FOUND;
+			}
+			sClasses.put(className, clazz);
+		}
+		if (clazz == NOT_FOUND) {
+			throw new ClassNotFoundException(className);
+		}
+		return (Class<?>) clazz;
+	}
+
+	private static Constructor getConstructor(Class clazz, Class[] classTypes)
+			throws NoSuchMethodException {
+		final MemberKey key = new MemberKey(KIND_CONSTRUCTOR, clazz, null,
+				classTypes);
+		Object constructor = sMembers.get(key);
+		if (constructor == null) {
+			try {
+				final Constructor c = clazz.getDeclaredConstructor(classTypes);
+				c.setAccessible(true);
+				constructor = c;
+			} catch (NoSuchMethodException e) {
+				constructor = NOT_FOUND;
+			}
+			sMembers.put(key, constructor);
+		}
+		if (constructor == NOT_FOUND) {
+			throw new NoSuchMethodException(clazz.getName() + ".<init>");
 		}
+		return (Constructor) constructor;
+	}
 
-		try {
-			Method accessMethod = clazz.getDeclaredMethod(methodName,
-					classTypes);
-			accessMethod.setAccessible(true);
-			return accessMethod;
-		} catch (NoSuchMethodException e) {
-			return getMethod(clazz.getSuperclass(), methodName, classTypes);
+	private static Method getMethod(Class clazz, String methodName,
+			Class[] classTypes) throws NoSuchMethodException {
+		final MemberKey key = new MemberKey(KIND_METHOD, clazz, methodName,
+				classTypes);
+		Object method = sMembers.get(key);
+		if (method == null) {
+			method = findMethod(clazz, methodName, classTypes);
+			sMembers.put(key, method);
 		}
+		if (method == NOT_FOUND) {
+			throw new NoSuchMethodException(" No such method ! ");
+		}
+		return (Method) method;
 	}
 
 	private static Method getMethod(Class clazz, String methodName)
 			throws NoSuchMethodException {
-
-		if (clazz == null) {
+		final MemberKey key = new MemberKey(KIND_METHOD_BY_NAME, clazz,
+				methodName, null);
+		Object method = sMembers.get(key);
+		if (method == null) {
+			method = findMethod(clazz, methodName);
+			sMembers.put(key, method);
+		}
+		if (method == NOT_FOUND) {
 			throw new NoSuchMethodException(" No such method ! ");
 		}
+		return (Method) method;
+	}
+
+	private static Field getField(Class clazz, String fieldName)
+			throws NoSuchFieldException {
+		final MemberKey key = new MemberKey(KIND_FIELD, clazz, fieldName, null);
+		Object field = sMembers.get(key);
+		if (field == null) {
+			field = findField(clazz, fieldName);
+			sMembers.put(key, field);
+		}
+		if (field == NOT_FOUND) {
+			throw new NoSuchFieldException(" No such field ! ");
+		}
+		return (Field) field;
+	}
 
-		try {
+	/**
+	 * Returns the method declared by the class or its nearest superclass, made accessible,
+	 * or NOT_FOUND.
+	 */
+	private static Object findMethod(Class clazz, String methodName,
+			Class[] classTypes) {
+		for (; clazz != null; clazz = clazz.getSuperclass()) {
+			try {
+				Method accessMethod = clazz.getDeclaredMethod(methodName,
+						classTypes);
+				accessMethod.setAccessible(true);
+				return accessMethod;
+			} catch (NoSuchMethodException e) {
+			}
+		}
+		return NOT_FOUND;
+	}
+
+	/**
+	 * Returns the first public method of that name, made accessible, or NOT_FOUND.
+	 */
+	private static Object findMethod(Class clazz, String methodName) {
+		// getMethods() already includes the public methods of every superclass
+		if (clazz != null) {
 			Method[] methods = clazz.getMethods();
 			for (Method method : methods) {
 				if (method.getName().equals(methodName)) {
@@ -124,26 +259,20 @@ public class Reflector {
 					return method;
 				}
 			}
-			return getMethod(clazz.getSuperclass(), methodName);
-		} catch (NoSuchMethodException e) {
-			return getMethod(clazz.getSuperclass(), methodName);
 		}
+		return NOT_FOUND;
 	}
 
-	private static Field getField(Class clazz, String fieldName)
-			throws NoSuchFieldException {
-
-		if (clazz == null) {
-			throw new NoSuchFieldException(" No such method ! ");
-		}
-
-		try {
-			Field accessField = clazz.getDeclaredField(fieldName);
-			accessField.setAccessible(true);
-			return accessField;
-		} catch (NoSuchFieldException e) {
-			return getField(clazz.getSuperclass(), fieldName);
+	private static Object findField(Class clazz, String fieldName) {
+		for (; clazz != null; clazz = clazz.getSuperclass()) {
+			try {
+				Field accessField = clazz.getDeclaredField(fieldName);
+				accessField.setAccessible(true);
+				return accessField;
+			} catch (NoSuchFieldException e) {
+			}
 		}
+		return NOT_FOUND;
 	}
 
 }
@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 20012 The Pekall Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher2.theme;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.PackageManager.NameNotFoundException;
+import android.content.res.Resources;
+import android.content.res.Resources.NotFoundException;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Index of the resources a theme package provides, by type and name, so that asking a theme
+ * for a name it doesn't override is a map lookup instead of a failed getIdentifier.
+ *
+ * The index is built by walking the package's resource ids once, when the theme is installed
+ * or updated, and is kept on disk next to the package's lastUpdateTime and versionCode; it is
+ * only used while those still match.
+ */
+public final class ThemeManifest {
+	private static final String TAG = "ThemeManifest";
+
+	private static final String DIR_NAME = "theme_manifests";
+	private static final int MAGIC = 0x544d4e46; // "TMNF"
+	private static final int VERSION = 1;
+
+	// Application packages always get this package id
+	private static final int APP_PACKAGE_ID = 0x7f000000;
+
+	// The resource types ThemeSettings looks up
+	private static final String[] TYPES = {
+		"drawable", "color", "integer", "dimen", "array", "bool"
+	};
+
+	private static HandlerThread sBuildThread;
+	private static Handler sBuildHandler;
+
+	private final HashMap<String, HashMap<String, Integer>> mIds;
+
+	private ThemeManifest(HashMap<String, HashMap<String, Integer>> ids) {
+		mIds = ids;
+	}
+
+	/**
+	 * Returns the id of the named resource in the theme, or 0 if the theme doesn't have it.
+	 */
+	public int getIdentifier(String name, String type) {
+		final HashMap<String, Integer> ids = mIds.get(type);
+		if (ids == null) {
+			return 0;
+		}
+		final Integer id = ids.get(name);
+		return id != null ? id : 0;
+	}
+
+	/**
+	 * Returns the stored manifest of the theme, or null if there is none or it is out of date.
+	 */
+	public static ThemeManifest load(Context context, String themePackage) {
+		final PackageInfo packageInfo = getPackageInfo(context, themePackage);
+		if (packageInfo == null) {
+			return null;
+		}
+		final File file = getFile(context, themePackage);
+		if (!file.exists()) {
+			return null;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION
+					|| in.readLong() != packageInfo.lastUpdateTime
+					|| in.readInt() != packageInfo.versionCode) {
+				return null;
+			}
+			final HashMap<String, HashMap<String, Integer>> ids =
+					new HashMap<String, HashMap<String, Integer>>();
+			final int typeCount = in.readInt();
+			for (int i = 0; i < typeCount; i++) {
+				final String type = in.readUTF();
+				final int count = in.readInt();
+				final HashMap<String, Integer> names = new HashMap<String, Integer>(count * 2);
+				for (int j = 0; j < count; j++) {
+					final String name = in.readUTF();
+					names.put(name, in.readInt());
+				}
+				ids.put(type, names);
+			}
+			return new ThemeManifest(ids);
+		} catch (IOException e) {
+			Log.w(TAG, "Could not read manifest of " + themePackage, e);
+			return null;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Build and store the manifest of the theme on a background thread.
+	 */
+	public static void buildAsync(final Context context, final String themePackage) {
+		if (ThemeSettings.THEME_DEFAULT.equals(themePackage)) {
+			return;
+		}
+		synchronized (ThemeManifest.class) {
+			if (sBuildHandler == null) {
+				sBuildThread = new HandlerThread("theme-manifest",
+						Process.THREAD_PRIORITY_BACKGROUND);
+				sBuildThread.start();
+				sBuildHandler = new Handler(sBuildThread.getLooper());
+			}
+			sBuildHandler.post(new Runnable() {
+				public void run() {
+					build(context, themePackage);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Forget the stored manifest of the theme.
+	 */
+	public static void remove(Context context, String themePackage) {
+		getFile(context, themePackage).delete();
+	}
+
+	/**
+	 * Build and store the manifest of the theme.
+	 *
+	 * @return the manifest, or null if the package can't be loaded
+	 */
+	public static ThemeManifest build(Context context, String themePackage) {
+		final PackageInfo packageInfo = getPackageInfo(context, themePackage);
+		if (packageInfo == null) {
+			return null;
+		}
+		final Resources res;
+		try {
+			res = context.getPackageManager().getResourcesForApplication(themePackage);
+		} catch (NameNotFoundException e) {
+			return null;
+		}
+
+		final HashMap<String, HashMap<String, Integer>> ids =
+				new HashMap<String, HashMap<String, Integer>>();
+		for (String type : TYPES) {
+			ids.put(type, new HashMap<String, Integer>());
+		}
+		// Type and entry indices are assigned densely from 1 and 0 respectively, so each
+		// type ends at the first entry that doesn't exist, and the types at the first type
+		// that has no entry 0.
+		for (int type = 1; type <= 0xff; type++) {
+			final int typeBase = APP_PACKAGE_ID | (type << 16);
+			final String typeName;
+			try {
+				typeName = res.getResourceTypeName(typeBase);
+			} catch (NotFoundException e) {
+				break;
+			}
+			final HashMap<String, Integer> names = ids.get(typeName);
+			if (names == null) {
+				continue;
+			}
+			for (int entry = 0; entry <= 0xffff; entry++) {
+				try {
+					names.put(res.getResourceEntryName(typeBase | entry), typeBase | entry);
+				} catch (NotFoundException e) {
+					break;
+				}
+			}
+		}
+
+		final ThemeManifest manifest = new ThemeManifest(ids);
+		manifest.store(context, themePackage, packageInfo);
+		return manifest;
+	}
+
+	private void store(Context context, String themePackage, PackageInfo packageInfo) {
+		final File file = getFile(context, themePackage);
+		final File tmp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(packageInfo.lastUpdateTime);
+			out.writeInt(packageInfo.versionCode);
+			out.writeInt(mIds.size());
+			for (Map.Entry<String, HashMap<String, Integer>> type : mIds.entrySet()) {
+				out.writeUTF(type.getKey());
+				out.writeInt(type.getValue().size());
+				for (Map.Entry<String, Integer> name : type.getValue().entrySet()) {
+					out.writeUTF(name.getKey());
+					out.writeInt(name.getValue());
+				}
+			}
+			out.close();
+			out = null;
+			// Readers only ever see a complete file
+			if (!tmp.renameTo(file)) {
+				Log.w(TAG, "Could not store manifest of " + themePackage);
+				tmp.delete();
+			}
+		} catch (IOException e) {
+			Log.w(TAG, "Could not write manifest of " + themePackage, e);
+			tmp.delete();
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	private static File getFile(Context context, String themePackage) {
+		return new File(context.getDir(DIR_NAME, Context.MODE_PRIVATE), themePackage);
+	}
+
+	private static PackageInfo getPackageInfo(Context context, String themePackage) {
+		try {
+			return context.getPackageManager().getPackageInfo(themePackage, 0);
+		} catch (PackageManager.NameNotFoundException e) {
+			return null;
+		}
+	}
+}
@@ -117,6 +117,7 @@ public class ThemePackageManager {
 			}
 			if (info != null) {
 				mThemes.remove(info);
+				ThemeManifest.remove(context, themePackage);
 				if (mCallback != null) {
 					final ThemeManagerCallback callback = mCallback.get();
 					if (callback != null) {
@@ -140,6 +141,8 @@ public class ThemePackageManager {
 			final int N = themes.size();
 			for (int i = 0; i < N; i++) {
 				if (themePackage.equals(themes.get(i).activityInfo.packageName)) {
+					ThemeManifest.buildAsync(context.getApplicationContext(),
+							themePackage);
 					ThemeInfo info = getThemePreviewInfo(themes.get(i), pm);
 					if (info != null) {
 						mThemes.add(info);
@@ -26,6 +26,10 @@ import android.graphics.drawable.Drawable;
 import android.graphics.drawable.NinePatchDrawable;
 import android.graphics.drawable.StateListDrawable;
 
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
+
 public class ThemeSettings {
 	
 	public static String THEME_DEFAULT = "com.android.launcher2";
@@ -36,19 +40,79 @@ public class ThemeSettings {
 	private static final int RESOURCE_TYPE_DIMEN = 4;
 	private static final int RESOURCE_TYPE_STRINGARRAY = 5;
 	private static final int RESOURCE_TYPE_BOOLEAN = 6;
+	private static final int RESOURCE_TYPE_COUNT = 7;
+
+	// Cached for names the theme doesn't override
+	private static final Object NOT_FOUND = new Object();
+
+	/**
+	 * The current theme and everything resolved from it so far.  init() replaces it as a
+	 * whole, so a lookup never mixes the values of two themes.
+	 */
+	private static final class ThemeState {
+		final String packageName;
+		final Resources resources;
+		// Null if the theme's manifest hasn't been built yet
+		final ThemeManifest manifest;
+		// Resolved values by type, then by name.  Drawables are held as their ConstantState,
+		// or as their id if they have none.
+		final ConcurrentHashMap<String, Object>[] values;
+
+		@SuppressWarnings("unchecked")
+		ThemeState(String packageName, Resources resources, ThemeManifest manifest) {
+			this.packageName = packageName;
+			this.resources = resources;
+			this.manifest = manifest;
+			values = new ConcurrentHashMap[RESOURCE_TYPE_COUNT];
+			for (int i = 0; i < RESOURCE_TYPE_COUNT; i++) {
+				values[i] = new ConcurrentHashMap<String, Object>();
+			}
+		}
+	}
 
-	private static Resources sResource = null;
-	private static String sThemePackageName = THEME_DEFAULT;
+	private static volatile ThemeState sState;
+
+	// Entry names of the launcher's own resources, which don't depend on the theme
+	private static final ConcurrentHashMap<Integer, String> sEntryNames =
+			new ConcurrentHashMap<Integer, String>();
 
 	public static synchronized void init(Context context) {
-		sThemePackageName = PreferencesProvider.Interface.General.getThemePackageName(context);
-		sResource = getResources(context, sThemePackageName);
-		if (sResource == null) {
+		String packageName =
+				PreferencesProvider.Interface.General.getThemePackageName(context);
+		Resources resources = getResources(context, packageName);
+		if (resources == null) {
 			PreferencesProvider.Interface.General.putStringValue(context,
 					"themePackageName",
 					THEME_DEFAULT);
-			sResource = context.getResources();
+			packageName = THEME_DEFAULT;
+			resources = context.getResources();
+		}
+		ThemeManifest manifest = null;
+		if (!THEME_DEFAULT.equals(packageName)) {
+			manifest = ThemeManifest.load(context, packageName);
+			if (manifest == null) {
+				ThemeManifest.buildAsync(context.getApplicationContext(), packageName);
+			}
+		}
+		sState = new ThemeState(packageName, resources, manifest);
+	}
+
+	private static ThemeState getState(Context context) {
+		ThemeState state = sState;
+		if (state == null) {
+			init(context);
+			state = sState;
 		}
+		return state;
+	}
+
+	private static String getEntryName(Context context, int resID) {
+		String name = sEntryNames.get(resID);
+		if (name == null) {
+			name = context.getResources().getResourceEntryName(resID);
+			sEntryNames.put(resID, name);
+		}
+		return name;
 	}
 
 	public static boolean getBoolean(Context context, int resID) {
@@ -164,17 +228,13 @@ public class ThemeSettings {
 	}
 
 	private static Object getThemeResource(Context context, int resID, int type) {
-		if (sResource == null) {
-			init(context);
-		}
-		if (THEME_DEFAULT.equals(sThemePackageName)) {
+		final ThemeState state = getState(context);
+		if (THEME_DEFAULT.equals(state.packageName)) {
 			return getDefaultResourceValue(context, resID, type);
 		}
 		try {
-			final String resName = context.getResources().getResourceEntryName(
-					resID);
-			Object o = getResourceValueByName(context, sResource,
-					sThemePackageName, resName, type);
+			final String resName = getEntryName(context, resID);
+			Object o = getResourceValueByName(context, state, resName, type);
 			return o == null ? getDefaultResourceValue(context, resID, type)
 					: o;
 		} catch (NotFoundException e) {
@@ -185,18 +245,14 @@ public class ThemeSettings {
 
 	private static Object getThemeResource(Context context, int resID,
 			Object defaultValue, int type) {
-		if (sResource == null) {
-			init(context);
-		}
-		if (THEME_DEFAULT.equals(sThemePackageName)) {
+		final ThemeState state = getState(context);
+		if (THEME_DEFAULT.equals(state.packageName)) {
 			Object o = getDefaultResourceValue(context, resID, type);
 			return o == null ? defaultValue : o;
 		}
 		try {
-			final String resName = context.getResources().getResourceEntryName(
-					resID);
-			Object o = getResourceValueByName(context, sResource,
-					sThemePackageName, resName, type);
+			final String resName = getEntryName(context, resID);
+			Object o = getResourceValueByName(context, state, resName, type);
 			return o == null ? defaultValue : o;
 		} catch (NotFoundException e) {
 
@@ -206,62 +262,119 @@ public class ThemeSettings {
 
 	private static Object getThemeResource(Context context, String resName,
 			Object defaultValue, int type) {
-		if (sResource == null) {
-			init(context);
-		}
-
-		if (THEME_DEFAULT.equals(sThemePackageName)) {
+		final ThemeState state = getState(context);
+		if (THEME_DEFAULT.equals(state.packageName)) {
 			return defaultValue;
 		}
 
-		Object o = getResourceValueByName(context, sResource,
-				sThemePackageName, resName, type);
+		Object o = getResourceValueByName(context, state, resName, type);
 		return o == null ? defaultValue : o;
 	}
 
-	private static Object getResourceValueByName(Context context,
-			Resources res, String packageName, String resName, int type) {
-		try {
-			if (THEME_DEFAULT.equals(sThemePackageName)) {
-				packageName = context.getPackageName();
+	/**
+	 * Returns the theme's value for the name, resolving it the first time it is asked for.
+	 * Drawables are new instances sharing the cached state, and arrays are copies, so callers
+	 * are free to change what they get.
+	 */
+	private static Object getResourceValueByName(Context context, ThemeState state,
+			String resName, int type) {
+		if (type <= 0 || type >= RESOURCE_TYPE_COUNT) {
+			return null;
+		}
+		final ConcurrentHashMap<String, Object> values = state.values[type];
+		Object value = values.get(resName);
+		if (value == null) {
+			value = loadResourceValue(context, state, resName, type);
+			if (value == null) {
+				values.put(resName, NOT_FOUND);
+				return null;
 			}
-			resName = resName.toLowerCase().trim().replace(".", "_").replace(
-					" ", "_");
+			if (value instanceof Drawable) {
+				final Drawable d = (Drawable) value;
+				final Drawable.ConstantState cs = d.getConstantState();
+				values.put(resName, cs != null ? cs : (Object) getIdentifier(context, state,
+						normalizeName(resName), "drawable"));
+				return d;
+			}
+			values.put(resName, value);
+		} else if (value == NOT_FOUND) {
+			return null;
+		}
+
+		switch (type) {
+		case RESOURCE_TYPE_DRAWABLE:
+			try {
+				return value instanceof Drawable.ConstantState ?
+						((Drawable.ConstantState) value).newDrawable(state.resources) :
+						state.resources.getDrawable((Integer) value);
+			} catch (NotFoundException e) {
+				return null;
+			}
+		case RESOURCE_TYPE_STRINGARRAY:
+			return ((String[]) value).clone();
+		default:
+			return value;
+		}
+	}
+
+	private static String normalizeName(String resName) {
+		return resName.toLowerCase().trim().replace(".", "_").replace(" ", "_");
+	}
+
+	/**
+	 * Returns the id of the resource in the theme, or 0 if there is none.  Uses the theme's
+	 * manifest when there is one, so that missing names cost no getIdentifier call.
+	 */
+	private static int getIdentifier(Context context, ThemeState state, String resName,
+			String type) {
+		if (state.manifest != null) {
+			return state.manifest.getIdentifier(resName, type);
+		}
+		final String packageName = THEME_DEFAULT.equals(state.packageName)
+				? context.getPackageName() : state.packageName;
+		return state.resources.getIdentifier(resName, type, packageName);
+	}
+
+	private static Object loadResourceValue(Context context, ThemeState state,
+			String resName, int type) {
+		final Resources res = state.resources;
+		try {
+			resName = normalizeName(resName);
 			
 			int id = 0;
 			switch (type) {
 			case RESOURCE_TYPE_DRAWABLE:
-				id = res.getIdentifier(resName, "drawable", packageName);
+				id = getIdentifier(context, state, resName, "drawable");
 				if (id != 0) {
 					return res.getDrawable(id);
 				}
 				break;
 			case RESOURCE_TYPE_COLOR:
-				id = res.getIdentifier(resName, "color", packageName);
+				id = getIdentifier(context, state, resName, "color");
 				if (id != 0) {
 					return res.getColor(id);
 				}
 				break;
 			case RESOURCE_TYPE_INTEGER:
-				id = res.getIdentifier(resName, "integer", packageName);
+				id = getIdentifier(context, state, resName, "integer");
 				if (id != 0) {
 					return res.getInteger(id);
 				}
 				break;
 			case RESOURCE_TYPE_DIMEN:
-				id = res.getIdentifier(resName, "dimen", packageName);
+				id = getIdentifier(context, state, resName, "dimen");
 				if (id != 0) {
 					return res.getDimension(id);
 				}
 				break;
 			case RESOURCE_TYPE_STRINGARRAY:
-				id = res.getIdentifier(resName, "array", packageName);
+				id = getIdentifier(context, state, resName, "array");
 				if (id != 0) {
 					return res.getStringArray(id);
 				}
 				break;
 			case RESOURCE_TYPE_BOOLEAN:
-				id = res.getIdentifier(resName, "bool", packageName);
+				id = getIdentifier(context, state, resName, "bool");
 				if (id != 0) {
 					return res.getBoolean(id);
 				}
@@ -314,8 +427,36 @@ public class ThemeSettings {
 		return themeResources;
 	}
 
+	/**
+	 * Returns those of the names that the theme package provides drawables for, whether or not
+	 * it is the current theme.  Used to work out what a theme switch changes.
+	 */
+	public static HashSet<String> getDrawableOverrides(Context context,
+			String themePackage, Collection<String> names) {
+		final HashSet<String> overrides = new HashSet<String>();
+		if (THEME_DEFAULT.equals(themePackage)) {
+			return overrides;
+		}
+		ThemeState state = sState;
+		if (state == null || !themePackage.equals(state.packageName)) {
+			final Resources resources = getResources(context, themePackage);
+			if (resources == null) {
+				return overrides;
+			}
+			state = new ThemeState(themePackage, resources,
+					ThemeManifest.load(context, themePackage));
+		}
+		for (String name : names) {
+			if (getIdentifier(context, state, normalizeName(name), "drawable") != 0) {
+				overrides.add(name);
+			}
+		}
+		return overrides;
+	}
+
 	public static String getCurrentThemePackage() {
-		return sThemePackageName;
+		final ThemeState state = sState;
+		return state != null ? state.packageName : THEME_DEFAULT;
 	}
 	/**
 	 * setting name of theme's drawable,color resouces
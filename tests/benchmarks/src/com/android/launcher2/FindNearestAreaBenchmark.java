@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher2;
+
+import android.test.InstrumentationTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import java.util.Random;
+
+/**
+ * Times {@link CellLayout#findNearestArea} against the scan of every cell it replaced, over
+ * the points a drag across a half full page reports.  The results are logged:
+ *
+ * adb shell am instrument -w -e class com.android.launcher2.FindNearestAreaBenchmark \
+ *     com.android.launcher2.benchmarks/android.test.InstrumentationTestRunner
+ * adb logcat -s FindNearestAreaBenchmark
+ */
+@LargeTest
+public class FindNearestAreaBenchmark extends InstrumentationTestCase {
+    private static final String TAG = "FindNearestAreaBenchmark";
+
+    private static final int[] GRID_SIZES = { 4, 6, 8 };
+    // Spans of a shortcut, and of the common widget sizes
+    private static final int[][] SPANS = { { 1, 1 }, { 2, 2 }, { 4, 1 } };
+    private static final int WARMUP_RUNS = 5;
+    private static final int RUNS = 50;
+    // Move events per cell crossed; touch screens report around 60 moves a second
+    private static final int STEPS_PER_CELL = 8;
+
+    public void testDragTrace() {
+        final Random random = new Random(0);
+        for (int size : GRID_SIZES) {
+            final CellLayout layout =
+                    new CellLayout(getInstrumentation().getTargetContext());
+            layout.setGridSize(size, size);
+            CellLayoutTestUtils.randomFill(layout, random, size);
+            final int[] trace = createDragTrace(layout, random);
+
+            for (int[] span : SPANS) {
+                if (span[0] > size || span[1] > size) {
+                    continue;
+                }
+                final long bruteForce = time(layout, trace, span[0], span[1], true);
+                final long indexed = time(layout, trace, span[0], span[1], false);
+                final int points = trace.length / 2;
+                Log.i(TAG, size + "x" + size + " span " + span[0] + "x" + span[1] + ": "
+                        + points + " points, scan " + (bruteForce / points) + "ns/point, "
+                        + "indexed " + (indexed / points) + "ns/point");
+            }
+        }
+    }
+
+    /**
+     * Returns the fastest of several runs over the trace, in nanoseconds.
+     */
+    private static long time(CellLayout layout, int[] trace, int spanX, int spanY,
+            boolean bruteForce) {
+        final int[] result = new int[2];
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < WARMUP_RUNS + RUNS; run++) {
+            final long start = System.nanoTime();
+            for (int i = 0; i < trace.length; i += 2) {
+                if (bruteForce) {
+                    CellLayoutTestUtils.bruteForceNearestArea(layout, trace[i], trace[i + 1],
+                            spanX, spanY, true, result);
+                } else {
+                    layout.findNearestArea(trace[i], trace[i + 1], spanX, spanY, null, true,
+                            result);
+                }
+            }
+            final long elapsed = System.nanoTime() - start;
+            if (run >= WARMUP_RUNS) {
+                best = Math.min(best, elapsed);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * A few strokes between random points of the page, as x, y pairs.
+     */
+    private static int[] createDragTrace(CellLayout layout, Random random) {
+        final int pitchX = layout.getCellWidth() + layout.getWidthGap();
+        final int pitchY = layout.getCellHeight() + layout.getHeightGap();
+        final int width = layout.getCountX() * pitchX;
+        final int height = layout.getCountY() * pitchY;
+        final int strokes = 4;
+        final int steps = STEPS_PER_CELL * Math.max(layout.getCountX(), layout.getCountY());
+        final int[] trace = new int[strokes * steps * 2];
+        int x = random.nextInt(width);
+        int y = random.nextInt(height);
+        int i = 0;
+        for (int stroke = 0; stroke < strokes; stroke++) {
+            final int toX = random.nextInt(width);
+            final int toY = random.nextInt(height);
+            for (int step = 0; step < steps; step++) {
+                trace[i++] = x + (toX - x) * step / steps;
+                trace[i++] = y + (toY - y) * step / steps;
+            }
+            x = toX;
+            y = toY;
+        }
+        return trace;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher2;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.graphics.drawable.Drawable;
+import android.test.InstrumentationTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Times {@link Utilities#createIconBitmap(Drawable, Context)} on several threads at once, over
+ * the icons of the installed launchable activities.  Each thread draws with its own Canvas,
+ * so the throughput should grow with the number of threads up to the number of cores.  The
+ * results are logged:
+ *
+ * adb shell am instrument -w -e class com.android.launcher2.UtilitiesRasterBenchmark \
+ *     com.android.launcher2.benchmarks/android.test.InstrumentationTestRunner
+ * adb logcat -s UtilitiesRasterBenchmark
+ */
+@LargeTest
+public class UtilitiesRasterBenchmark extends InstrumentationTestCase {
+    private static final String TAG = "UtilitiesRasterBenchmark";
+
+    private static final int WARMUP_RUNS = 2;
+    private static final int RUNS = 5;
+    // Icons each thread draws per run
+    private static final int ICONS_PER_THREAD = 200;
+
+    public void testThroughput() throws InterruptedException {
+        final Context context = getInstrumentation().getTargetContext();
+        final List<Drawable> icons = loadIcons(context);
+        assertFalse("No launchable activities to draw", icons.isEmpty());
+
+        final ArrayList<Integer> threadCounts = new ArrayList<Integer>();
+        threadCounts.add(1);
+        threadCounts.add(2);
+        threadCounts.add(4);
+        final int processors = Runtime.getRuntime().availableProcessors();
+        if (!threadCounts.contains(processors)) {
+            threadCounts.add(processors);
+        }
+
+        for (int threads : threadCounts) {
+            final long elapsed = time(context, icons, threads);
+            final long drawn = (long) threads * ICONS_PER_THREAD;
+            Log.i(TAG, threads + " threads (" + processors + " cores): " + drawn + " icons in "
+                    + (elapsed / 1000000) + "ms, " + (drawn * 1000000000L / elapsed)
+                    + " icons/s");
+        }
+    }
+
+    /**
+     * Returns the fastest of several runs of every thread drawing its share, in nanoseconds.
+     */
+    private static long time(final Context context, final List<Drawable> icons, int threads)
+            throws InterruptedException {
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < WARMUP_RUNS + RUNS; run++) {
+            final CountDownLatch start = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(threads);
+            for (int t = 0; t < threads; t++) {
+                final int offset = t;
+                new Thread("raster-" + t) {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                            for (int i = 0; i < ICONS_PER_THREAD; i++) {
+                                // Drawables share their state, so copy them for each thread
+                                final Drawable icon = icons.get((offset + i) % icons.size())
+                                        .getConstantState().newDrawable();
+                                Utilities.createIconBitmap(icon, context).recycle();
+                            }
+                        } catch (InterruptedException e) {
+                            // Ignore
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                }.start();
+            }
+            final long startNanos = System.nanoTime();
+            start.countDown();
+            done.await();
+            final long elapsed = System.nanoTime() - startNanos;
+            if (run >= WARMUP_RUNS) {
+                best = Math.min(best, elapsed);
+            }
+        }
+        return best;
+    }
+
+    private static List<Drawable> loadIcons(Context context) {
+        final PackageManager packageManager = context.getPackageManager();
+        final Intent mainIntent = new Intent(Intent.ACTION_MAIN, null);
+        mainIntent.addCategory(Intent.CATEGORY_LAUNCHER);
+        final ArrayList<Drawable> icons = new ArrayList<Drawable>();
+        for (ResolveInfo info : packageManager.queryIntentActivities(mainIntent, 0)) {
+            final Drawable icon = info.activityInfo.loadIcon(packageManager);
+            if (icon != null && icon.getConstantState() != null) {
+                icons.add(icon);
+            }
+        }
+        return icons;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher2;
+
+import java.util.Random;
+
+/**
+ * Grids and the reference findNearestArea shared by the CellLayout tests and benchmarks.
+ */
+class CellLayoutTestUtils {
+    private CellLayoutTestUtils() {
+    }
+
+    /**
+     * Mark roughly half of the cells as occupied, in spans of up to 2x2.
+     */
+    static void randomFill(CellLayout layout, Random random, int size) {
+        final CellOccupancy occupied = layout.mOccupied;
+        occupied.clear();
+        for (int i = 0; i < size * size / 3; i++) {
+            occupied.markCells(random.nextInt(size), random.nextInt(size),
+                    1 + random.nextInt(2), 1 + random.nextInt(2), true);
+        }
+    }
+
+    /**
+     * The scan of every cell that findNearestArea used to do.
+     */
+    static int[] bruteForceNearestArea(CellLayout layout, int pixelX, int pixelY, int spanX,
+            int spanY, boolean ignoreOccupied, int[] result) {
+        pixelX -= (layout.getCellWidth() + layout.getWidthGap()) * (spanX - 1) / 2f;
+        pixelY -= (layout.getCellHeight() + layout.getHeightGap()) * (spanY - 1) / 2f;
+
+        final int[] bestXY = result != null ? result : new int[2];
+        double bestDistance = Double.MAX_VALUE;
+
+        final int countX = layout.getCountX();
+        final int countY = layout.getCountY();
+        final CellOccupancy occupied = layout.mOccupied;
+        final int[] cellXY = new int[2];
+
+        for (int y = 0; y < countY - (spanY - 1); y++) {
+            inner:
+            for (int x = 0; x < countX - (spanX - 1); x++) {
+                if (ignoreOccupied) {
+                    for (int i = 0; i < spanX; i++) {
+                        for (int j = 0; j < spanY; j++) {
+                            if (occupied.isOccupied(x + i, y + j)) {
+                                x += i;
+                                continue inner;
+                            }
+                        }
+                    }
+                }
+                layout.cellToCenterPoint(x, y, cellXY);
+
+                double distance = Math.sqrt(Math.pow(cellXY[0] - pixelX, 2)
+                        + Math.pow(cellXY[1] - pixelY, 2));
+                if (distance <= bestDistance) {
+                    bestDistance = distance;
+                    bestXY[0] = x;
+                    bestXY[1] = y;
+                }
+            }
+        }
+
+        if (bestDistance == Double.MAX_VALUE) {
+            bestXY[0] = -1;
+            bestXY[1] = -1;
+        }
+        return bestXY;
+    }
+}
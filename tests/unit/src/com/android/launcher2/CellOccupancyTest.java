@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher2;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link CellOccupancy}, checked against a plain boolean[][] grid.
+ */
+@SmallTest
+public class CellOccupancyTest extends TestCase {
+
+    private static final int[] GRID_SIZES = { 4, 6, 8 };
+    private static final int MAX_SPAN = 4;
+
+    private final Random mRandom = new Random(0);
+
+    public void testNearestOriginEmpty() {
+        assertEquals(-1, CellOccupancy.nearestOrigin(0, 3f));
+        assertEquals(-1, CellOccupancy.nearestOrigin(0, -3f));
+    }
+
+    public void testNearestOriginNegativeX() {
+        assertEquals(0, CellOccupancy.nearestOrigin(1L, -0.5f));
+        assertEquals(1, CellOccupancy.nearestOrigin(0xaL, -5f));
+        assertEquals(63, CellOccupancy.nearestOrigin(1L << 63, -100f));
+    }
+
+    public void testNearestOriginColumn63() {
+        final long last = 1L << 63;
+        assertEquals(63, CellOccupancy.nearestOrigin(last, 63f));
+        assertEquals(63, CellOccupancy.nearestOrigin(last, 62.9f));
+        assertEquals(63, CellOccupancy.nearestOrigin(last, 63.5f));
+        assertEquals(63, CellOccupancy.nearestOrigin(last, 1000f));
+        assertEquals(63, CellOccupancy.nearestOrigin(-1L, 70f));
+        assertEquals(62, CellOccupancy.nearestOrigin(-1L >>> 1, 70f));
+        assertEquals(0, CellOccupancy.nearestOrigin(last | 1L, 31.4f));
+        assertEquals(63, CellOccupancy.nearestOrigin(last | 1L, 31.6f));
+    }
+
+    public void testNearestOriginTiesPreferHigherColumn() {
+        assertEquals(3, CellOccupancy.nearestOrigin(0xaL, 2f));
+        assertEquals(1, CellOccupancy.nearestOrigin(0xaL, 1.9f));
+        assertEquals(3, CellOccupancy.nearestOrigin(0xaL, 2.1f));
+    }
+
+    public void testNearestOriginMatchesScan() {
+        for (int i = 0; i < 1000; i++) {
+            final long origins = mRandom.nextLong() & mRandom.nextLong();
+            final float x = mRandom.nextFloat() * 80f - 8f;
+            int expected = -1;
+            for (int column = 0; column < CellOccupancy.MAX_COUNT_X; column++) {
+                if ((origins & (1L << column)) != 0 && (expected < 0
+                        || Math.abs(column - x) <= Math.abs(expected - x))) {
+                    expected = column;
+                }
+            }
+            assertEquals("origins=" + Long.toHexString(origins) + " x=" + x,
+                    expected, CellOccupancy.nearestOrigin(origins, x));
+        }
+    }
+
+    public void testGetHorizontalFits() {
+        final CellOccupancy occupancy = new CellOccupancy(8, 1);
+        // Columns 2 and 5 occupied
+        final long row = (1L << 2) | (1L << 5);
+        assertEquals(0xdbL, occupancy.getHorizontalFits(row, 1));
+        assertEquals(0x49L, occupancy.getHorizontalFits(row, 2));
+        assertEquals(0L, occupancy.getHorizontalFits(row, 3));
+        assertEquals(0xffL, occupancy.getHorizontalFits(0, 1));
+        assertEquals(0x1L, occupancy.getHorizontalFits(0, 8));
+        assertEquals(0L, occupancy.getHorizontalFits(-1L, 1));
+
+        final CellOccupancy wide = new CellOccupancy(CellOccupancy.MAX_COUNT_X, 1);
+        assertEquals(-1L, wide.getHorizontalFits(0, 1));
+        assertEquals(1L, wide.getHorizontalFits(0, CellOccupancy.MAX_COUNT_X));
+        assertEquals(1L << 62, wide.getHorizontalFits(~(3L << 62), 2));
+    }
+
+    public void testMarkCellsMatchesGrid() {
+        for (int size : GRID_SIZES) {
+            final CellOccupancy occupancy = new CellOccupancy(size, size);
+            final boolean[][] grid = new boolean[size][size];
+            for (int i = 0; i < 200; i++) {
+                randomMark(occupancy, grid, size);
+                assertSameCells(grid, occupancy);
+            }
+        }
+    }
+
+    public void testMarkCellsClipsToGrid() {
+        final CellOccupancy occupancy = new CellOccupancy(4, 4);
+        occupancy.markCells(-1, -1, 2, 2, true);
+        occupancy.markCells(3, 3, 5, 5, true);
+        assertEquals("[ #... | .... | .... | ...# ]", occupancy.toString());
+        occupancy.markCells(-10, 0, 5, 4, true);
+        assertEquals("[ #... | .... | .... | ...# ]", occupancy.toString());
+    }
+
+    public void testFullWidthGrid() {
+        final int countX = CellOccupancy.MAX_COUNT_X;
+        final CellOccupancy occupancy = new CellOccupancy(countX, 2);
+        occupancy.markCells(0, 0, countX, 1, true);
+        for (int x = 0; x < countX; x++) {
+            assertTrue(occupancy.isOccupied(x, 0));
+            assertFalse(occupancy.isOccupied(x, 1));
+        }
+        assertFalse(occupancy.isRegionVacant(0, 0, 1, 1));
+        assertTrue(occupancy.isRegionVacant(0, 1, countX, 1));
+        assertEquals(0L, occupancy.getVacantOrigins(0, 1, 1));
+        assertEquals(-1L, occupancy.getVacantOrigins(1, 1, 1));
+
+        occupancy.set(countX - 1, 1, true);
+        assertEquals(~(1L << 63), occupancy.getVacantOrigins(1, 1, 1));
+        assertEquals(~(3L << 62), occupancy.getVacantOrigins(1, 2, 1));
+
+        final int[] vacant = new int[2];
+        assertTrue(occupancy.findVacantCell(vacant, countX - 1, 1));
+        assertEquals(0, vacant[0]);
+        assertEquals(1, vacant[1]);
+        assertFalse(occupancy.findVacantCell(vacant, countX, 1));
+    }
+
+    public void testOutOfBounds() {
+        final CellOccupancy occupancy = new CellOccupancy(4, 4);
+        final int[][] cells = { { -1, 0 }, { 0, -1 }, { 4, 0 }, { 0, 4 }, { 64, 0 }, { 65, 0 } };
+        for (int[] cell : cells) {
+            try {
+                occupancy.isOccupied(cell[0], cell[1]);
+                fail("isOccupied(" + cell[0] + ", " + cell[1] + ") should throw");
+            } catch (IndexOutOfBoundsException e) {
+                // Expected
+            }
+            try {
+                occupancy.set(cell[0], cell[1], true);
+                fail("set(" + cell[0] + ", " + cell[1] + ") should throw");
+            } catch (IndexOutOfBoundsException e) {
+                // Expected
+            }
+        }
+        assertEquals("[ .... | .... | .... | .... ]", occupancy.toString());
+
+        try {
+            new CellOccupancy(CellOccupancy.MAX_COUNT_X + 1, 4);
+            fail("grids wider than " + CellOccupancy.MAX_COUNT_X + " should be rejected");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * The index of vacant origins is patched for just the rows a change can affect; it has to
+     * agree with a grid that computes every origin from scratch.
+     */
+    public void testUpdateIndexRowRanges() {
+        for (int size : GRID_SIZES) {
+            final CellOccupancy occupancy = new CellOccupancy(size, size);
+            final boolean[][] grid = new boolean[size][size];
+            for (int i = 0; i < 200; i++) {
+                // Index every span before the change so that all of it has to be patched
+                for (int spanX = 1; spanX <= MAX_SPAN; spanX++) {
+                    for (int spanY = 1; spanY <= MAX_SPAN; spanY++) {
+                        occupancy.getVacantOrigins(0, spanX, spanY);
+                    }
+                }
+                if (i % 50 == 49) {
+                    occupancy.clear();
+                    for (boolean[] column : grid) {
+                        Arrays.fill(column, false);
+                    }
+                } else if (i % 2 == 0) {
+                    final int x = mRandom.nextInt(size);
+                    final int y = mRandom.nextInt(size);
+                    grid[x][y] = !grid[x][y];
+                    occupancy.set(x, y, grid[x][y]);
+                } else {
+                    randomMark(occupancy, grid, size);
+                }
+
+                final CellOccupancy fresh = copyOf(grid, size);
+                for (int spanX = 1; spanX <= MAX_SPAN; spanX++) {
+                    for (int spanY = 1; spanY <= MAX_SPAN; spanY++) {
+                        for (int y = -1; y <= size; y++) {
+                            assertEquals("size=" + size + " span=" + spanX + "x" + spanY
+                                    + " y=" + y + " " + occupancy,
+                                    fresh.getVacantOrigins(y, spanX, spanY),
+                                    occupancy.getVacantOrigins(y, spanX, spanY));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public void testVacantOriginsMatchGrid() {
+        for (int size : GRID_SIZES) {
+            final CellOccupancy occupancy = new CellOccupancy(size, size);
+            final boolean[][] grid = new boolean[size][size];
+            for (int i = 0; i < 50; i++) {
+                randomMark(occupancy, grid, size);
+                for (int spanX = 1; spanX <= MAX_SPAN; spanX++) {
+                    for (int spanY = 1; spanY <= MAX_SPAN; spanY++) {
+                        for (int y = 0; y < size; y++) {
+                            long expected = 0;
+                            for (int x = 0; x < size; x++) {
+                                if (isVacant(grid, size, x, y, spanX, spanY)) {
+                                    expected |= 1L << x;
+                                }
+                                assertEquals(isVacant(grid, size, x, y, spanX, spanY),
+                                        occupancy.isRegionVacant(x, y, spanX, spanY));
+                            }
+                            assertEquals(expected, occupancy.getVacantOrigins(y, spanX, spanY));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public void testFindVacantCellMatchesScan() {
+        for (int size : GRID_SIZES) {
+            final CellOccupancy occupancy = new CellOccupancy(size, size);
+            final boolean[][] grid = new boolean[size][size];
+            final int[] vacant = new int[2];
+            for (int i = 0; i < 50; i++) {
+                randomMark(occupancy, grid, size);
+                for (int spanX = 1; spanX <= MAX_SPAN; spanX++) {
+                    for (int spanY = 1; spanY <= MAX_SPAN; spanY++) {
+                        int[] expected = null;
+                        for (int y = 0; y < size && expected == null; y++) {
+                            for (int x = 0; x < size && expected == null; x++) {
+                                if (isVacant(grid, size, x, y, spanX, spanY)) {
+                                    expected = new int[] { x, y };
+                                }
+                            }
+                        }
+                        assertEquals(expected != null,
+                                occupancy.findVacantCell(vacant, spanX, spanY));
+                        if (expected != null) {
+                            assertEquals(expected[0], vacant[0]);
+                            assertEquals(expected[1], vacant[1]);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void randomMark(CellOccupancy occupancy, boolean[][] grid, int size) {
+        final int cellX = mRandom.nextInt(size + 2) - 1;
+        final int cellY = mRandom.nextInt(size + 2) - 1;
+        final int spanX = 1 + mRandom.nextInt(MAX_SPAN);
+        final int spanY = 1 + mRandom.nextInt(MAX_SPAN);
+        final boolean occupied = mRandom.nextInt(3) != 0;
+        occupancy.markCells(cellX, cellY, spanX, spanY, occupied);
+        for (int x = Math.max(cellX, 0); x < Math.min(cellX + spanX, size); x++) {
+            for (int y = Math.max(cellY, 0); y < Math.min(cellY + spanY, size); y++) {
+                grid[x][y] = occupied;
+            }
+        }
+    }
+
+    private static CellOccupancy copyOf(boolean[][] grid, int size) {
+        final CellOccupancy occupancy = new CellOccupancy(size, size);
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                if (grid[x][y]) {
+                    occupancy.set(x, y, true);
+                }
+            }
+        }
+        return occupancy;
+    }
+
+    private static boolean isVacant(boolean[][] grid, int size, int cellX, int cellY,
+            int spanX, int spanY) {
+        if (cellX + spanX > size || cellY + spanY > size) {
+            return false;
+        }
+        for (int x = cellX; x < cellX + spanX; x++) {
+            for (int y = cellY; y < cellY + spanY; y++) {
+                if (grid[x][y]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void assertSameCells(boolean[][] grid, CellOccupancy occupancy) {
+        for (int x = 0; x < grid.length; x++) {
+            for (int y = 0; y < grid[x].length; y++) {
+                assertEquals("cell " + x + "," + y + " " + occupancy,
+                        grid[x][y], occupancy.isOccupied(x, y));
+            }
+        }
+    }
+}
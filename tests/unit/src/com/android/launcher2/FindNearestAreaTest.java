@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher2;
+
+import android.test.InstrumentationTestCase;
+import android.test.suitebuilder.annotation.MediumTest;
+
+import java.util.Random;
+
+/**
+ * Compares {@link CellLayout#findNearestArea} with the scan of every cell that it replaced.
+ */
+@MediumTest
+public class FindNearestAreaTest extends InstrumentationTestCase {
+
+    private static final int[] GRID_SIZES = { 4, 6, 8 };
+    private static final int MAX_SPAN = 3;
+
+    private final Random mRandom = new Random(0);
+
+    public void testEmptyGrid() {
+        for (int size : GRID_SIZES) {
+            final CellLayout layout = createLayout(size);
+            checkAllPoints(layout);
+        }
+    }
+
+    public void testFullGrid() {
+        for (int size : GRID_SIZES) {
+            final CellLayout layout = createLayout(size);
+            layout.mOccupied.markCells(0, 0, size, size, true);
+            final int[] result = new int[2];
+            layout.findNearestArea(0, 0, 1, 1, null, true, result);
+            assertEquals(-1, result[0]);
+            assertEquals(-1, result[1]);
+            checkAllPoints(layout);
+        }
+    }
+
+    public void testRandomGrids() {
+        for (int size : GRID_SIZES) {
+            final CellLayout layout = createLayout(size);
+            for (int i = 0; i < 20; i++) {
+                CellLayoutTestUtils.randomFill(layout, mRandom, size);
+                checkAllPoints(layout);
+            }
+        }
+    }
+
+    public void testPadding() {
+        for (int size : GRID_SIZES) {
+            final CellLayout layout = createLayout(size);
+            layout.setPadding(7, 13, 0, 0);
+            CellLayoutTestUtils.randomFill(layout, mRandom, size);
+            checkAllPoints(layout);
+        }
+    }
+
+    private CellLayout createLayout(int size) {
+        final CellLayout layout = new CellLayout(getInstrumentation().getTargetContext());
+        layout.setGridSize(size, size);
+        return layout;
+    }
+
+    /**
+     * Try points on and around the grid, in steps of a quarter cell, with every span.
+     */
+    private void checkAllPoints(CellLayout layout) {
+        final int stepX = Math.max((layout.getCellWidth() + layout.getWidthGap()) / 4, 1);
+        final int stepY = Math.max((layout.getCellHeight() + layout.getHeightGap()) / 4, 1);
+        final int width = layout.getCountX() * (layout.getCellWidth() + layout.getWidthGap());
+        final int height = layout.getCountY() * (layout.getCellHeight() + layout.getHeightGap());
+        final int[] expected = new int[2];
+        final int[] actual = new int[2];
+        for (int spanX = 1; spanX <= MAX_SPAN; spanX++) {
+            for (int spanY = 1; spanY <= MAX_SPAN; spanY++) {
+                for (int y = -height / 2; y < height * 3 / 2; y += stepY) {
+                    for (int x = -width / 2; x < width * 3 / 2; x += stepX) {
+                        checkPoint(layout, x, y, spanX, spanY, true, expected, actual);
+                        checkPoint(layout, x, y, spanX, spanY, false, expected, actual);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void checkPoint(CellLayout layout, int x, int y, int spanX, int spanY,
+            boolean ignoreOccupied, int[] expected, int[] actual) {
+        CellLayoutTestUtils.bruteForceNearestArea(layout, x, y, spanX, spanY, ignoreOccupied,
+                expected);
+        layout.findNearestArea(x, y, spanX, spanY, null, ignoreOccupied, actual);
+        final String message = "point=" + x + "," + y + " span=" + spanX + "x" + spanY
+                + " ignoreOccupied=" + ignoreOccupied + " expected=" + expected[0] + ","
+                + expected[1] + " actual=" + actual[0] + "," + actual[1] + " "
+                + layout.mOccupied;
+        if (expected[0] < 0) {
+            assertEquals(message, -1, actual[0]);
+            assertEquals(message, -1, actual[1]);
+            return;
+        }
+        assertTrue(message, actual[0] >= 0 && actual[1] >= 0);
+        if (ignoreOccupied) {
+            assertTrue(message,
+                    layout.mOccupied.isRegionVacant(actual[0], actual[1], spanX, spanY));
+        }
+        // Cells at exactly the same distance may be chosen either way
+        assertEquals(message, distance(layout, x, y, spanX, spanY, expected),
+                distance(layout, x, y, spanX, spanY, actual), 1e-6);
+    }
+
+    private static double distance(CellLayout layout, int pixelX, int pixelY, int spanX,
+            int spanY, int[] cell) {
+        pixelX -= (layout.getCellWidth() + layout.getWidthGap()) * (spanX - 1) / 2f;
+        pixelY -= (layout.getCellHeight() + layout.getHeightGap()) * (spanY - 1) / 2f;
+        final int[] cellXY = new int[2];
+        layout.cellToCenterPoint(cell[0], cell[1], cellXY);
+        return Math.sqrt(Math.pow(cellXY[0] - pixelX, 2) + Math.pow(cellXY[1] - pixelY, 2));
+    }
+}
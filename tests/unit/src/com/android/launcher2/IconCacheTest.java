@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher2;
+
+import android.content.ComponentCallbacks2;
+import android.content.ComponentName;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.graphics.Bitmap;
+import android.test.InstrumentationTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.util.Log;
+
+import java.util.List;
+
+/**
+ * Checks that icons of apps in the drawer can be evicted, those on the workspace can't, and
+ * that removing a package only drops the icons of that package.
+ */
+@MediumTest
+public class IconCacheTest extends InstrumentationTestCase {
+    private static final String TAG = "IconCacheTest";
+
+    private static final int COMPONENT_COUNT = 500;
+
+    private LauncherApplication mApp;
+    private List<ResolveInfo> mActivities;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mApp = (LauncherApplication) getInstrumentation().getTargetContext()
+                .getApplicationContext();
+        final Intent mainIntent = new Intent(Intent.ACTION_MAIN, null);
+        mainIntent.addCategory(Intent.CATEGORY_LAUNCHER);
+        mActivities = mApp.getPackageManager().queryIntentActivities(mainIntent, 0);
+        assertTrue("Not enough launchable activities to fill the cache",
+                mActivities.size() >= 4);
+    }
+
+    public void testDrawerIconsAreEvicted() {
+        // How much the whole drawer takes when nothing is evicted
+        final int fullSize = fillDrawer(new IconCache(mApp, Integer.MAX_VALUE)).getSizeBytes();
+        assertTrue(fullSize > 0);
+
+        final int maxSize = fullSize / 2;
+        final IconCache cache = fillDrawer(new IconCache(mApp, maxSize));
+        assertTrue("size " + cache.getSizeBytes() + " > " + maxSize,
+                cache.getSizeBytes() <= maxSize);
+        assertTrue(cache.getSizeBytes() > 0);
+
+        cache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        assertTrue("size " + cache.getSizeBytes() + " > " + (maxSize / 2),
+                cache.getSizeBytes() <= maxSize / 2);
+
+        cache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_MODERATE);
+        assertEquals(0, cache.getSizeBytes());
+    }
+
+    public void testWorkspaceIconsAreKept() {
+        final IconCache cache = fillDrawer(new IconCache(mApp, Integer.MAX_VALUE));
+        final ResolveInfo info = mActivities.get(0);
+        final ComponentName component = new ComponentName(
+                info.activityInfo.applicationInfo.packageName, info.activityInfo.name);
+
+        final ShortcutInfo shortcut = new ShortcutInfo();
+        shortcut.setIcon(cache.acquireIcon(component, info, null));
+        cache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_MODERATE);
+        final IconHandle icon = shortcut.getIconHandle();
+        assertEquals(icon.getBitmap().getRowBytes() * icon.getBitmap().getHeight(),
+                cache.getSizeBytes());
+        assertSame(icon, cache.acquireIcon(component, info, null));
+        icon.release();
+
+        shortcut.unbind();
+        cache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_MODERATE);
+        assertEquals(0, cache.getSizeBytes());
+    }
+
+    @LargeTest
+    public void testRemovePackageKeepsOtherIcons() {
+        final IconCache cache = new IconCache(mApp, Integer.MAX_VALUE);
+        // One component per package, borrowing the labels and icons of the real activities
+        final ComponentName[] components = new ComponentName[COMPONENT_COUNT];
+        final Bitmap[] icons = new Bitmap[COMPONENT_COUNT];
+        for (int i = 0; i < COMPONENT_COUNT; i++) {
+            components[i] = new ComponentName("com.android.launcher2.tests.package" + i,
+                    "Activity" + i);
+            icons[i] = cache.getIcon(components[i], getResolveInfo(i), null);
+            assertNotNull(icons[i]);
+        }
+
+        final long start = System.nanoTime();
+        cache.removePackage(components[0].getPackageName());
+        final long elapsed = System.nanoTime() - start;
+        Log.i(TAG, "removePackage with " + COMPONENT_COUNT + " cached components took "
+                + (elapsed / 1000) + "us");
+
+        // The others must still be cached rather than drawn again
+        for (int i = 1; i < COMPONENT_COUNT; i++) {
+            assertSame(components[i].toString(), icons[i],
+                    cache.getIcon(components[i], getResolveInfo(i), null));
+        }
+        assertNotSame(icons[0], cache.getIcon(components[0], getResolveInfo(0), null));
+    }
+
+    private ResolveInfo getResolveInfo(int i) {
+        return mActivities.get(i % mActivities.size());
+    }
+
+    /**
+     * Build an ApplicationInfo for every launchable activity, as the loader does.
+     */
+    private IconCache fillDrawer(IconCache cache) {
+        final PackageManager packageManager = mApp.getPackageManager();
+        for (ResolveInfo info : mActivities) {
+            new ApplicationInfo(packageManager, info, cache, null);
+        }
+        return cache;
+    }
+}